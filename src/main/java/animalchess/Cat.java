@@ -1,7 +1,5 @@
 package animalchess;
 
-import java.util.ArrayList;
-
 /**
  * This class implements a cat piece. By extending
  * {@code PromotablePiece}, a cat will have ability
@@ -17,7 +15,7 @@ import java.util.ArrayList;
  * @author Yoochul Kim
  * @see Piece
  * @see PromotablePiece
- * @see AnimalMoveCalculator
+ * @see PieceKind#CAT
  */
 public class Cat extends PromotablePiece {
     /**
@@ -28,50 +26,6 @@ public class Cat extends PromotablePiece {
      * @param square the {@code Square} will be set on this {@code Cat}.
      */
     public Cat(Player owner, Square square) {
-        super(owner, square);
-    }
-
-    /**
-     * Get the array of {@code Square} which this cat can move to.
-     * If this cat is promoted, then move like {@code Dog}.
-     *
-     * @return the array of {@code Square} which this cat can move to.
-     */
-    @Override
-    public ArrayList<Square> getLegalMoves() {
-        ArrayList<Square> legalMovesFromSuper = super.getLegalMoves();
-
-        if (isPromoted) {
-            return Dog.getLegalMoves(getSquare(), legalMovesFromSuper, getOwner());
-        }
-
-        int row = getSquare().getRow();
-        int col = getSquare().getCol();
-
-        int[] back;
-        int[] left;
-        int[] right;
-
-        if (getOwner().getSide() == Game.Side.UPPER) {
-            back = new int[]{row - 1, col};
-            left = new int[]{row, col + 1};
-            right = new int[]{row, col - 1};
-        } else { // Game.Side.LOWER
-            back = new int[]{row + 1, col};
-            left = new int[]{row, col - 1};
-            right = new int[]{row, col + 1};
-        }
-
-        ArrayList<Square> legalMoves = new ArrayList<>();
-
-        for (Square square : legalMovesFromSuper) {
-            if (!(square.getRow() == back[0] && square.getCol() == back[1])
-                    && !(square.getRow() == left[0] && square.getCol() == left[1])
-                    && !(square.getRow() == right[0] && square.getCol() == right[1])) {
-                legalMoves.add(square);
-            }
-        }
-
-        return legalMoves;
+        super(owner, square, PieceKind.CAT);
     }
 }
@@ -9,6 +9,7 @@ import java.util.ArrayList;
  * for the two diagonals behind it.
  *
  * @author Yoochul Kim
+ * @see PieceKind#DOG
  */
 public class Dog extends Piece {
     /**
@@ -19,46 +20,24 @@ public class Dog extends Piece {
      * @param square the {@code Square} will be set on this {@code Dog}.
      */
     public Dog(Player owner, Square square) {
-        super(owner, square);
+        super(owner, square, PieceKind.DOG);
     }
 
     /**
-     * Get the array of {@code Square} which this dog can move to.
+     * Filters the squares around {@code toSquare} down to the ones
+     * a dog of the {@code player} can step to.
      *
-     * @return the array of {@code Square} which this dog can move to.
+     * @param toSquare             the {@code Square} the dog is laid on.
+     * @param legalMovesFromSuper  the squares around {@code toSquare}.
+     * @param player               the {@code Player} who owns the dog.
+     * @return the squares a dog can move to.
      */
-    @Override
-    public ArrayList<Square> getLegalMoves() {
-        ArrayList<Square> legalMovesFromSuper = super.getLegalMoves();
-        return Dog.getLegalMoves(getSquare(), legalMovesFromSuper, getOwner());
-    }
-
     public static ArrayList<Square> getLegalMoves(Square toSquare, ArrayList<Square> legalMovesFromSuper, Player player){
         ArrayList<Square> legalMoves = new ArrayList<>();
-        int row = toSquare.getRow();
-        int col = toSquare.getCol();
-
-        // Dog can't move to 2 diagonal directions behind of it.
-        int[] leftBack;
-        int[] rightBack;
-
-        // Depending on a player, a calculation of the movement varies
-        // player 0's animals is heading downward and
-        // player 1's animals is heading upward.
-        if (player.getSide() == Game.Side.UPPER ) {
-            leftBack = new int[]{row - 1, col - 1};
-            rightBack = new int[]{row - 1, col + 1};
-        } else { // Game.Side.Lower
-            leftBack = new int[]{row + 1, col - 1};
-            rightBack = new int[]{row + 1, col + 1};
-        }
+        int mask = PieceKind.DOG.getMask(player.getSide(), toSquare.getIndex());
 
         for (Square square : legalMovesFromSuper) {
-            int rowTemp = square.getRow();
-            int colTemp = square.getCol();
-
-            if (!(leftBack[0] == rowTemp && leftBack[1] == colTemp)
-                    && !(rightBack[0] == rowTemp && rightBack[1] == colTemp)) {
+            if ((mask & (1 << square.getIndex())) != 0) {
                 legalMoves.add(square);
             }
         }
@@ -41,11 +41,34 @@ public class Game {
      * The max player number can be played in one game.
      */
     public static final int MAX_PLAYER_NUMBER = 2;
+    /**
+     * The number of pieces each player has at the start of a game.
+     */
+    public static final int START_PIECE_NUMBER = 8;
+    /**
+     * The number of events kept for the consumers of the moves of a game.
+     */
+    public static final int MOVE_EVENT_CAPACITY = 1024;
     private final Square[][] square2DArray;
 
+    // The pieces set by setBoard() and the squares they started on,
+    // the first half is of the 1st player. reset() puts them back there.
+    private final Piece[] startPieces;
+    private final Square[] startSquares;
+
     private final List<Player> players;
     private Player winner;
 
+    // The number of moves and drops played in this game.
+    private int moveCount;
+
+    // The last published snapshot, readers never lock this game.
+    private volatile GameSnapshot snapshot;
+    private long snapshotVersion;
+
+    // The events of the moves, created when a consumer first asks for them.
+    private volatile MoveEventRing moveEvents;
+
     public enum Side {
         UPPER,
         LOWER
@@ -63,7 +86,10 @@ public class Game {
         players.add(p0);
         players.add(p1);
         square2DArray = new Square[HEIGHT][WIDTH];
+        startPieces = new Piece[MAX_PLAYER_NUMBER * START_PIECE_NUMBER];
+        startSquares = new Square[MAX_PLAYER_NUMBER * START_PIECE_NUMBER];
         setBoard();
+        publishSnapshot();
     }
 
     /**
@@ -78,24 +104,72 @@ public class Game {
         }
 
         // Set pieces of the 1st player
-        square2DArray[0][0].placePiece(new Cat(players.get(0), square2DArray[0][0]));
-        square2DArray[0][1].placePiece(new Dog(players.get(0), square2DArray[0][1]));
-        square2DArray[0][2].placePiece(new Lion(players.get(0), square2DArray[0][2]));
-        square2DArray[0][3].placePiece(new Dog(players.get(0), square2DArray[0][3]));
-        square2DArray[0][4].placePiece(new Cat(players.get(0), square2DArray[0][4]));
-        square2DArray[2][1].placePiece(new Chick(players.get(0), square2DArray[2][1]));
-        square2DArray[2][2].placePiece(new Chick(players.get(0), square2DArray[2][2]));
-        square2DArray[2][3].placePiece(new Chick(players.get(0), square2DArray[2][3]));
+        startPieces[0] = new Cat(players.get(0), square2DArray[0][0]);
+        startPieces[1] = new Dog(players.get(0), square2DArray[0][1]);
+        startPieces[2] = new Lion(players.get(0), square2DArray[0][2]);
+        startPieces[3] = new Dog(players.get(0), square2DArray[0][3]);
+        startPieces[4] = new Cat(players.get(0), square2DArray[0][4]);
+        startPieces[5] = new Chick(players.get(0), square2DArray[2][1]);
+        startPieces[6] = new Chick(players.get(0), square2DArray[2][2]);
+        startPieces[7] = new Chick(players.get(0), square2DArray[2][3]);
 
         // Set pieces of the 2nd player
-        square2DArray[5][0].placePiece(new Cat(players.get(1), square2DArray[5][0]));
-        square2DArray[5][1].placePiece(new Dog(players.get(1), square2DArray[5][1]));
-        square2DArray[5][2].placePiece(new Lion(players.get(1), square2DArray[5][2]));
-        square2DArray[5][3].placePiece(new Dog(players.get(1), square2DArray[5][3]));
-        square2DArray[5][4].placePiece(new Cat(players.get(1), square2DArray[5][4]));
-        square2DArray[3][1].placePiece(new Chick(players.get(1), square2DArray[3][1]));
-        square2DArray[3][2].placePiece(new Chick(players.get(1), square2DArray[3][2]));
-        square2DArray[3][3].placePiece(new Chick(players.get(1), square2DArray[3][3]));
+        startPieces[8] = new Cat(players.get(1), square2DArray[5][0]);
+        startPieces[9] = new Dog(players.get(1), square2DArray[5][1]);
+        startPieces[10] = new Lion(players.get(1), square2DArray[5][2]);
+        startPieces[11] = new Dog(players.get(1), square2DArray[5][3]);
+        startPieces[12] = new Cat(players.get(1), square2DArray[5][4]);
+        startPieces[13] = new Chick(players.get(1), square2DArray[3][1]);
+        startPieces[14] = new Chick(players.get(1), square2DArray[3][2]);
+        startPieces[15] = new Chick(players.get(1), square2DArray[3][3]);
+
+        for (int i = 0; i < startPieces.length; i++) {
+            startSquares[i] = startPieces[i].getSquare();
+        }
+    }
+
+    /**
+     * Restores the start position in place, so this game can be played again.
+     * <p>
+     * The squares and pieces of this game are reused instead of being created
+     * again: every square is cleared, the hands and victory of the players are
+     * cleared, and each piece set by {@code setBoard()} goes back to its
+     * starting square and owner, unpromoted. Only the snapshot of the start
+     * position is allocated.
+     */
+    public void reset() {
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                square2DArray[i][j].removePiece();
+            }
+        }
+
+        for (Player player : players) {
+            player.reset();
+        }
+        winner = null;
+        moveCount = 0;
+
+        for (int i = 0; i < startPieces.length; i++) {
+            Piece piece = startPieces[i];
+            piece.reset(players.get(i / START_PIECE_NUMBER), startSquares[i], piece.getKind().getDemoted());
+        }
+        publishSnapshot();
+        publishEvent(MoveEventRing.RESET);
+    }
+
+    /**
+     * Restores the start position in place for the two given players,
+     * whose hands and victory are cleared like those of the players of
+     * {@code reset()}.
+     *
+     * @param p0 the first player of the game
+     * @param p1 the second player of the game
+     */
+    void reset(Player p0, Player p1) {
+        players.set(0, p0);
+        players.set(1, p1);
+        reset();
     }
 
     /**
@@ -109,6 +183,324 @@ public class Game {
         return square2DArray[row][col];
     }
 
+    /**
+     * Sets this game to the position of the compact {@code GameState}.
+     * <p>
+     * The pieces set by {@code setBoard()} are reused for the pieces of the
+     * same animal in the state. Only when the state has more of an animal
+     * than the start position, new pieces are created.
+     *
+     * @param state the {@code GameState} to materialise
+     */
+    void load(GameState state) {
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                square2DArray[i][j].removePiece();
+            }
+        }
+        for (Player player : players) {
+            player.reset();
+        }
+        winner = null;
+
+        // The bits of the start pieces which are already placed.
+        int used = 0;
+
+        for (int i = 0; i < GameState.SQUARE_NUMBER; i++) {
+            int code = state.getPiece(i);
+            if (code == 0) continue;
+            PieceKind kind = GameState.kindOf(code);
+            Player owner = getPlayer(GameState.sideOf(code));
+            Square square = square2DArray[i / WIDTH][i % WIDTH];
+            int index = findStartPiece(kind, used);
+            if (index < 0) {
+                newPiece(kind, owner, square);
+            } else {
+                used |= 1 << index;
+                startPieces[index].reset(owner, square, kind);
+            }
+        }
+
+        for (Player owner : players) {
+            for (int handIndex = 0; handIndex < GameState.HAND_KIND_NUMBER; handIndex++) {
+                PieceKind kind = GameState.handKindOf(handIndex);
+                for (int n = state.getHandCount(owner.getSide(), kind); n > 0; n--) {
+                    int index = findStartPiece(kind, used);
+                    Piece piece;
+                    if (index < 0) {
+                        // A piece needs a square to be created, so use one out of the game.
+                        piece = newPiece(kind, owner, new Square(0, 0));
+                    } else {
+                        used |= 1 << index;
+                        piece = startPieces[index];
+                        piece.setOwner(owner);
+                        piece.setKind(kind);
+                    }
+                    piece.removeSqare();
+                    owner.addPieceToHand(piece);
+                }
+            }
+        }
+
+        // The start pieces which are not in the state, e.g. a captured lion.
+        for (int i = 0; i < startPieces.length; i++) {
+            if ((used & (1 << i)) == 0) startPieces[i].removeSqare();
+        }
+
+        Side winnerSide = state.getWinner();
+        if (winnerSide != null) {
+            getPlayer(winnerSide).winGame();
+        }
+        moveCount = state.getMoveCount();
+        publishSnapshot();
+        publishEvent(MoveEventRing.RESET);
+    }
+
+    private int findStartPiece(PieceKind kind, int used) {
+        PieceKind demoted = kind.getDemoted();
+        for (int i = 0; i < startPieces.length; i++) {
+            if ((used & (1 << i)) == 0 && startPieces[i].getKind().getDemoted() == demoted) return i;
+        }
+        return -1;
+    }
+
+    private static Piece newPiece(PieceKind kind, Player owner, Square square) {
+        Piece piece;
+        switch (kind.getDemoted()) {
+            case LION:
+                piece = new Lion(owner, square);
+                break;
+            case DOG:
+                piece = new Dog(owner, square);
+                break;
+            case CAT:
+                piece = new Cat(owner, square);
+                break;
+            default:
+                piece = new Chick(owner, square);
+                break;
+        }
+        piece.setKind(kind);
+        return piece;
+    }
+
+    /**
+     * Get the number of moves and drops played in this game.
+     *
+     * @return the number of moves played
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Get the side whose turn it is. The UPPER side (player 0) moves first,
+     * then the sides alternate.
+     *
+     * @return the side to move
+     */
+    public Side getSideToMove() {
+        return moveCount % 2 == 0 ? Side.UPPER : Side.LOWER;
+    }
+
+    /**
+     * Counts a move or drop played in this game, and publishes
+     * the snapshot of the new position and the event of the move.
+     *
+     * @param move the move encoded by {@code Move}, with its details
+     */
+    void recordMove(int move) {
+        moveCount++;
+        publishSnapshot();
+        publishEvent(move);
+    }
+
+    private void publishEvent(int move) {
+        MoveEventRing events = moveEvents;
+        if (events != null) {
+            events.publish(move, moveCount);
+        }
+    }
+
+    /**
+     * Get the ring buffer of the events of the moves played in this game,
+     * including captures, promotions and the end of the game.
+     * <p>
+     * Consumers, e.g. spectators or logging, read it at their own pace with
+     * {@link MoveEventRing#newReader()}. A {@code reset()} of this game, or
+     * loading another position into it, publishes a {@code RESET} event.
+     * The ring is created on the first call, so games nobody watches pay
+     * nothing for it.
+     *
+     * @return the {@code MoveEventRing} of this game
+     */
+    public MoveEventRing getMoveEvents() {
+        MoveEventRing events = moveEvents;
+        if (events == null) {
+            synchronized (this) {
+                events = moveEvents;
+                if (events == null) {
+                    events = new MoveEventRing(MOVE_EVENT_CAPACITY);
+                    moveEvents = events;
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Get the snapshot of the position after the last move.
+     * <p>
+     * It can be called from any thread without locking this game.
+     * The snapshot is immutable, so it stays consistent while the
+     * game goes on.
+     *
+     * @return the last published {@code GameSnapshot}
+     */
+    public GameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void publishSnapshot() {
+        // The single volatile write makes the whole snapshot visible to readers.
+        snapshot = GameSnapshot.of(this, ++snapshotVersion);
+    }
+
+    /**
+     * Returns whether the piece on {@code fromSquare} can legally move to
+     * {@code toSquare} in this game.
+     * <p>
+     * It answers in constant time by using the precomputed movement masks,
+     * instead of building the whole list of {@code getLegalMoves()}.
+     *
+     * @param fromSquare the {@code Square} the piece is laid on
+     * @param toSquare   the {@code Square} the piece would move to
+     * @return true if the move is legal
+     */
+    public boolean isLegal(Square fromSquare, Square toSquare) {
+        if (fromSquare == null || fromSquare.isEmptySquare()) {
+            return false;
+        }
+        return isLegal(fromSquare.getPiece(), fromSquare, toSquare);
+    }
+
+    /**
+     * Returns whether the {@code Piece} laid on {@code fromSquare} can legally
+     * move to {@code toSquare} in this game.
+     *
+     * @param piece      the {@code Piece} which will move
+     * @param fromSquare the {@code Square} the piece is laid on
+     * @param toSquare   the {@code Square} the piece would move to
+     * @return true if the move is legal
+     */
+    boolean isLegal(Piece piece, Square fromSquare, Square toSquare) {
+        // Both squares should be the ones of this board.
+        if (!isOnBoard(fromSquare) || !isOnBoard(toSquare)) {
+            return false;
+        }
+        // The animal should be able to step there.
+        if ((piece.getKind().getMask(piece.getOwner().getSide(), fromSquare.getIndex()) & (1 << toSquare.getIndex())) == 0) {
+            return false;
+        }
+        // Pieces cannot be moved to the place where one's own pieces are placed.
+        return toSquare.isEmptySquare() || toSquare.getPieceOwner() != piece.getOwner();
+    }
+
+    /**
+     * Returns whether the {@code Player} can legally drop a piece of the
+     * {@code kind} from their hand on {@code toSquare} in this game.
+     *
+     * @param player   the {@code Player} who will drop the piece
+     * @param kind     the {@code PieceKind} of the piece which will be dropped
+     * @param toSquare the {@code Square} the piece would be dropped on
+     * @return true if the drop is legal
+     */
+    public boolean isLegalDrop(Player player, PieceKind kind, Square toSquare) {
+        // A piece can only be dropped on an empty square of this board.
+        if (!isOnBoard(toSquare) || !toSquare.isEmptySquare()) {
+            return false;
+        }
+        return player.hasInHand(kind);
+    }
+
+    private boolean isOnBoard(Square square) {
+        if (square == null || square.getGame() != this) {
+            return false;
+        }
+        int row = square.getRow();
+        int col = square.getCol();
+        if (row < MIN_ROW || MAX_ROW < row || col < MIN_COL || MAX_COL < col) {
+            return false;
+        }
+        return square2DArray[row][col] == square;
+    }
+
+    /**
+     * Plays a move encoded by {@code Move} for the side to move.
+     * <p>
+     * Unlike moving a piece directly, it checks the turn: the moved piece
+     * should be owned by the side to move, and a drop comes from the hand
+     * of the side to move.
+     *
+     * @param move the encoded move or drop
+     * @throws IllegalArgumentException if the move is not legal for the side to move
+     * @throws IllegalStateException    if the game is already over
+     */
+    public void play(int move) {
+        if (getWinner() != null) {
+            throw new IllegalStateException("the game is already over");
+        }
+        Side side = getSideToMove();
+        Square toSquare = getSquare(Move.getTo(move));
+
+        if (Move.isDrop(move)) {
+            Player player = getPlayer(side);
+            PieceKind kind = Move.getDropKind(move);
+            if (!isLegalDrop(player, kind, toSquare)) {
+                throw new IllegalArgumentException("the piece cannot be dropped on the square");
+            }
+            for (Piece piece : player.getHand()) {
+                if (piece.getKind() == kind) {
+                    player.dropPiece(piece, toSquare);
+                    return;
+                }
+            }
+        } else {
+            Square fromSquare = getSquare(Move.getFrom(move));
+            if (fromSquare.isEmptySquare() || fromSquare.getPieceOwner().getSide() != side) {
+                throw new IllegalArgumentException("the side to move has no piece on the square");
+            }
+            fromSquare.getPiece().move(toSquare);
+        }
+    }
+
+    /**
+     * Get the {@code Square} numbered {@code index}, counted row by row from the top left.
+     *
+     * @param index the number of the square, {@code row * WIDTH + col}
+     * @return the {@code Square} with the number
+     * @throws IllegalArgumentException if there is no square with the number
+     */
+    public Square getSquare(int index) {
+        if (index < 0 || HEIGHT * WIDTH <= index) {
+            throw new IllegalArgumentException("a square with the passed number does not exist");
+        }
+        return square2DArray[index / WIDTH][index % WIDTH];
+    }
+
+    /**
+     * Get the player who plays the {@code side}.
+     *
+     * @param side the side of the player
+     * @return the player who plays the side
+     */
+    public Player getPlayer(Side side) {
+        for (Player player : players) {
+            if (player.getSide() == side) return player;
+        }
+        throw new IllegalArgumentException("no player plays the passed side");
+    }
+
     /**
      * Get one of the players who has the player number.
      *
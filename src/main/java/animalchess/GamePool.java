@@ -0,0 +1,104 @@
+package animalchess;
+
+/**
+ * This class implements a pool of finished games to be played again.
+ * <p>
+ * Creating a {@code Game} sets 30 squares and 16 pieces on the board.
+ * A pool keeps released games and hands them out again after
+ * {@code reset()}, so the game, its squares and its pieces are reused.
+ * Once the pool is warmed up, acquiring a game only allocates the small
+ * {@code GameSnapshot} of its start position, which {@code reset()}
+ * publishes for the readers of the game, as every move does.
+ * <p>
+ * It is safe to share a pool between threads, but a released game
+ * must not be used anymore by the thread which released it.
+ *
+ * @author Yoochul Kim
+ * @see Game#reset()
+ */
+public class GamePool {
+    private final Game[] games;
+    private int size;
+
+    /**
+     * Constructor to create {@code GamePool} which keeps
+     * at most {@code capacity} released games.
+     *
+     * @param capacity the max number of games kept in this pool
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public GamePool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("the capacity of a pool should be positive");
+        }
+        games = new Game[capacity];
+    }
+
+    /**
+     * Get a game in the start position for the two given players.
+     * A released game is reused if there is one, otherwise a new one is created.
+     * <p>
+     * Reusing a game resets the two players, as {@link Game#reset()} does:
+     * their hands are emptied and their victory is cleared. So the players
+     * should not be in another game still in play, or be read afterwards
+     * for the result of a previous game.
+     *
+     * @param p0 the first player of the game
+     * @param p1 the second player of the game
+     * @return the {@code Game} in the start position
+     */
+    public Game acquire(Player p0, Player p1) {
+        Game game = poll();
+        if (game == null) {
+            return new Game(p0, p1);
+        }
+        game.reset(p0, p1);
+        return game;
+    }
+
+    /**
+     * Get a game in the start position, played by the players of the
+     * reused game. A new game with two new players is created if there
+     * is no released game.
+     *
+     * @return the {@code Game} in the start position
+     */
+    public Game acquire() {
+        Game game = poll();
+        if (game == null) {
+            return new Game(new Player("Player 0", 0), new Player("Player 1", 1));
+        }
+        game.reset();
+        return game;
+    }
+
+    /**
+     * Gives a finished game back to this pool. If the pool is full,
+     * the game is left to the garbage collector.
+     *
+     * @param game the {@code Game} which will not be used anymore
+     */
+    public synchronized void release(Game game) {
+        if (size < games.length) {
+            games[size++] = game;
+        }
+    }
+
+    /**
+     * Get the number of released games kept in this pool.
+     *
+     * @return the number of games which can be reused
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized Game poll() {
+        if (size == 0) {
+            return null;
+        }
+        Game game = games[--size];
+        games[size] = null;
+        return game;
+    }
+}
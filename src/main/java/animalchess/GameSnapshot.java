@@ -0,0 +1,187 @@
+package animalchess;
+
+/**
+ * This class implements an immutable snapshot of the position of a game.
+ * <p>
+ * A {@code Game} publishes a new snapshot after each move through one
+ * volatile write, so any number of threads, e.g. spectators or persistence,
+ * can read a consistent position without locking the game.
+ * <p>
+ * The snapshot uses the encoding of {@code GameState} packed into a few
+ * primitives: the 30 board bytes take 4 bits each in two {@code long}s,
+ * and the 6 hand counters take 4 bits each in one {@code int}. So
+ * publishing a snapshot costs a few dozen bytes per move.
+ *
+ * @author Yoochul Kim
+ * @see Game#getSnapshot()
+ */
+public final class GameSnapshot {
+    // The number of squares packed in one long.
+    private static final int SQUARES_PER_LONG = 16;
+
+    private final long version;
+    private final long lowSquares;
+    private final long highSquares;
+    private final int hands;
+    private final int flags;
+    private final int moveCount;
+
+    private GameSnapshot(long version, long lowSquares, long highSquares, int hands, int flags, int moveCount) {
+        this.version = version;
+        this.lowSquares = lowSquares;
+        this.highSquares = highSquares;
+        this.hands = hands;
+        this.flags = flags;
+        this.moveCount = moveCount;
+    }
+
+    /**
+     * Creates the snapshot of the compact {@code GameState}.
+     *
+     * @param state   the {@code GameState} to pack.
+     * @param version the version of the snapshot, increasing with each publication.
+     * @return the {@code GameSnapshot} of the state.
+     */
+    public static GameSnapshot of(GameState state, long version) {
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < SQUARES_PER_LONG; i++) {
+            low |= (long) state.board[i] << (4 * i);
+        }
+        for (int i = SQUARES_PER_LONG; i < GameState.SQUARE_NUMBER; i++) {
+            high |= (long) state.board[i] << (4 * (i - SQUARES_PER_LONG));
+        }
+        int packedHands = 0;
+        for (int i = 0; i < state.hands.length; i++) {
+            packedHands |= state.hands[i] << (4 * i);
+        }
+        return new GameSnapshot(version, low, high, packedHands, state.flags, state.moveCount);
+    }
+
+    /**
+     * Creates the snapshot of the position of the {@code Game}.
+     *
+     * @param game    the {@code Game} to read.
+     * @param version the version of the snapshot, increasing with each publication.
+     * @return the {@code GameSnapshot} of the game.
+     */
+    static GameSnapshot of(Game game, long version) {
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < GameState.SQUARE_NUMBER; i++) {
+            Piece piece = game.getSquare(i / Game.WIDTH, i % Game.WIDTH).getPiece();
+            if (piece == null) continue;
+            long code = GameState.encode(piece.getKind(), piece.getOwner().getSide());
+            if (i < SQUARES_PER_LONG) {
+                low |= code << (4 * i);
+            } else {
+                high |= code << (4 * (i - SQUARES_PER_LONG));
+            }
+        }
+
+        int packedHands = 0;
+        int packedFlags = game.getSideToMove() == Game.Side.LOWER ? GameState.LOWER_TO_MOVE : 0;
+        for (int i = 0; i < Game.MAX_PLAYER_NUMBER; i++) {
+            Player player = game.getPlayer(i);
+            int side = player.getSide().ordinal();
+            for (Piece piece : player.getHand()) {
+                packedHands += 1 << (4 * (side * GameState.HAND_KIND_NUMBER + GameState.handIndexOf(piece.getKind())));
+            }
+            if (player.hasWon()) {
+                packedFlags |= player.getSide() == Game.Side.UPPER ? GameState.UPPER_WON : GameState.LOWER_WON;
+            }
+        }
+        return new GameSnapshot(version, low, high, packedHands, packedFlags, game.getMoveCount());
+    }
+
+    /**
+     * Unpacks this snapshot into the compact {@code GameState}.
+     *
+     * @param state the {@code GameState} to overwrite.
+     */
+    public void copyTo(GameState state) {
+        for (int i = 0; i < GameState.SQUARE_NUMBER; i++) {
+            state.board[i] = (byte) getPiece(i);
+        }
+        for (int i = 0; i < state.hands.length; i++) {
+            state.hands[i] = (byte) ((hands >>> (4 * i)) & 0xF);
+        }
+        state.flags = flags;
+        state.moveCount = moveCount;
+    }
+
+    /**
+     * Unpacks this snapshot into a new compact {@code GameState}.
+     *
+     * @return the {@code GameState} of this snapshot.
+     */
+    public GameState toGameState() {
+        GameState state = new GameState();
+        copyTo(state);
+        return state;
+    }
+
+    /**
+     * Get the version of this snapshot. A game publishes snapshots
+     * with increasing versions.
+     *
+     * @return the version of this snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the board byte of the square numbered {@code square}.
+     *
+     * @param square the number of the square, {@code row * WIDTH + col}.
+     * @return 0 if the square is empty, otherwise the encoded piece as in {@code GameState}.
+     */
+    public int getPiece(int square) {
+        if (square < SQUARES_PER_LONG) {
+            return (int) ((lowSquares >>> (4 * square)) & 0xF);
+        }
+        return (int) ((highSquares >>> (4 * (square - SQUARES_PER_LONG))) & 0xF);
+    }
+
+    /**
+     * Get the number of pieces of the {@code kind} held by the {@code side}.
+     *
+     * @param side the side of the player.
+     * @param kind the {@code PieceKind} of the pieces.
+     * @return the number of pieces in the hand.
+     */
+    public int getHandCount(Game.Side side, PieceKind kind) {
+        int index = side.ordinal() * GameState.HAND_KIND_NUMBER + GameState.handIndexOf(kind);
+        return (hands >>> (4 * index)) & 0xF;
+    }
+
+    /**
+     * Get the side to move.
+     *
+     * @return the side whose turn it is.
+     */
+    public Game.Side getSideToMove() {
+        return (flags & GameState.LOWER_TO_MOVE) == 0 ? Game.Side.UPPER : Game.Side.LOWER;
+    }
+
+    /**
+     * Get the side which has won.
+     *
+     * @return the side which has captured the opponent lion, or null.
+     */
+    public Game.Side getWinner() {
+        if ((flags & GameState.UPPER_WON) != 0) return Game.Side.UPPER;
+        if ((flags & GameState.LOWER_WON) != 0) return Game.Side.LOWER;
+        return null;
+    }
+
+    /**
+     * Get the number of moves and drops played to reach this position.
+     *
+     * @return the number of moves played.
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+}
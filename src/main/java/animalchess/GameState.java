@@ -0,0 +1,486 @@
+package animalchess;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class implements a compact state of a game, backed by a few
+ * primitives instead of squares and pieces.
+ * <p>
+ * The board is one byte per square, numbered {@code row * WIDTH + col}.
+ * An empty square is 0, otherwise the low bits are the ordinal of the
+ * {@code PieceKind} plus one and {@code LOWER_BIT} is set for the pieces
+ * of the LOWER side. The hands are counters of dogs, cats and chicks per
+ * side, and the flags keep the side to move and the winner.
+ * <p>
+ * The object model of {@code Game} is only materialised on demand by
+ * {@link #copyTo(Game)} or {@link #toGame(Player, Player)}.
+ *
+ * @author Yoochul Kim
+ * @see GameStatePool
+ */
+public final class GameState {
+    /**
+     * The number of squares on the board.
+     */
+    public static final int SQUARE_NUMBER = PieceKind.SQUARE_NUMBER;
+    /**
+     * The number of kinds which can be held in a hand: dog, cat and chick.
+     */
+    public static final int HAND_KIND_NUMBER = 3;
+    /**
+     * The bit set on the board bytes of the pieces of the LOWER side.
+     */
+    public static final int LOWER_BIT = 0x08;
+    /**
+     * The flag set when the LOWER side is to move.
+     */
+    public static final int LOWER_TO_MOVE = 0x01;
+    /**
+     * The flag set when the UPPER side has won.
+     */
+    public static final int UPPER_WON = 0x02;
+    /**
+     * The flag set when the LOWER side has won.
+     */
+    public static final int LOWER_WON = 0x04;
+
+    /**
+     * The max number of legal moves in a position, to size move buffers.
+     */
+    public static final int MAX_MOVES = 256;
+    /**
+     * The number of bytes written by {@link #writeTo(ByteBuffer)}.
+     */
+    public static final int BYTES = SQUARE_NUMBER + 2 * HAND_KIND_NUMBER + 1 + Integer.BYTES;
+
+    private static final PieceKind[] KINDS = PieceKind.values();
+
+    // The start position, as the board bytes.
+    private static final byte[] START_BOARD = new byte[SQUARE_NUMBER];
+
+    static {
+        PieceKind[] backRow = {PieceKind.CAT, PieceKind.DOG, PieceKind.LION, PieceKind.DOG, PieceKind.CAT};
+        for (int col = 0; col < Game.WIDTH; col++) {
+            START_BOARD[col] = encode(backRow[col], Game.Side.UPPER);
+            START_BOARD[Game.MAX_ROW * Game.WIDTH + col] = encode(backRow[col], Game.Side.LOWER);
+        }
+        for (int col = 1; col <= 3; col++) {
+            START_BOARD[2 * Game.WIDTH + col] = encode(PieceKind.CHICK, Game.Side.UPPER);
+            START_BOARD[3 * Game.WIDTH + col] = encode(PieceKind.CHICK, Game.Side.LOWER);
+        }
+    }
+
+    final byte[] board = new byte[SQUARE_NUMBER];
+    // [side * HAND_KIND_NUMBER + hand index]
+    final byte[] hands = new byte[2 * HAND_KIND_NUMBER];
+    int flags;
+    int moveCount;
+
+    /**
+     * Constructor to create {@code GameState} in the start position.
+     */
+    public GameState() {
+        setStart();
+    }
+
+    /**
+     * Creates the compact state of the {@code Game}.
+     *
+     * @param game the {@code Game} to read.
+     * @return the {@code GameState} of the game.
+     */
+    public static GameState of(Game game) {
+        GameState state = new GameState();
+        state.copyFrom(game);
+        return state;
+    }
+
+    /**
+     * Encodes the piece of the {@code kind} owned by the {@code side} as a board byte.
+     *
+     * @param kind the {@code PieceKind} of the piece.
+     * @param side the side of the owner of the piece.
+     * @return the board byte of the piece.
+     */
+    public static byte encode(PieceKind kind, Game.Side side) {
+        return (byte) ((kind.ordinal() + 1) | (side == Game.Side.LOWER ? LOWER_BIT : 0));
+    }
+
+    /**
+     * Get the {@code PieceKind} of a non-empty board byte.
+     *
+     * @param code the board byte.
+     * @return the {@code PieceKind} of the piece.
+     */
+    public static PieceKind kindOf(int code) {
+        return KINDS[(code & (LOWER_BIT - 1)) - 1];
+    }
+
+    /**
+     * Get the side of the owner of a non-empty board byte.
+     *
+     * @param code the board byte.
+     * @return the side of the owner of the piece.
+     */
+    public static Game.Side sideOf(int code) {
+        return (code & LOWER_BIT) == 0 ? Game.Side.UPPER : Game.Side.LOWER;
+    }
+
+    /**
+     * Get the index in the hand counters of a kind held in a hand.
+     *
+     * @param kind the {@code PieceKind}, which is unpromoted once held.
+     * @return 0 for dog, 1 for cat and 2 for chick.
+     */
+    public static int handIndexOf(PieceKind kind) {
+        return kind.getDemoted().ordinal() - PieceKind.DOG.ordinal();
+    }
+
+    /**
+     * Get the kind held in a hand at the index of the hand counters.
+     *
+     * @param handIndex 0 for dog, 1 for cat and 2 for chick.
+     * @return the {@code PieceKind} at the index.
+     */
+    public static PieceKind handKindOf(int handIndex) {
+        return KINDS[handIndex + PieceKind.DOG.ordinal()];
+    }
+
+    /**
+     * Restores the start position, with the UPPER side to move.
+     */
+    public void setStart() {
+        System.arraycopy(START_BOARD, 0, board, 0, SQUARE_NUMBER);
+        Arrays.fill(hands, (byte) 0);
+        flags = 0;
+        moveCount = 0;
+    }
+
+    /**
+     * Copies the position of another compact state into this one.
+     *
+     * @param other the {@code GameState} to copy.
+     */
+    public void copyFrom(GameState other) {
+        System.arraycopy(other.board, 0, board, 0, SQUARE_NUMBER);
+        System.arraycopy(other.hands, 0, hands, 0, hands.length);
+        flags = other.flags;
+        moveCount = other.moveCount;
+    }
+
+    /**
+     * Copies the position of another compact state seen in the mirror between
+     * the left and right sides of the board. Every piece moves the same in
+     * the mirror, so the mirrored position plays the mirrored moves.
+     *
+     * @param other the {@code GameState} to mirror, not this one.
+     * @see Move#mirror(int)
+     */
+    public void copyMirrored(GameState other) {
+        for (int square = 0; square < SQUARE_NUMBER; square++) {
+            board[Move.mirrorSquare(square)] = other.board[square];
+        }
+        System.arraycopy(other.hands, 0, hands, 0, hands.length);
+        flags = other.flags;
+        moveCount = other.moveCount;
+    }
+
+    /**
+     * Reads the position of the {@code Game} into this compact state.
+     *
+     * @param game the {@code Game} to read.
+     */
+    public void copyFrom(Game game) {
+        for (int i = 0; i < SQUARE_NUMBER; i++) {
+            Piece piece = game.getSquare(i / Game.WIDTH, i % Game.WIDTH).getPiece();
+            board[i] = piece == null ? 0 : encode(piece.getKind(), piece.getOwner().getSide());
+        }
+
+        Arrays.fill(hands, (byte) 0);
+        flags = 0;
+        for (int i = 0; i < Game.MAX_PLAYER_NUMBER; i++) {
+            Player player = game.getPlayer(i);
+            int side = player.getSide().ordinal();
+            for (Piece piece : player.getHand()) {
+                hands[side * HAND_KIND_NUMBER + handIndexOf(piece.getKind())]++;
+            }
+            if (player.hasWon()) {
+                flags |= player.getSide() == Game.Side.UPPER ? UPPER_WON : LOWER_WON;
+            }
+        }
+
+        moveCount = game.getMoveCount();
+        if (game.getSideToMove() == Game.Side.LOWER) {
+            flags |= LOWER_TO_MOVE;
+        }
+    }
+
+    /**
+     * Materialises this position on the {@code Game}, reusing its squares and pieces.
+     *
+     * @param game the {@code Game} which will be set to this position.
+     */
+    public void copyTo(Game game) {
+        game.load(this);
+    }
+
+    /**
+     * Materialises this position as a new {@code Game}.
+     *
+     * @param p0 the first player of the game
+     * @param p1 the second player of the game
+     * @return the {@code Game} in this position
+     */
+    public Game toGame(Player p0, Player p1) {
+        Game game = new Game(p0, p1);
+        game.load(this);
+        return game;
+    }
+
+    /**
+     * Writes this position as {@code BYTES} bytes: the board bytes, the hands,
+     * the flags and the number of moves played.
+     *
+     * @param buffer the {@code ByteBuffer} to write to.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(board).put(hands).put((byte) flags).putInt(moveCount);
+    }
+
+    /**
+     * Reads a position written by {@link #writeTo(ByteBuffer)} into this state.
+     *
+     * @param buffer the {@code ByteBuffer} to read from.
+     */
+    public void readFrom(ByteBuffer buffer) {
+        buffer.get(board).get(hands);
+        flags = buffer.get();
+        moveCount = buffer.getInt();
+    }
+
+    /**
+     * Generates the legal moves and drops of the side to move, encoded by {@code Move}.
+     * The moves from the board come first, from the top left, then the drops.
+     *
+     * @param moves the buffer of at least {@code MAX_MOVES} moves to fill.
+     * @return the number of moves generated, 0 once the game is over.
+     */
+    public int generateMoves(int[] moves) {
+        if (getWinner() != null) {
+            return 0;
+        }
+        Game.Side side = getSideToMove();
+        int sideBit = side == Game.Side.LOWER ? LOWER_BIT : 0;
+
+        // The squares of the own pieces, and the empty squares.
+        int own = 0;
+        int empty = 0;
+        for (int i = 0; i < SQUARE_NUMBER; i++) {
+            int code = board[i];
+            if (code == 0) {
+                empty |= 1 << i;
+            } else if ((code & LOWER_BIT) == sideBit) {
+                own |= 1 << i;
+            }
+        }
+
+        int count = 0;
+        int pieces = own;
+        while (pieces != 0) {
+            int from = Integer.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            int targets = kindOf(board[from]).getMask(side, from) & ~own;
+            while (targets != 0) {
+                int to = Integer.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                moves[count++] = Move.of(from, to);
+            }
+        }
+
+        int handOffset = side.ordinal() * HAND_KIND_NUMBER;
+        for (int handIndex = 0; handIndex < HAND_KIND_NUMBER; handIndex++) {
+            if (hands[handOffset + handIndex] == 0) continue;
+            PieceKind kind = handKindOf(handIndex);
+            int targets = empty;
+            while (targets != 0) {
+                int to = Integer.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                moves[count++] = Move.drop(kind, to);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether the move encoded by {@code Move} is legal for the side to move.
+     *
+     * @param move the encoded move or drop.
+     * @return true if the move is legal.
+     */
+    public boolean isLegal(int move) {
+        if (getWinner() != null) {
+            return false;
+        }
+        int to = Move.getTo(move);
+        if (to >= SQUARE_NUMBER) {
+            return false;
+        }
+        Game.Side side = getSideToMove();
+        if (Move.isDrop(move)) {
+            return board[to] == 0 && getHandCount(side, Move.getDropKind(move)) > 0;
+        }
+        int from = Move.getFrom(move);
+        if (from >= SQUARE_NUMBER || board[from] == 0 || sideOf(board[from]) != side) {
+            return false;
+        }
+        if (board[to] != 0 && sideOf(board[to]) == side) {
+            return false;
+        }
+        return (kindOf(board[from]).getMask(side, from) & (1 << to)) != 0;
+    }
+
+    /**
+     * Plays a legal move encoded by {@code Move} for the side to move.
+     * The returned value undoes the move with {@link #undo(int, int)}.
+     *
+     * @param move the encoded move or drop, which should be legal.
+     * @return the information to undo the move.
+     */
+    public int play(int move) {
+        Game.Side side = getSideToMove();
+        int handOffset = side.ordinal() * HAND_KIND_NUMBER;
+        int to = Move.getTo(move);
+        int captured = board[to];
+        int moved;
+
+        if (Move.isDrop(move)) {
+            PieceKind kind = Move.getDropKind(move);
+            hands[handOffset + handIndexOf(kind)]--;
+            moved = encode(kind, side);
+            board[to] = (byte) moved;
+        } else {
+            int from = Move.getFrom(move);
+            moved = board[from];
+            board[from] = 0;
+            board[to] = encode(kindOf(moved).afterMoveTo(side, to / Game.WIDTH), side);
+        }
+
+        int undo = captured | moved << 4 | flags << 8;
+        if (captured != 0) {
+            PieceKind capturedKind = kindOf(captured);
+            if (capturedKind == PieceKind.LION) {
+                flags |= side == Game.Side.UPPER ? UPPER_WON : LOWER_WON;
+            } else {
+                hands[handOffset + handIndexOf(capturedKind)]++;
+            }
+        }
+        flags ^= LOWER_TO_MOVE;
+        moveCount++;
+        return undo;
+    }
+
+    /**
+     * Takes back the last move played by {@link #play(int)}.
+     *
+     * @param move the encoded move which was played.
+     * @param undo the information returned by {@code play}.
+     */
+    public void undo(int move, int undo) {
+        int captured = undo & 0xF;
+        int moved = (undo >>> 4) & 0xF;
+        flags = undo >>> 8;
+        moveCount--;
+
+        Game.Side side = getSideToMove();
+        int handOffset = side.ordinal() * HAND_KIND_NUMBER;
+        int to = Move.getTo(move);
+        board[to] = (byte) captured;
+        if (Move.isDrop(move)) {
+            hands[handOffset + handIndexOf(kindOf(moved))]++;
+        } else {
+            board[Move.getFrom(move)] = (byte) moved;
+        }
+        if (captured != 0 && kindOf(captured) != PieceKind.LION) {
+            hands[handOffset + handIndexOf(kindOf(captured))]--;
+        }
+    }
+
+    /**
+     * Get the board byte of the square numbered {@code square}.
+     *
+     * @param square the number of the square, {@code row * WIDTH + col}.
+     * @return 0 if the square is empty, otherwise the encoded piece.
+     */
+    public int getPiece(int square) {
+        return board[square];
+    }
+
+    /**
+     * Get the number of pieces of the {@code kind} held by the {@code side}.
+     *
+     * @param side the side of the player.
+     * @param kind the {@code PieceKind} of the pieces.
+     * @return the number of pieces in the hand.
+     */
+    public int getHandCount(Game.Side side, PieceKind kind) {
+        return hands[side.ordinal() * HAND_KIND_NUMBER + handIndexOf(kind)];
+    }
+
+    /**
+     * Get the flags of this state.
+     *
+     * @return the flags, a combination of {@code LOWER_TO_MOVE}, {@code UPPER_WON} and {@code LOWER_WON}.
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Get the side to move.
+     *
+     * @return the side whose turn it is.
+     */
+    public Game.Side getSideToMove() {
+        return (flags & LOWER_TO_MOVE) == 0 ? Game.Side.UPPER : Game.Side.LOWER;
+    }
+
+    /**
+     * Get the side which has won.
+     *
+     * @return the side which has captured the opponent lion, or null.
+     */
+    public Game.Side getWinner() {
+        if ((flags & UPPER_WON) != 0) return Game.Side.UPPER;
+        if ((flags & LOWER_WON) != 0) return Game.Side.LOWER;
+        return null;
+    }
+
+    /**
+     * Get the number of moves and drops played to reach this position.
+     *
+     * @return the number of moves played.
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GameState)) return false;
+        GameState other = (GameState) o;
+        return flags == other.flags
+                && moveCount == other.moveCount
+                && Arrays.equals(board, other.board)
+                && Arrays.equals(hands, other.hands);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(board);
+        result = 31 * result + Arrays.hashCode(hands);
+        result = 31 * result + flags;
+        return 31 * result + moveCount;
+    }
+}
@@ -0,0 +1,166 @@
+package animalchess;
+
+/**
+ * This class implements a pool of compact game states stored as a
+ * struct of arrays, so that a million of live games fit in a small heap.
+ * <p>
+ * Each game has a slot in a few shared primitive arrays: 30 board bytes,
+ * 6 hand counters, the flags and the move counter, about 41 bytes per
+ * game without any object header, plus the mark of a taken slot and its
+ * place in the stack of free slots. A slot is copied into a
+ * {@code GameState} to be played, and stored back afterwards.
+ * <p>
+ * This class is not thread-safe. Callers handling the games of one pool
+ * from several threads should synchronize on the pool.
+ *
+ * @author Yoochul Kim
+ * @see GameState
+ */
+public class GameStatePool {
+    private static final int SQUARE_NUMBER = GameState.SQUARE_NUMBER;
+    private static final int HAND_SIZE = 2 * GameState.HAND_KIND_NUMBER;
+    private static final GameState START = new GameState();
+
+    private final byte[] boards;
+    private final byte[] hands;
+    private final byte[] flags;
+    private final int[] moveCounts;
+
+    // The stack of free slots, the next free slot is at the top.
+    private final int[] freeSlots;
+    private int freeCount;
+    // Whether each slot is taken, so a slot cannot be freed twice.
+    private final boolean[] taken;
+
+    /**
+     * Constructor to create {@code GameStatePool} with room for {@code capacity} games.
+     *
+     * @param capacity the max number of live games
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public GameStatePool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("the capacity of a pool should be positive");
+        }
+        boards = new byte[capacity * SQUARE_NUMBER];
+        hands = new byte[capacity * HAND_SIZE];
+        flags = new byte[capacity];
+        moveCounts = new int[capacity];
+        freeSlots = new int[capacity];
+        taken = new boolean[capacity];
+        // Hand out the lower slots first.
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+    }
+
+    /**
+     * Takes a free slot and sets it to the start position.
+     *
+     * @return the slot of the new game
+     * @throws IllegalStateException if every slot is taken
+     */
+    public int allocate() {
+        if (freeCount == 0) {
+            throw new IllegalStateException("no free slot is left in the pool");
+        }
+        int slot = freeSlots[--freeCount];
+        taken[slot] = true;
+        store(slot, START);
+        return slot;
+    }
+
+    /**
+     * Gives the slot back to this pool once its game has ended.
+     *
+     * @param slot the slot of the game
+     * @throws IllegalArgumentException if the slot is not a slot of this pool
+     * @throws IllegalStateException if the slot is already free
+     */
+    public void free(int slot) {
+        if (slot < 0 || slot >= taken.length) {
+            throw new IllegalArgumentException("the slot " + slot + " is not in the pool");
+        }
+        if (!taken[slot]) {
+            throw new IllegalStateException("the slot " + slot + " is already free");
+        }
+        taken[slot] = false;
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Stores the {@code GameState} in the slot.
+     *
+     * @param slot  the slot of the game
+     * @param state the {@code GameState} to store
+     */
+    public void store(int slot, GameState state) {
+        System.arraycopy(state.board, 0, boards, slot * SQUARE_NUMBER, SQUARE_NUMBER);
+        System.arraycopy(state.hands, 0, hands, slot * HAND_SIZE, HAND_SIZE);
+        flags[slot] = (byte) state.flags;
+        moveCounts[slot] = state.moveCount;
+    }
+
+    /**
+     * Loads the slot into the {@code GameState}.
+     *
+     * @param slot  the slot of the game
+     * @param state the {@code GameState} to overwrite
+     */
+    public void load(int slot, GameState state) {
+        System.arraycopy(boards, slot * SQUARE_NUMBER, state.board, 0, SQUARE_NUMBER);
+        System.arraycopy(hands, slot * HAND_SIZE, state.hands, 0, HAND_SIZE);
+        state.flags = flags[slot];
+        state.moveCount = moveCounts[slot];
+    }
+
+    /**
+     * Get the board byte of a square in the slot, without loading the whole game.
+     *
+     * @param slot   the slot of the game
+     * @param square the number of the square, {@code row * WIDTH + col}
+     * @return 0 if the square is empty, otherwise the encoded piece
+     */
+    public int getPiece(int slot, int square) {
+        return boards[slot * SQUARE_NUMBER + square];
+    }
+
+    /**
+     * Get the flags of the game in the slot.
+     *
+     * @param slot the slot of the game
+     * @return the flags, as in {@link GameState#getFlags()}
+     */
+    public int getFlags(int slot) {
+        return flags[slot];
+    }
+
+    /**
+     * Get the number of moves played in the game in the slot.
+     *
+     * @param slot the slot of the game
+     * @return the number of moves played
+     */
+    public int getMoveCount(int slot) {
+        return moveCounts[slot];
+    }
+
+    /**
+     * Get the max number of live games.
+     *
+     * @return the capacity of this pool
+     */
+    public int capacity() {
+        return flags.length;
+    }
+
+    /**
+     * Get the number of live games.
+     *
+     * @return the number of slots taken
+     */
+    public int size() {
+        return capacity() - freeCount;
+    }
+}
@@ -1,7 +1,5 @@
 package animalchess;
 
-import java.util.ArrayList;
-
 /**
  * This class implements a lion piece which extends {@code Piece}.
  * <p>
@@ -9,6 +7,7 @@ import java.util.ArrayList;
  * Once lion is caught, the game is over.
  *
  * @author Yoochul Kim
+ * @see PieceKind#LION
  */
 public class Lion extends Piece {
 
@@ -20,27 +19,6 @@ public class Lion extends Piece {
      * @param square the {@code Square} will be set on this {@code Lion}.
      */
     public Lion(Player owner, Square square) {
-        super(owner, square);
-    }
-
-    /**
-     * Get the array of {@code Square} which this chick can move to.
-     * If this chick is promoted, then move like {@code Dog}.
-     *
-     * @return the array of {@code Square} which this chick can move to.
-     */
-    @Override
-    public ArrayList<Square> getLegalMoves() {
-        return super.getLegalMoves();
-    }
-
-    /**
-     * The lion will be captured by the capturer and call the {@code winGame()} of the capturer.
-     *
-     * @param capturer The {@code Player} which will catch this lion.
-     */
-    @Override
-    public void beCaptured(Player capturer) {
-        capturer.winGame();
+        super(owner, square, PieceKind.LION);
     }
 }
@@ -0,0 +1,267 @@
+package animalchess;
+
+/**
+ * This class encodes moves and drops as plain {@code int}s, so that they can
+ * be stored, sent and published without creating any object.
+ * <p>
+ * The low 12 bits are the move itself: the number of the square moved to,
+ * the number of the square moved from, or {@code DROP} for a drop, and the
+ * hand index of the dropped kind. The higher bits describe what the move did
+ * in a game: the kind moved, the kind captured, the promotion, the end of
+ * the game and the side which moved.
+ * <p>
+ * As text, a square is its column letter from {@code a} and its row number
+ * from {@code 1}, e.g. {@code c1} for the square of the lion of player 0.
+ * A move is the two squares, e.g. {@code c3c4}, and a drop is the letter of
+ * the kind, {@code D}og, {@code C}at or c{@code H}ick, then {@code *} and
+ * the square, e.g. {@code H*b2}.
+ *
+ * @author Yoochul Kim
+ * @see GameState
+ */
+public final class Move {
+    /**
+     * The mask of the bits which identify a move, without what it did.
+     */
+    public static final int MOVE_MASK = 0xFFF;
+    /**
+     * The value of the from square of a drop.
+     */
+    public static final int DROP = 30;
+    /**
+     * The bit set when the move promoted a chick or cat.
+     */
+    public static final int PROMOTION = 1 << 18;
+    /**
+     * The bit set when the move captured a lion and ended the game.
+     */
+    public static final int GAME_END = 1 << 19;
+    /**
+     * The bit set when the LOWER side moved.
+     */
+    public static final int LOWER = 1 << 20;
+
+    private static final int FROM_SHIFT = 5;
+    private static final int DROP_KIND_SHIFT = 10;
+    private static final int KIND_SHIFT = 12;
+    private static final int CAPTURED_SHIFT = 15;
+    private static final int SQUARE_MASK = 0x1F;
+
+    private static final PieceKind[] KINDS = PieceKind.values();
+
+    // The letters of the kinds held in a hand, by hand index.
+    private static final String DROP_LETTERS = "DCH";
+
+    private Move() {
+    }
+
+    /**
+     * Encodes the move of a piece between two squares.
+     *
+     * @param from the number of the square moved from, {@code row * WIDTH + col}.
+     * @param to   the number of the square moved to.
+     * @return the encoded move.
+     */
+    public static int of(int from, int to) {
+        return to | from << FROM_SHIFT;
+    }
+
+    /**
+     * Encodes the drop of a piece of the {@code kind} from a hand.
+     *
+     * @param kind the {@code PieceKind} of the dropped piece.
+     * @param to   the number of the square dropped on.
+     * @return the encoded drop.
+     */
+    public static int drop(PieceKind kind, int to) {
+        return to | DROP << FROM_SHIFT | GameState.handIndexOf(kind) << DROP_KIND_SHIFT;
+    }
+
+    /**
+     * Adds what the move did in a game to the encoded move.
+     *
+     * @param move     the encoded move.
+     * @param moved    the {@code PieceKind} of the piece before it moved.
+     * @param captured the {@code PieceKind} of the captured piece, or null.
+     * @param side     the side which moved.
+     * @return the encoded move with the kinds and the side.
+     */
+    public static int withDetails(int move, PieceKind moved, PieceKind captured, Game.Side side) {
+        move |= moved.ordinal() << KIND_SHIFT;
+        if (captured != null) {
+            move |= (captured.ordinal() + 1) << CAPTURED_SHIFT;
+            if (captured == PieceKind.LION) move |= GAME_END;
+        }
+        if (side == Game.Side.LOWER) move |= LOWER;
+        return move;
+    }
+
+    /**
+     * Get the square seen in the mirror between the left and right sides of the board.
+     *
+     * @param square the number of the square, {@code row * WIDTH + col}.
+     * @return the number of the square in the same row and the mirrored column.
+     */
+    public static int mirrorSquare(int square) {
+        int col = square % Game.WIDTH;
+        return square - col + Game.WIDTH - 1 - col;
+    }
+
+    /**
+     * Get the move seen in the mirror between the left and right sides of the
+     * board, which is legal in the mirrored position if the move is legal.
+     *
+     * @param move the encoded move, with or without details.
+     * @return the encoded mirrored move, with the same details.
+     */
+    public static int mirror(int move) {
+        int mirrored = move & ~(SQUARE_MASK | SQUARE_MASK << FROM_SHIFT) | mirrorSquare(getTo(move));
+        int from = getFrom(move);
+        return mirrored | (from == DROP ? DROP : mirrorSquare(from)) << FROM_SHIFT;
+    }
+
+    /**
+     * Get the number of the square moved to.
+     *
+     * @param move the encoded move.
+     * @return the number of the square moved to.
+     */
+    public static int getTo(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /**
+     * Get the number of the square moved from.
+     *
+     * @param move the encoded move.
+     * @return the number of the square moved from, or {@code DROP} for a drop.
+     */
+    public static int getFrom(int move) {
+        return (move >>> FROM_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Returns whether the move is a drop from a hand.
+     *
+     * @param move the encoded move.
+     * @return true for a drop.
+     */
+    public static boolean isDrop(int move) {
+        return getFrom(move) == DROP;
+    }
+
+    /**
+     * Get the kind of the dropped piece.
+     *
+     * @param move the encoded drop.
+     * @return the {@code PieceKind} of the dropped piece.
+     */
+    public static PieceKind getDropKind(int move) {
+        return GameState.handKindOf((move >>> DROP_KIND_SHIFT) & 0x3);
+    }
+
+    /**
+     * Get the kind of the piece which moved, before it moved.
+     * It is only known for moves with details.
+     *
+     * @param move the encoded move with details.
+     * @return the {@code PieceKind} of the moved piece.
+     */
+    public static PieceKind getKind(int move) {
+        return KINDS[(move >>> KIND_SHIFT) & 0x7];
+    }
+
+    /**
+     * Get the kind of the captured piece.
+     * It is only known for moves with details.
+     *
+     * @param move the encoded move with details.
+     * @return the {@code PieceKind} of the captured piece, or null.
+     */
+    public static PieceKind getCaptured(int move) {
+        int captured = (move >>> CAPTURED_SHIFT) & 0x7;
+        return captured == 0 ? null : KINDS[captured - 1];
+    }
+
+    /**
+     * Returns whether the move promoted a chick or cat.
+     *
+     * @param move the encoded move with details.
+     * @return true if the move promoted.
+     */
+    public static boolean isPromotion(int move) {
+        return (move & PROMOTION) != 0;
+    }
+
+    /**
+     * Returns whether the move captured a lion and ended the game.
+     *
+     * @param move the encoded move with details.
+     * @return true if the game is over.
+     */
+    public static boolean isGameEnd(int move) {
+        return (move & GAME_END) != 0;
+    }
+
+    /**
+     * Get the side which moved.
+     *
+     * @param move the encoded move with details.
+     * @return the side which moved.
+     */
+    public static Game.Side getSide(int move) {
+        return (move & LOWER) == 0 ? Game.Side.UPPER : Game.Side.LOWER;
+    }
+
+    /**
+     * Writes the move as text, e.g. {@code c3c4} or {@code H*b2}.
+     *
+     * @param move the encoded move.
+     * @return the text of the move.
+     */
+    public static String toText(int move) {
+        StringBuilder text = new StringBuilder(4);
+        if (isDrop(move)) {
+            text.append(DROP_LETTERS.charAt(GameState.handIndexOf(getDropKind(move)))).append('*');
+        } else {
+            appendSquare(text, getFrom(move));
+        }
+        appendSquare(text, getTo(move));
+        return text.toString();
+    }
+
+    /**
+     * Reads a move written as text, e.g. {@code c3c4} or {@code H*b2}.
+     *
+     * @param text the text of the move.
+     * @return the encoded move.
+     * @throws IllegalArgumentException if the text is not a move.
+     */
+    public static int parse(CharSequence text) {
+        if (text.length() != 4) {
+            throw new IllegalArgumentException("a move should be written with 4 characters");
+        }
+        int to = parseSquare(text.charAt(2), text.charAt(3));
+        if (text.charAt(1) == '*') {
+            int handIndex = DROP_LETTERS.indexOf(text.charAt(0));
+            if (handIndex < 0) {
+                throw new IllegalArgumentException("only a dog, cat or chick can be dropped");
+            }
+            return drop(GameState.handKindOf(handIndex), to);
+        }
+        return of(parseSquare(text.charAt(0), text.charAt(1)), to);
+    }
+
+    private static void appendSquare(StringBuilder text, int square) {
+        text.append((char) ('a' + square % Game.WIDTH)).append((char) ('1' + square / Game.WIDTH));
+    }
+
+    private static int parseSquare(char colLetter, char rowDigit) {
+        int col = colLetter - 'a';
+        int row = rowDigit - '1';
+        if (col < Game.MIN_COL || Game.MAX_COL < col || row < Game.MIN_ROW || Game.MAX_ROW < row) {
+            throw new IllegalArgumentException("a square with the passed name does not exist");
+        }
+        return row * Game.WIDTH + col;
+    }
+}
@@ -0,0 +1,201 @@
+package animalchess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a preallocated ring buffer of move events,
+ * written by the one thread playing a game and read by any number of
+ * consumers, each at their own pace.
+ * <p>
+ * An event is one {@code long}: the number of moves played after the move
+ * in the high 32 bits, and the move encoded by {@code Move} with its details
+ * in the low 32 bits. Publishing and reading events allocate nothing.
+ * When the game restarts from another position, reset or loaded, a
+ * {@code RESET} event tells where the moves of the new position begin.
+ * <p>
+ * The producer never waits for consumers. A consumer which falls as far as
+ * the capacity behind loses the oldest events; it is told how many, and can
+ * catch up with {@link Game#getSnapshot()}.
+ *
+ * @author Yoochul Kim
+ * @see Game#getMoveEvents()
+ */
+public class MoveEventRing {
+    /**
+     * The handler of the events read by a {@code Reader}.
+     */
+    public interface Handler {
+        /**
+         * Handles one event.
+         *
+         * @param event      the event, see {@link MoveEventRing#moveOf(long)}
+         *                   and {@link MoveEventRing#moveCountOf(long)}.
+         * @param sequence   the sequence number of the event in the ring.
+         * @param endOfBatch true for the last event of the batch.
+         */
+        void onEvent(long event, long sequence, boolean endOfBatch);
+    }
+
+    /**
+     * The move of the event published when the game restarts from another
+     * position; its move count is the one of the new position.
+     */
+    public static final int RESET = -1;
+
+    private final AtomicLongArray events;
+    private final int mask;
+
+    // The sequence number of the next event to publish.
+    private final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * Constructor to create {@code MoveEventRing} holding the last
+     * {@code capacity} events.
+     *
+     * @param capacity the number of events kept, a power of two.
+     * @throws IllegalArgumentException if the capacity is not a power of two.
+     */
+    public MoveEventRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("the capacity of a ring should be a power of two");
+        }
+        events = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the move of an event.
+     *
+     * @param event the event.
+     * @return the move encoded by {@code Move}, with its details.
+     */
+    public static int moveOf(long event) {
+        return (int) event;
+    }
+
+    /**
+     * Get the number of moves played after the move of an event.
+     *
+     * @param event the event.
+     * @return the number of moves played.
+     */
+    public static int moveCountOf(long event) {
+        return (int) (event >>> 32);
+    }
+
+    /**
+     * Returns whether an event is the restart of the game from another position.
+     *
+     * @param event the event.
+     * @return true for a {@code RESET} event.
+     */
+    public static boolean isReset(long event) {
+        return moveOf(event) == RESET;
+    }
+
+    /**
+     * Publishes a move. Only the thread playing the game should call it.
+     *
+     * @param move      the move encoded by {@code Move}, with its details.
+     * @param moveCount the number of moves played after the move.
+     */
+    public void publish(int move, int moveCount) {
+        long sequence = cursor.get();
+        // The ordered writes make the event visible before the new cursor.
+        events.lazySet((int) sequence & mask, (long) moveCount << 32 | (move & 0xFFFFFFFFL));
+        cursor.lazySet(sequence + 1);
+    }
+
+    /**
+     * Get the sequence number of the next event to publish.
+     *
+     * @return the number of events published so far.
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * Get the number of events kept in this ring.
+     *
+     * @return the capacity.
+     */
+    public int capacity() {
+        return events.length();
+    }
+
+    /**
+     * Creates a consumer which reads the events published from now on.
+     *
+     * @return the new {@code Reader}.
+     */
+    public Reader newReader() {
+        return new Reader(cursor.get());
+    }
+
+    /**
+     * This class implements one consumer of the ring. A reader is used by one thread.
+     */
+    public class Reader {
+        private long sequence;
+        private long lost;
+
+        private Reader(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Hands the events published since the last call, at most
+         * {@code maxBatch} of them, to the handler.
+         *
+         * @param handler  the {@code Handler} of the events.
+         * @param maxBatch the max number of events to handle.
+         * @return the number of events handled.
+         */
+        public int poll(Handler handler, int maxBatch) {
+            long available = cursor.get();
+            skipOverwritten(available);
+            int count = (int) Math.min(available - sequence, maxBatch);
+
+            for (int i = 0; i < count; i++) {
+                long event = events.get((int) sequence & mask);
+                // The producer may be overwriting the slot once it has gone a whole lap ahead.
+                if (cursor.get() - sequence >= events.length()) {
+                    skipOverwritten(cursor.get());
+                    return i;
+                }
+                handler.onEvent(event, sequence, i == count - 1);
+                sequence++;
+            }
+            return count;
+        }
+
+        /**
+         * Get the number of events this reader has lost because it fell behind.
+         *
+         * @return the number of events lost.
+         */
+        public long getLost() {
+            return lost;
+        }
+
+        /**
+         * Get the number of events published but not read yet.
+         *
+         * @return the backlog of this reader.
+         */
+        public long getBacklog() {
+            return cursor.get() - sequence;
+        }
+
+        private void skipOverwritten(long available) {
+            // The oldest slot is left out, as the producer may be writing it.
+            long oldest = available - events.length() + 1;
+            if (sequence < oldest) {
+                lost += oldest - sequence;
+                sequence = oldest;
+            }
+        }
+    }
+}
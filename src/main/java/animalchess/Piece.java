@@ -13,8 +13,8 @@ import static animalchess.Game.*;
  * {@code Dog}, and {@code PromotablePiece} which is
  *  extended by {@code Chick} and {@code Cat}.
  * <p>
- * Each animal should override {@code getLegalMoves()} to
- * find their legal movement.
+ * The movement of each animal is described by its {@code PieceKind},
+ * so all animals share the move generation and validation of this class.
  *
  * @author Yoochul Kim
  */
@@ -26,14 +26,18 @@ public abstract class Piece {
     // Piece owner will always exist.
     private Player owner;
 
+    // Describes how this piece moves, it changes on promotion and capture.
+    private PieceKind kind;
+
     /**
      * Constructor to create {@code Piece} with
-     * given {@code Player} and {@code Square}.
+     * given {@code Player}, {@code Square} and {@code PieceKind}.
      *
      * @param owner  the {@code Player} will own this {@code Piece}.
      * @param square the {@code Square} which this {@code Piece} is laid on.
+     * @param kind   the {@code PieceKind} which describes how this {@code Piece} moves.
      */
-    Piece(Player owner, Square square) {
+    Piece(Player owner, Square square, PieceKind kind) {
         // Throws an exception if a player put their
         // piece to the square occupied by another piece.
         if (!square.isEmptySquare()) {
@@ -41,6 +45,7 @@ public abstract class Piece {
         }
 
         this.owner = owner;
+        this.kind = kind;
 
         // Set the passed square to this piece and
         // set this piece to the square. (bi-directional)
@@ -65,21 +70,21 @@ public abstract class Piece {
             setSquare(toSquare);
             toSquare.placePiece(this);
         } else {
-            // Calculates that this piece can go by considering the
-            // opponent's pieces and own pieces.
-            // In short, brings about which square can be legally moved.
-            // (refer internal for more information)
-            ArrayList<Square> legalMovesFromSuper = getLegalMoves();
-
-            // Should consider if the square passed as a parameter
-            // is included in the legal movement.
-            boolean isLegalMove = legalMovesFromSuper.contains(toSquare);
+            // Checks with the movement masks of the game whether this piece can go
+            // to the square by considering the opponent's pieces and own pieces,
+            // without building the whole list of getLegalMoves().
+            boolean isLegalMove = getSquare().getGame().isLegal(this, getSquare(), toSquare);
 
             if (isLegalMove) {
+                // Keeps what the move does, to tell the game about it.
+                int move = Move.of(getSquare().getIndex(), toSquare.getIndex());
+                PieceKind movedKind = kind;
+                PieceKind capturedKind = toSquare.isEmptySquare() ? null : toSquare.getPiece().getKind();
+
                 // If there is a piece where you want to go,
                 // it should be owned by the opponent since all squares,
                 // where your pieces are located, were filtered out of
-                // getLegalMoves() above.
+                // the legality check above.
                 if (!toSquare.isEmptySquare()) {
                     // Captures the piece located on the square where you want to move to.
                     toSquare.getPiece().beCaptured(getOwner());
@@ -102,6 +107,14 @@ public abstract class Piece {
                     setSquare(toSquare);
                     toSquare.placePiece(this);
                 }
+
+                // When a chick or cat enters the farthest two rows, it promotes.
+                // Other kinds, and the promoted ones, stay as they are.
+                kind = kind.afterMoveTo(getOwner().getSide(), toSquare.getRow());
+
+                move = Move.withDetails(move, movedKind, capturedKind, getOwner().getSide());
+                if (kind != movedKind) move |= Move.PROMOTION;
+                toSquare.getGame().recordMove(move);
             } else {
                 throw new IllegalArgumentException("the piece cannot move to the square passed as a parameter");
             }
@@ -113,14 +126,18 @@ public abstract class Piece {
      * Be captured by the {@code Player} which is object of
      * the capturer implementing {@code Piece}.
      * <p>
-     * Only dogs use this behavior, chick and cat will use the
-     * beCaptured of PromotablePiece. The lion will use its own
-     * beCaptured behavior as the game is over if caught.
+     * Once a lion is caught, the game is over and the capturer wins.
+     * A promoted chick or cat is unpromoted once it is caught.
      *
      * @param capturer the {@code Player} which will
      *                 catch the piece extending this {@code Piece}.
      */
     public void beCaptured(Player capturer) {
+        if (kind == PieceKind.LION) {
+            capturer.winGame();
+            return;
+        }
+        kind = kind.getDemoted();
         // 1 remove the piece from the square,
         // 2 remove square information from piece. (bi-directional)
         // 3 change owner information to piece.
@@ -148,6 +165,29 @@ public abstract class Piece {
         this.owner = owner;
     }
 
+    /**
+     * Puts this piece back on the board with the given owner and kind,
+     * as if it was newly created. It is used to reuse pieces of a game.
+     *
+     * @param owner  the {@code Player} will own this {@code Piece}.
+     * @param square the empty {@code Square} which this {@code Piece} will be laid on.
+     * @param kind   the {@code PieceKind} of this {@code Piece}.
+     */
+    void reset(Player owner, Square square, PieceKind kind) {
+        this.owner = owner;
+        this.kind = kind;
+        square.placePiece(this);
+    }
+
+    /**
+     * Set the kind of this piece.
+     *
+     * @param kind the {@code PieceKind} which will be set on this piece.
+     */
+    void setKind(PieceKind kind) {
+        this.kind = kind;
+    }
+
     /**
      * Set the square in this piece.
      *
@@ -160,34 +200,29 @@ public abstract class Piece {
     /**
      * Get all legal moves of the animal.
      *
-     * All pieces require a common logic.
+     * All pieces require a common logic, driven by the masks of their {@code PieceKind}.
      * Pieces placed on the border of the chessboard cannot be moved outside, and
      * pieces cannot be moved to the place where one's own pieces are placed,
      * so this method will return available moves correspondingly.
      *
      * @return the array of {@code Square} which this piece can be laid on.
      */
-    public ArrayList<Square> getLegalMoves(){
-        int row = square.getRow();
-        int col = square.getCol();
-
-        ArrayList<Square> legalMovesWithoutAnimalSpecificMoveConsideration = new ArrayList<>();
-        // Check three lines for rows (above, the same row, and below)
-        for (int i = row - 1; i <= row + 1; i++) {
-            // when the row is outbound
-            if(i < MIN_ROW || MAX_ROW < i) continue;
-            // Check three lines for columns (left, the same column, and right)
-            for (int j = col - 1; j <= col + 1; j++) {
-                // when the column is outbound
-                if(j < MIN_COL || MAX_COL < j) continue;
-                // when the same owner's piece is laid, ignore it
-                if (square.getGame().getSquare(i, j).getPiece() != null
-                        && square.getGame().getSquare(i, j).getPiece().getOwner().equals(this.getOwner())) continue;
-                legalMovesWithoutAnimalSpecificMoveConsideration.add(square.getGame().getSquare(i, j));
-            }
+    public ArrayList<Square> getLegalMoves() {
+        Game game = square.getGame();
+        ArrayList<Square> legalMoves = new ArrayList<>();
+
+        // Visit every square the kind can step to from here, from the top left.
+        int mask = kind.getMask(owner.getSide(), square.getIndex());
+        while (mask != 0) {
+            int index = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            Square toSquare = game.getSquare(index / WIDTH, index % WIDTH);
+            // when the same owner's piece is laid, ignore it
+            if (toSquare.getPieceOwner() == owner) continue;
+            legalMoves.add(toSquare);
         }
 
-        return legalMovesWithoutAnimalSpecificMoveConsideration;
+        return legalMoves;
     }
 
     /**
@@ -199,6 +234,15 @@ public abstract class Piece {
         return square;
     }
 
+    /**
+     * Get the {@code PieceKind} which describes how this piece moves.
+     *
+     * @return the {@code PieceKind} of this piece.
+     */
+    public PieceKind getKind() {
+        return kind;
+    }
+
     /**
      * Get the owner {@code Player} of this {@code Piece}.
      *
@@ -0,0 +1,145 @@
+package animalchess;
+
+/**
+ * This enum describes every kind of animal, including the promoted
+ * chick and cat, by data instead of by overriding methods.
+ * <p>
+ * Each kind has the steps it can make, written as {row, col} seen from
+ * the UPPER side whose animals head downward. From the steps, the masks of
+ * squares it can step to are precomputed for every side and square.
+ * Every square of the board is numbered {@code row * WIDTH + col}, so the
+ * 30 squares fit in the bits of one {@code int}.
+ * <p>
+ * The move generation and validation of all animals go through these
+ * masks, so they share one path whatever the animal is.
+ *
+ * @author Yoochul Kim
+ * @see Piece
+ */
+public enum PieceKind {
+    LION(Steps.LION),
+    DOG(Steps.DOG),
+    CAT(Steps.CAT),
+    CHICK(Steps.CHICK),
+    PROMOTED_CAT(Steps.DOG),
+    PROMOTED_CHICK(Steps.DOG);
+
+    /**
+     * The number of squares on the board.
+     */
+    public static final int SQUARE_NUMBER = Game.HEIGHT * Game.WIDTH;
+
+    // player 0's promotion row
+    private static final int P0_PROMOTE_RANK = 4;
+
+    // player 1's promotion row
+    private static final int P1_PROMOTE_RANK = 1;
+
+    // [side * SQUARE_NUMBER + square]
+    private final int[] masks = new int[2 * SQUARE_NUMBER];
+
+    // The kind after promotion (for chick and cat) or capture (for promoted ones).
+    private PieceKind promoted = this;
+    private PieceKind demoted = this;
+
+    static {
+        CAT.promoted = PROMOTED_CAT;
+        CHICK.promoted = PROMOTED_CHICK;
+        PROMOTED_CAT.demoted = CAT;
+        PROMOTED_CHICK.demoted = CHICK;
+    }
+
+    PieceKind(int[][] steps) {
+        for (Game.Side side : Game.Side.values()) {
+            // Player 1's animals is heading upward, so the rows are mirrored.
+            int forward = side == Game.Side.UPPER ? 1 : -1;
+            for (int square = 0; square < SQUARE_NUMBER; square++) {
+                int row = square / Game.WIDTH;
+                int col = square % Game.WIDTH;
+                int mask = 0;
+                for (int[] step : steps) {
+                    int toRow = row + step[0] * forward;
+                    int toCol = col + step[1];
+                    if (toRow < Game.MIN_ROW || Game.MAX_ROW < toRow) continue;
+                    if (toCol < Game.MIN_COL || Game.MAX_COL < toCol) continue;
+                    mask |= 1 << (toRow * Game.WIDTH + toCol);
+                }
+                masks[side.ordinal() * SQUARE_NUMBER + square] = mask;
+            }
+        }
+    }
+
+    /**
+     * Get the mask of squares this kind could step to from the square
+     * numbered {@code square}, ignoring the other pieces.
+     *
+     * @param side   the side of the owner of the animal.
+     * @param square the number of the square the animal moves from.
+     * @return the mask of squares the animal could step to.
+     */
+    public int getMask(Game.Side side, int square) {
+        return masks[side.ordinal() * SQUARE_NUMBER + square];
+    }
+
+    /**
+     * Returns whether this kind can be promoted.
+     *
+     * @return true for an unpromoted chick or cat.
+     */
+    public boolean isPromotable() {
+        return promoted != this;
+    }
+
+    /**
+     * Returns whether this kind is a promoted chick or cat.
+     *
+     * @return true for a promoted chick or cat.
+     */
+    public boolean isPromoted() {
+        return demoted != this;
+    }
+
+    /**
+     * Get the kind after promotion.
+     *
+     * @return the promoted kind, or this kind if it cannot be promoted.
+     */
+    public PieceKind getPromoted() {
+        return promoted;
+    }
+
+    /**
+     * Get the kind after being captured, i.e. without promotion.
+     *
+     * @return the unpromoted kind, or this kind if it is not promoted.
+     */
+    public PieceKind getDemoted() {
+        return demoted;
+    }
+
+    /**
+     * Get the kind after moving into the {@code row}. When a chick or cat
+     * enters the farthest two rows from the side, it promotes.
+     *
+     * @param side the side of the owner of the animal.
+     * @param row  the row the animal moves into.
+     * @return the kind after the move.
+     */
+    public PieceKind afterMoveTo(Game.Side side, int row) {
+        boolean inPromotionRank = side == Game.Side.UPPER ? row >= P0_PROMOTE_RANK : row <= P1_PROMOTE_RANK;
+        return inPromotionRank ? promoted : this;
+    }
+
+    // Kept in a nested class, since an enum cannot refer to its own
+    // static fields while its constants are being created.
+    private static final class Steps {
+        // Lion can move one space in any direction.
+        static final int[][] LION = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+        // Dog can't move to 2 diagonal directions behind of it.
+        static final int[][] DOG = {{-1, 0}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+        // Cat can't move to the sides and directly behind it.
+        static final int[][] CAT = {{-1, -1}, {-1, 1}, {1, -1}, {1, 0}, {1, 1}};
+        // Chick can only go one space forward.
+        static final int[][] CHICK = {{1, 0}};
+    }
+}
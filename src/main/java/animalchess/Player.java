@@ -62,6 +62,11 @@ public class Player {
             square.removePiece();
             // put the piece to the square where the player wants to go.
             square.placePiece(piece);
+            // count the drop as a move of the game, if any.
+            if (square.getGame() != null) {
+                int move = Move.drop(piece.getKind(), square.getIndex());
+                square.getGame().recordMove(Move.withDetails(move, piece.getKind(), null, side));
+            }
         }
     }
 
@@ -94,6 +99,20 @@ public class Player {
         return piecesInHand;
     }
 
+    /**
+     * Returns whether this player holds a piece of the {@code kind} in the hand.
+     *
+     * @param kind the {@code PieceKind} of the piece to look for.
+     * @return true if a piece of the {@code kind} is in the hand.
+     */
+    public boolean hasInHand(PieceKind kind) {
+        // A hand holds at most the few pieces captured from the opponent.
+        for (Piece piece : piecesInHand) {
+            if (piece.getKind() == kind) return true;
+        }
+        return false;
+    }
+
     /**
      * Change this player's victory status to the true.
      */
@@ -101,6 +120,15 @@ public class Player {
         isWinner = true;
     }
 
+    /**
+     * Empties the hand and clears the victory of this player,
+     * so they can play a game again.
+     */
+    void reset() {
+        piecesInHand.clear();
+        isWinner = false;
+    }
+
     /**
      * Returns the state of this player's victory.
      *
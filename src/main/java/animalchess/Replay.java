@@ -0,0 +1,198 @@
+package animalchess;
+
+import java.util.Arrays;
+
+/**
+ * This class implements a recorded game prepared to be replayed from any ply.
+ * <p>
+ * The game is played once on a {@code GameState} when the replay is made,
+ * keeping a compact copy of the position every {@code interval} plies and
+ * the information to undo each move. A {@code Cursor} then seeks to any
+ * ply from the nearest copy in at most {@code interval} moves, and steps
+ * forwards or backwards by playing or undoing one move.
+ * <p>
+ * A replay never changes after it is made, so one replay of a game can be
+ * shared by any number of threads, and a cursor, which is only a position
+ * and a ply, is cheap enough to make for each request.
+ *
+ * @author Yoochul Kim
+ * @see GameState
+ */
+public final class Replay {
+    /**
+     * The default number of plies between two copies of the position.
+     */
+    public static final int DEFAULT_INTERVAL = 16;
+
+    private static final int BOARD_BYTES = GameState.SQUARE_NUMBER;
+    private static final int HAND_BYTES = 2 * GameState.HAND_KIND_NUMBER;
+    private static final int CHECKPOINT_BYTES = BOARD_BYTES + HAND_BYTES + 1;
+
+    private final int[] moves;
+    private final int[] undos;
+    private final int interval;
+    // The board, the hands and the flags of every interval-th position.
+    private final byte[] checkpoints;
+
+    /**
+     * Constructor to create {@code Replay} of a game played from the start position,
+     * with the default interval.
+     *
+     * @param moves the moves encoded by {@code Move}.
+     * @param count the number of moves.
+     * @throws IllegalArgumentException if a move is illegal.
+     */
+    public Replay(int[] moves, int count) {
+        this(moves, count, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Constructor to create {@code Replay} of a game played from the start position.
+     *
+     * @param moves    the moves encoded by {@code Move}.
+     * @param count    the number of moves.
+     * @param interval the number of plies between two copies of the position.
+     * @throws IllegalArgumentException if a move is illegal or the interval is not positive.
+     */
+    public Replay(int[] moves, int count, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("the interval should be positive");
+        }
+        this.moves = Arrays.copyOf(moves, count);
+        this.undos = new int[count];
+        this.interval = interval;
+        this.checkpoints = new byte[(count / interval + 1) * CHECKPOINT_BYTES];
+
+        GameState state = new GameState();
+        for (int ply = 0; ply <= count; ply++) {
+            if (ply % interval == 0) {
+                save(state, ply / interval);
+            }
+            if (ply == count) break;
+            if (!state.isLegal(moves[ply])) {
+                throw new IllegalArgumentException("the move " + Move.toText(moves[ply]) + " at " + ply + " is illegal");
+            }
+            undos[ply] = state.play(moves[ply]);
+        }
+    }
+
+    /**
+     * Creates a cursor at the start position.
+     *
+     * @return the new {@code Cursor}.
+     */
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Get the number of moves of the game.
+     *
+     * @return the number of moves.
+     */
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    /**
+     * Get a move of the game.
+     *
+     * @param ply the index of the move.
+     * @return the move encoded by {@code Move}.
+     */
+    public int getMove(int ply) {
+        return moves[ply];
+    }
+
+    private void save(GameState state, int index) {
+        int offset = index * CHECKPOINT_BYTES;
+        System.arraycopy(state.board, 0, checkpoints, offset, BOARD_BYTES);
+        System.arraycopy(state.hands, 0, checkpoints, offset + BOARD_BYTES, HAND_BYTES);
+        checkpoints[offset + BOARD_BYTES + HAND_BYTES] = (byte) state.flags;
+    }
+
+    private void load(GameState state, int index) {
+        int offset = index * CHECKPOINT_BYTES;
+        System.arraycopy(checkpoints, offset, state.board, 0, BOARD_BYTES);
+        System.arraycopy(checkpoints, offset + BOARD_BYTES, state.hands, 0, HAND_BYTES);
+        state.flags = checkpoints[offset + BOARD_BYTES + HAND_BYTES];
+        state.moveCount = index * interval;
+    }
+
+    /**
+     * This class implements a position of the replay which moves through the game.
+     * A cursor is used by one thread.
+     */
+    public final class Cursor {
+        private final GameState state = new GameState();
+
+        private Cursor() {
+        }
+
+        /**
+         * Get the ply of the cursor, the number of moves played to reach its position.
+         *
+         * @return the ply.
+         */
+        public int getPly() {
+            return state.getMoveCount();
+        }
+
+        /**
+         * Get the position at the cursor. It changes when the cursor moves,
+         * and should not be changed by the caller.
+         *
+         * @return the {@code GameState} at the cursor.
+         */
+        public GameState getState() {
+            return state;
+        }
+
+        /**
+         * Plays the next move.
+         *
+         * @return false if the cursor is at the end of the game.
+         */
+        public boolean forward() {
+            int ply = getPly();
+            if (ply == moves.length) {
+                return false;
+            }
+            state.play(moves[ply]);
+            return true;
+        }
+
+        /**
+         * Takes back the last move.
+         *
+         * @return false if the cursor is at the start of the game.
+         */
+        public boolean back() {
+            int ply = getPly();
+            if (ply == 0) {
+                return false;
+            }
+            state.undo(moves[ply - 1], undos[ply - 1]);
+            return true;
+        }
+
+        /**
+         * Moves the cursor to a ply, from the nearest copy of the position
+         * or from where it is, whichever is closer.
+         *
+         * @param ply the ply, from 0 to the number of moves.
+         * @throws IllegalArgumentException if the game has no such ply.
+         */
+        public void seek(int ply) {
+            if (ply < 0 || ply > moves.length) {
+                throw new IllegalArgumentException("the game has no ply " + ply);
+            }
+            int index = Math.min((ply + interval / 2) / interval, moves.length / interval);
+            if (Math.abs(index * interval - ply) < Math.abs(getPly() - ply)) {
+                load(state, index);
+            }
+            while (getPly() < ply) forward();
+            while (getPly() > ply) back();
+        }
+    }
+}
@@ -133,4 +133,13 @@ public class Square {
     public int getCol() {
         return col;
     }
+
+    /**
+     * Get the number of this square, counted row by row from the top left.
+     *
+     * @return the number of this square, {@code row * WIDTH + col}.
+     */
+    public int getIndex() {
+        return row * Game.WIDTH + col;
+    }
 }
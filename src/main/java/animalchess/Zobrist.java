@@ -0,0 +1,116 @@
+package animalchess;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class computes 64-bit Zobrist hashes of positions.
+ * <p>
+ * A random key is drawn for every piece code on every square, every count
+ * of every kind in every hand, the side to move and each winner, and the
+ * hash of a position is the exclusive or of the keys of its contents. The
+ * number of moves played is left out, so a position reached at different
+ * plies has the same hash. The keys come from a fixed seed, so hashes are
+ * the same in every process and can be stored.
+ * <p>
+ * A position and its mirror between the left and right sides of the board
+ * play the same, so tables of positions can keep one of the two under the
+ * {@link #canonicalHash(GameState)}, the lower of their hashes.
+ *
+ * @author Yoochul Kim
+ * @see GameState
+ */
+public final class Zobrist {
+    // The max number of pieces of one kind in a hand: every chick of the game.
+    private static final int MAX_HAND_COUNT = 6;
+    private static final long SEED = 0x5EED_A417_C4E5_5L;
+
+    // [board byte][square]
+    private static final long[][] PIECE_KEYS = new long[16][GameState.SQUARE_NUMBER];
+    // [side * HAND_KIND_NUMBER + hand index][count]
+    private static final long[][] HAND_KEYS = new long[2 * GameState.HAND_KIND_NUMBER][MAX_HAND_COUNT + 1];
+    private static final long LOWER_TO_MOVE_KEY;
+    private static final long UPPER_WON_KEY;
+    private static final long LOWER_WON_KEY;
+    private static final int[] MIRRORED_SQUARES = new int[GameState.SQUARE_NUMBER];
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (long[] keys : PIECE_KEYS) {
+            for (int i = 0; i < keys.length; i++) keys[i] = random.nextLong();
+        }
+        for (long[] keys : HAND_KEYS) {
+            // No key for an empty hand.
+            for (int i = 1; i < keys.length; i++) keys[i] = random.nextLong();
+        }
+        LOWER_TO_MOVE_KEY = random.nextLong();
+        UPPER_WON_KEY = random.nextLong();
+        LOWER_WON_KEY = random.nextLong();
+        for (int square = 0; square < GameState.SQUARE_NUMBER; square++) {
+            MIRRORED_SQUARES[square] = Move.mirrorSquare(square);
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Computes the hash of a position.
+     *
+     * @param state the {@code GameState} of the position.
+     * @return the 64-bit hash.
+     */
+    public static long hash(GameState state) {
+        return boardHash(state.board) ^ handsAndFlagsHash(state);
+    }
+
+    /**
+     * Computes the hash of the mirror of a position, without mirroring it.
+     *
+     * @param state the {@code GameState} of the position.
+     * @return the 64-bit hash of the mirrored position.
+     * @see GameState#copyMirrored(GameState)
+     */
+    public static long mirroredHash(GameState state) {
+        return mirroredBoardHash(state.board) ^ handsAndFlagsHash(state);
+    }
+
+    /**
+     * Computes the hash shared by a position and its mirror.
+     *
+     * @param state the {@code GameState} of the position.
+     * @return the lower of the hashes of the position and of its mirror.
+     */
+    public static long canonicalHash(GameState state) {
+        long rest = handsAndFlagsHash(state);
+        return Math.min(boardHash(state.board) ^ rest, mirroredBoardHash(state.board) ^ rest);
+    }
+
+    private static long handsAndFlagsHash(GameState state) {
+        long hash = 0;
+        byte[] hands = state.hands;
+        for (int i = 0; i < hands.length; i++) {
+            hash ^= HAND_KEYS[i][hands[i]];
+        }
+        int flags = state.flags;
+        if ((flags & GameState.LOWER_TO_MOVE) != 0) hash ^= LOWER_TO_MOVE_KEY;
+        if ((flags & GameState.UPPER_WON) != 0) hash ^= UPPER_WON_KEY;
+        if ((flags & GameState.LOWER_WON) != 0) hash ^= LOWER_WON_KEY;
+        return hash;
+    }
+
+    private static long boardHash(byte[] board) {
+        long hash = 0;
+        for (int square = 0; square < GameState.SQUARE_NUMBER; square++) {
+            if (board[square] != 0) hash ^= PIECE_KEYS[board[square]][square];
+        }
+        return hash;
+    }
+
+    private static long mirroredBoardHash(byte[] board) {
+        long hash = 0;
+        for (int square = 0; square < GameState.SQUARE_NUMBER; square++) {
+            if (board[square] != 0) hash ^= PIECE_KEYS[board[square]][MIRRORED_SQUARES[square]];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,253 @@
+package animalchess.analysis;
+
+import animalchess.Game;
+import animalchess.GamePool;
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.engine.Evaluator;
+import animalchess.engine.Search;
+import animalchess.engine.SearchInfo;
+import animalchess.store.GameArchive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class implements a batch job analysing every move of the games of
+ * a {@code GameArchive} with a fixed engine budget.
+ * <p>
+ * Games are read in order and each one becomes a task of a
+ * {@code ForkJoinPool}, which replays it on a {@code Game} and splits its
+ * positions into one search each, so the positions of all games in flight
+ * are spread over the pool. At most {@code maxInFlight} games are read
+ * ahead of the oldest game not yet written, so reading never outruns the
+ * analysis, and the results are written in the order of the games.
+ * <p>
+ * The output file holds one record of {@code RECORD_BYTES} bytes per move:
+ * the number of the game (8 bytes), the ply (2), the move (2), the score
+ * of the best move and of the played move for the side to move (2 each),
+ * and the flags (1), {@code BLUNDER} when the played move loses at least
+ * {@code BLUNDER_LOSS}. Both scores come from one search of the position
+ * which gives every move its exact score, so the played move is scored at
+ * the same depth as the best one and never above it.
+ * Every {@code CHECKPOINT_INTERVAL} games the output
+ * is forced to disk and a checkpoint file records how far it got, so a job
+ * which is stopped resumes from there.
+ *
+ * @author Yoochul Kim
+ * @see Search
+ */
+public class BulkAnalysis {
+    /**
+     * The number of bytes of the record of a move in the output.
+     */
+    public static final int RECORD_BYTES = Long.BYTES + 4 * Short.BYTES + 1;
+    /**
+     * The flag of a move which loses at least {@code BLUNDER_LOSS}.
+     */
+    public static final int BLUNDER = 0x01;
+    /**
+     * The loss of score, against the best move, from which a move is a blunder.
+     */
+    public static final int BLUNDER_LOSS = 300;
+    /**
+     * The number of games written between two checkpoints.
+     */
+    public static final int CHECKPOINT_INTERVAL = 256;
+
+    private final GameArchive.Reader games;
+    private final Path output;
+    private final Path checkpoint;
+    private final ForkJoinPool pool;
+    private final int depth;
+    private final long nodesPerMove;
+    private final int maxInFlight;
+    private final GamePool gamePool;
+    private final ThreadLocal<Search> searches = ThreadLocal.withInitial(() -> {
+        Search search = new Search(new Evaluator());
+        search.setMultiPv(GameState.MAX_MOVES);
+        return search;
+    });
+
+    /**
+     * Constructor to create {@code BulkAnalysis}.
+     *
+     * @param games        the {@code GameArchive.Reader} of the games to analyse.
+     * @param output       the path of the output; its checkpoint is next to it.
+     * @param pool         the {@code ForkJoinPool} running the searches.
+     * @param depth        the max depth of the search of each position.
+     * @param nodesPerMove the max number of nodes of the search of each position.
+     * @param maxInFlight  the max number of games read but not yet written.
+     */
+    public BulkAnalysis(GameArchive.Reader games, Path output, ForkJoinPool pool, int depth, long nodesPerMove,
+                        int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("at least one game should be in flight");
+        }
+        this.games = games;
+        this.output = output;
+        this.checkpoint = output.resolveSibling(output.getFileName() + ".checkpoint");
+        this.pool = pool;
+        this.depth = depth;
+        this.nodesPerMove = nodesPerMove;
+        this.maxInFlight = maxInFlight;
+        this.gamePool = new GamePool(pool.getParallelism());
+    }
+
+    /**
+     * Analyses the games from the last checkpoint, or from the first game,
+     * to the last game of the archive.
+     *
+     * @return the number of games analysed by this run.
+     * @throws IOException if the output cannot be written.
+     */
+    public long run() throws IOException {
+        long next = 0;
+        long written = 0;
+        if (Files.exists(checkpoint)) {
+            ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            next = saved.getLong();
+            written = saved.getLong();
+        }
+
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Records written after the checkpoint are written again.
+            out.truncate(written);
+            out.position(written);
+
+            ArrayDeque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<>();
+            long first = next;
+            long end = games.size();
+            long read = next;
+            while (next < end) {
+                while (read < end && inFlight.size() < maxInFlight) {
+                    int[] moves = new int[games.getMoveCount(read)];
+                    games.readMoves(read, moves);
+                    inFlight.add(pool.submit(new GameTask(read, moves)));
+                    read++;
+                }
+
+                ByteBuffer records = ByteBuffer.wrap(inFlight.poll().join());
+                while (records.hasRemaining()) {
+                    out.write(records);
+                }
+                next++;
+                if ((next - first) % CHECKPOINT_INTERVAL == 0 || next == end) {
+                    out.force(false);
+                    saveCheckpoint(next, out.position());
+                }
+            }
+            return next - first;
+        }
+    }
+
+    private void saveCheckpoint(long next, long written) throws IOException {
+        ByteBuffer saved = ByteBuffer.allocate(2 * Long.BYTES);
+        saved.putLong(next).putLong(written);
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.write(temporary, saved.array());
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Scores the best move and the played move of the position, for the side to move.
+    private void score(GameState state, int move, int[] best, int[] played, int index) {
+        Search search = searches.get();
+        search.search(state, depth, nodesPerMove, Long.MAX_VALUE);
+        SearchInfo info = search.getInfo();
+        // Without a completed iteration, the moves are not told apart.
+        best[index] = info.getLineCount() == 0 ? 0 : info.getScore(0);
+        played[index] = best[index];
+        for (int line = 0; line < info.getLineCount(); line++) {
+            if ((info.getMove(line, 0) & Move.MOVE_MASK) == (move & Move.MOVE_MASK)) {
+                played[index] = info.getScore(line);
+                break;
+            }
+        }
+    }
+
+    /**
+     * This class replays one game and analyses its positions.
+     */
+    @SuppressWarnings("serial")
+    private final class GameTask extends RecursiveTask<byte[]> {
+        private final long number;
+        private final int[] moves;
+
+        GameTask(long number, int[] moves) {
+            this.number = number;
+            this.moves = moves;
+        }
+
+        @Override
+        protected byte[] compute() {
+            // The positions before each move.
+            GameState[] positions = new GameState[moves.length];
+            Game game = gamePool.acquire();
+            try {
+                for (int i = 0; i < moves.length; i++) {
+                    positions[i] = GameState.of(game);
+                    game.play(moves[i]);
+                }
+            } finally {
+                gamePool.release(game);
+            }
+
+            int[] best = new int[positions.length];
+            int[] played = new int[positions.length];
+            if (positions.length > 0) {
+                new PositionTask(positions, moves, best, played, 0, positions.length).invoke();
+            }
+
+            ByteBuffer records = ByteBuffer.allocate(moves.length * RECORD_BYTES);
+            for (int ply = 0; ply < moves.length; ply++) {
+                records.putLong(number).putShort((short) ply).putShort((short) moves[ply])
+                        .putShort((short) best[ply]).putShort((short) played[ply])
+                        .put((byte) (best[ply] - played[ply] >= BLUNDER_LOSS ? BLUNDER : 0));
+            }
+            return records.array();
+        }
+    }
+
+    /**
+     * This class searches a range of positions, split down to one position per task.
+     */
+    @SuppressWarnings("serial")
+    private final class PositionTask extends RecursiveAction {
+        private final GameState[] positions;
+        private final int[] moves;
+        private final int[] best;
+        private final int[] played;
+        private final int from;
+        private final int to;
+
+        PositionTask(GameState[] positions, int[] moves, int[] best, int[] played, int from, int to) {
+            this.positions = positions;
+            this.moves = moves;
+            this.best = best;
+            this.played = played;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                score(positions[from], moves[from], best, played, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PositionTask(positions, moves, best, played, from, middle),
+                    new PositionTask(positions, moves, best, played, middle, to));
+        }
+    }
+}
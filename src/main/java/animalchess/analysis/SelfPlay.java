@@ -0,0 +1,281 @@
+package animalchess.analysis;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.PieceKind;
+import animalchess.engine.Bot;
+import animalchess.engine.BotLevel;
+import animalchess.store.GameArchive;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a generator of self-play games, played by a
+ * {@code Policy} for each side on all the cores, and written to a
+ * {@code GameArchive}.
+ * <p>
+ * Game {@code i} has its own seed, derived from the seed of the generator
+ * and {@code i}, so {@link #play(long, GameState, int[])} plays it again
+ * exactly. A game ends when a lion is taken or after {@code maxPly} moves.
+ * <p>
+ * Each thread plays blocks of {@code BLOCK_SIZE} games in a row on its own
+ * {@code GameState} and buffers, so playing a move allocates nothing, and
+ * the blocks are appended to the archive in turn. So game {@code i} of a
+ * run is game {@code i} of the archive, whatever the number of threads.
+ *
+ * @author Yoochul Kim
+ * @see GameArchive
+ */
+public class SelfPlay {
+    /**
+     * The number of games a thread plays before appending them.
+     */
+    public static final int BLOCK_SIZE = 256;
+
+    /**
+     * Plays any legal move.
+     */
+    public static final Policy RANDOM = (state, moves, count, random) -> moves[random.nextInt(count)];
+
+    /**
+     * Plays any legal move, but captures more often the more the captured
+     * piece is worth, and always takes the lion.
+     */
+    public static final Policy WEIGHTED = SelfPlay::chooseWeighted;
+
+    // The weight of a move by the kind of the piece it captures, by ordinal.
+    private static final int[] CAPTURE_WEIGHTS = {0, 8, 6, 3, 8, 8};
+
+    private static final ThreadLocal<int[]> LEGAL_MOVES = ThreadLocal.withInitial(() -> new int[GameState.MAX_MOVES]);
+
+    private final Policy upper;
+    private final Policy lower;
+    private final long seed;
+    private final int maxPly;
+    private final AtomicLong plies = new AtomicLong();
+
+    /**
+     * This interface chooses the moves of one side. It is called by many
+     * threads at once, and should choose the same move given the same
+     * position and random numbers.
+     */
+    public interface Policy {
+        /**
+         * Chooses a move.
+         *
+         * @param state  the position, to be left as it is.
+         * @param moves  the legal moves of the position.
+         * @param count  the number of legal moves, at least 1.
+         * @param random the random numbers of the game.
+         * @return the move to play, encoded by {@code Move}.
+         */
+        int choose(GameState state, int[] moves, int count, SplittableRandom random);
+    }
+
+    /**
+     * Get a policy searching with a {@code Bot} of the level, one per thread.
+     *
+     * @param level the {@code BotLevel} of the bots.
+     * @return the {@code Policy}.
+     */
+    public static Policy engine(BotLevel level) {
+        ThreadLocal<Bot> bots = ThreadLocal.withInitial(() -> new Bot(level, 0));
+        return (state, moves, count, random) -> {
+            Bot bot = bots.get();
+            bot.setSeed(random.nextLong());
+            return bot.chooseMove(state);
+        };
+    }
+
+    /**
+     * Constructor to create {@code SelfPlay}.
+     *
+     * @param upper  the {@code Policy} of the side moving first.
+     * @param lower  the {@code Policy} of the other side.
+     * @param seed   the seed from which each game has its own.
+     * @param maxPly the max number of moves of a game, which is a draw then.
+     * @throws IllegalArgumentException if the max number of moves is not from 1 to {@code GameArchive.MAX_MOVES}.
+     */
+    public SelfPlay(Policy upper, Policy lower, long seed, int maxPly) {
+        if (maxPly < 1 || maxPly > GameArchive.MAX_MOVES) {
+            throw new IllegalArgumentException("the max number of moves should be from 1 to " + GameArchive.MAX_MOVES);
+        }
+        this.upper = upper;
+        this.lower = lower;
+        this.seed = seed;
+        this.maxPly = maxPly;
+    }
+
+    /**
+     * Plays games on threads and appends them to the archive in the order of
+     * their numbers, from game 0.
+     *
+     * @param archive the {@code GameArchive} to write.
+     * @param games   the number of games.
+     * @param threads the number of threads.
+     * @throws IOException if the archive cannot be written.
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    public void run(GameArchive archive, long games, int threads) throws IOException, InterruptedException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("there should be at least one thread");
+        }
+        Turnstile turnstile = new Turnstile(archive);
+        AtomicLong nextBlock = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> playBlocks(turnstile, nextBlock, games), "self-play-" + t);
+            workers[t].start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw e;
+        }
+        turnstile.check();
+    }
+
+    /**
+     * Plays a game, the same each time.
+     *
+     * @param game  the number of the game.
+     * @param state the {@code GameState} to play on, left at the end of the game.
+     * @param moves the array receiving the moves, at least {@code maxPly} long.
+     * @return the number of moves.
+     */
+    public int play(long game, GameState state, int[] moves) {
+        return play(game, state, moves, 0);
+    }
+
+    /**
+     * Get the number of moves played by all runs so far.
+     *
+     * @return the number of moves.
+     */
+    public long getPlies() {
+        return plies.get();
+    }
+
+    private int play(long game, GameState state, int[] moves, int offset) {
+        SplittableRandom random = new SplittableRandom(seedOf(game));
+        int[] legal = LEGAL_MOVES.get();
+        state.setStart();
+        int ply = 0;
+        while (ply < maxPly && state.getWinner() == null) {
+            int count = state.generateMoves(legal);
+            Policy policy = state.getSideToMove() == Game.Side.UPPER ? upper : lower;
+            int move = policy.choose(state, legal, count, random);
+            state.play(move);
+            moves[offset + ply++] = move;
+        }
+        return ply;
+    }
+
+    private void playBlocks(Turnstile turnstile, AtomicLong nextBlock, long games) {
+        GameState state = new GameState();
+        int[] moves = new int[BLOCK_SIZE * Math.min(maxPly, 128)];
+        int[] counts = new int[BLOCK_SIZE];
+        Game.Side[] winners = new Game.Side[BLOCK_SIZE];
+        try {
+            while (!turnstile.failed()) {
+                long block = nextBlock.getAndIncrement();
+                long first = block * BLOCK_SIZE;
+                if (first >= games) return;
+                int size = (int) Math.min(BLOCK_SIZE, games - first);
+                int offset = 0;
+                for (int i = 0; i < size; i++) {
+                    if (moves.length - offset < maxPly) {
+                        moves = Arrays.copyOf(moves, Math.max(moves.length * 2, offset + maxPly));
+                    }
+                    counts[i] = play(first + i, state, moves, offset);
+                    winners[i] = state.getWinner();
+                    offset += counts[i];
+                }
+                plies.addAndGet(offset);
+                turnstile.append(block, moves, counts, winners, size);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            turnstile.fail(e);
+        }
+    }
+
+    private long seedOf(long game) {
+        long z = seed + (game + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int chooseWeighted(GameState state, int[] moves, int count, SplittableRandom random) {
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            int captured = Move.isDrop(moves[i]) ? 0 : state.getPiece(Move.getTo(moves[i]));
+            if (captured != 0 && GameState.kindOf(captured) == PieceKind.LION) return moves[i];
+            total += 1 + (captured == 0 ? 0 : CAPTURE_WEIGHTS[GameState.kindOf(captured).ordinal()]);
+        }
+        int target = random.nextInt(total);
+        for (int i = 0; i < count; i++) {
+            int captured = Move.isDrop(moves[i]) ? 0 : state.getPiece(Move.getTo(moves[i]));
+            target -= 1 + (captured == 0 ? 0 : CAPTURE_WEIGHTS[GameState.kindOf(captured).ordinal()]);
+            if (target < 0) return moves[i];
+        }
+        return moves[count - 1];
+    }
+
+    /**
+     * This class lets the threads append their blocks one after another, in
+     * the order of the blocks.
+     */
+    private static final class Turnstile {
+        private final GameArchive archive;
+        // Guarded by this.
+        private long nextBlock;
+        private Exception failure;
+
+        Turnstile(GameArchive archive) {
+            this.archive = archive;
+        }
+
+        synchronized void append(long block, int[] moves, int[] counts, Game.Side[] winners, int size)
+                throws IOException, InterruptedException {
+            while (nextBlock != block && failure == null) {
+                wait();
+            }
+            if (failure != null) return;
+            int offset = 0;
+            for (int i = 0; i < size; i++) {
+                archive.append(moves, offset, counts[i], winners[i]);
+                offset += counts[i];
+            }
+            nextBlock++;
+            notifyAll();
+        }
+
+        synchronized void fail(Exception e) {
+            if (failure == null) failure = e;
+            notifyAll();
+        }
+
+        synchronized boolean failed() {
+            return failure != null;
+        }
+
+        synchronized void check() throws IOException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException("self-play failed", failure);
+            }
+        }
+    }
+}
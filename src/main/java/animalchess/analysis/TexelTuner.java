@@ -0,0 +1,364 @@
+package animalchess.analysis;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.PieceKind;
+import animalchess.engine.Evaluator;
+import animalchess.store.GameArchive;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class implements the tuning of the weights of the {@code Evaluator}
+ * from the results of games, as in Texel: it minimizes the mean squared
+ * difference between the result of the game of each position and the
+ * sigmoid of its score.
+ * <p>
+ * A position is kept as its {@code WEIGHT_NUMBER} features, one byte each,
+ * and the result as one byte, all in primitive arrays, so ten million
+ * positions take about 110 MB. The score is linear in the weights, so
+ * the gradient of the loss is a sum over the positions, which a
+ * {@code ForkJoinPool} splits into ranges and adds up. The weights follow
+ * the gradient by Adam until the loss stops improving.
+ *
+ * @author Yoochul Kim
+ * @see Evaluator#features(GameState, int[])
+ */
+public class TexelTuner {
+    /**
+     * The number of positions below which a range is not split anymore.
+     */
+    public static final int MIN_SPLIT = 1 << 14;
+    /**
+     * The number of iterations without improvement after which the tuning stops.
+     */
+    public static final int PATIENCE = 10;
+
+    private static final int N = Evaluator.WEIGHT_NUMBER;
+    // The results, in half points of UPPER.
+    private static final byte LOWER_WON = 0;
+    private static final byte DRAWN = 1;
+    private static final byte UPPER_WON = 2;
+
+    private final ForkJoinPool pool;
+    private final int[] buffer = new int[N];
+    private final int[] legal = new int[GameState.MAX_MOVES];
+    private byte[] features = new byte[N * 1024];
+    private byte[] results = new byte[1024];
+    private int size;
+    private double scale = Math.log(10) / 400;
+    private double learningRate = 1;
+    private int iterations;
+
+    /**
+     * Constructor to create {@code TexelTuner} without any position.
+     *
+     * @param pool the {@code ForkJoinPool} computing the loss and its gradient.
+     */
+    public TexelTuner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a position with the result of its game. Positions where the game
+     * is over, or where the side to move can take the lion, say nothing of
+     * the weights and are left out.
+     *
+     * @param state  the {@code GameState}.
+     * @param winner the side which won the game, or null for a draw.
+     * @return whether the position was added.
+     */
+    public boolean add(GameState state, Game.Side winner) {
+        if (state.getWinner() != null || canTakeLion(state)) {
+            return false;
+        }
+        if (size == results.length) {
+            results = Arrays.copyOf(results, size * 2);
+            features = Arrays.copyOf(features, size * 2 * N);
+        }
+        Evaluator.features(state, buffer);
+        for (int i = 0; i < N; i++) {
+            features[size * N + i] = (byte) buffer[i];
+        }
+        results[size++] = winner == null ? DRAWN : winner == Game.Side.UPPER ? UPPER_WON : LOWER_WON;
+        return true;
+    }
+
+    /**
+     * Adds the positions of all games of an archive, from a ply on.
+     *
+     * @param games   the {@code GameArchive.Reader} of the games.
+     * @param fromPly the first ply kept, to leave the openings out.
+     * @return the number of positions added.
+     */
+    public long addGames(GameArchive.Reader games, int fromPly) {
+        GameState state = new GameState();
+        int[] moves = new int[GameArchive.MAX_MOVES];
+        long added = 0;
+        for (long game = 0; game < games.size(); game++) {
+            int count = games.readMoves(game, moves);
+            Game.Side winner = games.getWinner(game);
+            state.setStart();
+            for (int ply = 0; ply < count; ply++) {
+                if (ply >= fromPly && add(state, winner)) added++;
+                state.play(moves[ply]);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Get the number of positions.
+     *
+     * @return the number of positions added.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sets the step of the weights, about how much each weight moves per iteration.
+     *
+     * @param learningRate the step, 1 by default.
+     */
+    public void setLearningRate(double learningRate) {
+        if (!(learningRate > 0)) {
+            throw new IllegalArgumentException("the learning rate should be positive");
+        }
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Get the scale of the scores in the sigmoid, {@code ln(10) / 400} until fitted.
+     *
+     * @return the scale.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Get the number of iterations of the last tuning.
+     *
+     * @return the number of iterations.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Computes the loss of weights: the mean squared difference between the
+     * results and the sigmoid of the scores.
+     *
+     * @param weights the {@code WEIGHT_NUMBER} weights.
+     * @return the loss.
+     * @throws IllegalStateException if there is no position.
+     */
+    public double loss(int[] weights) {
+        double[] real = new double[N];
+        for (int i = 0; i < N; i++) {
+            real[i] = weights[i];
+        }
+        return compute(real, scale)[N];
+    }
+
+    /**
+     * Fits the scale of the sigmoid to the weights, so that the tuning moves
+     * the weights and not the scale. It uses a golden-section search.
+     *
+     * @param weights the {@code WEIGHT_NUMBER} weights.
+     * @return the scale, which is kept for the tuning.
+     * @throws IllegalStateException if there is no position.
+     */
+    public double fitScale(int[] weights) {
+        double[] real = new double[N];
+        for (int i = 0; i < N; i++) {
+            real[i] = weights[i];
+        }
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = 1e-4;
+        double high = 0.1;
+        double a = high - ratio * (high - low);
+        double b = low + ratio * (high - low);
+        double lossA = compute(real, a)[N];
+        double lossB = compute(real, b)[N];
+        for (int i = 0; i < 40; i++) {
+            if (lossA < lossB) {
+                high = b;
+                b = a;
+                lossB = lossA;
+                a = high - ratio * (high - low);
+                lossA = compute(real, a)[N];
+            } else {
+                low = a;
+                a = b;
+                lossA = lossB;
+                b = low + ratio * (high - low);
+                lossB = compute(real, b)[N];
+            }
+        }
+        scale = (low + high) / 2;
+        return scale;
+    }
+
+    /**
+     * Tunes the weights until the loss has not improved by the tolerance for
+     * {@code PATIENCE} iterations, or the max number of iterations.
+     *
+     * @param initial       the {@code WEIGHT_NUMBER} weights to start from.
+     * @param maxIterations the max number of iterations.
+     * @param tolerance     the least improvement of the loss which counts.
+     * @return the weights with the least loss, rounded.
+     * @throws IllegalStateException if there is no position.
+     */
+    public int[] tune(int[] initial, int maxIterations, double tolerance) {
+        if (initial.length != N) {
+            throw new IllegalArgumentException("an evaluator needs " + N + " weights");
+        }
+        double[] weights = new double[N];
+        for (int i = 0; i < N; i++) {
+            weights[i] = initial[i];
+        }
+        double[] best = weights.clone();
+        double bestLoss = Double.POSITIVE_INFINITY;
+        double[] mean = new double[N];
+        double[] variance = new double[N];
+        double beta1 = 0.9;
+        double beta2 = 0.999;
+        int stale = 0;
+        iterations = 0;
+        while (iterations < maxIterations && stale < PATIENCE) {
+            double[] gradient = compute(weights, scale);
+            double loss = gradient[N];
+            if (loss < bestLoss - tolerance) {
+                stale = 0;
+            } else {
+                stale++;
+            }
+            if (loss < bestLoss) {
+                bestLoss = loss;
+                System.arraycopy(weights, 0, best, 0, N);
+            }
+            iterations++;
+            double correction1 = 1 - Math.pow(beta1, iterations);
+            double correction2 = 1 - Math.pow(beta2, iterations);
+            for (int i = 0; i < N; i++) {
+                mean[i] = beta1 * mean[i] + (1 - beta1) * gradient[i];
+                variance[i] = beta2 * variance[i] + (1 - beta2) * gradient[i] * gradient[i];
+                weights[i] -= learningRate * (mean[i] / correction1) / (Math.sqrt(variance[i] / correction2) + 1e-12);
+            }
+        }
+        int[] tuned = new int[N];
+        for (int i = 0; i < N; i++) {
+            tuned[i] = (int) Math.round(best[i]);
+        }
+        return tuned;
+    }
+
+    /**
+     * Tunes the weights on the games of an archive and writes them to a
+     * weights file. The arguments are the directory of the archive, the path
+     * of the weights file, and optionally the first ply kept (8 by default)
+     * and the max number of iterations (1000 by default).
+     *
+     * @param args the arguments.
+     * @throws IOException if the archive cannot be read or the weights file written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: TexelTuner archive-directory weights-file [from-ply] [max-iterations]");
+            return;
+        }
+        int fromPly = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int maxIterations = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        TexelTuner tuner = new TexelTuner(ForkJoinPool.commonPool());
+        try (GameArchive.Reader games = new GameArchive.Reader(Paths.get(args[0]))) {
+            tuner.addGames(games, fromPly);
+        }
+        int[] initial = new Evaluator().getWeights();
+        double scale = tuner.fitScale(initial);
+        double before = tuner.loss(initial);
+        int[] tuned = tuner.tune(initial, maxIterations, 1e-7);
+        Evaluator.writeWeights(Paths.get(args[1]), tuned);
+        System.out.printf("%d positions, scale %.5f, loss %.6f -> %.6f in %d iterations%n",
+                tuner.size(), scale, before, tuner.loss(tuned), tuner.getIterations());
+    }
+
+    // The gradient of the loss, followed by the loss itself.
+    private double[] compute(double[] weights, double scale) {
+        if (size == 0) {
+            throw new IllegalStateException("there is no position to tune on");
+        }
+        double[] sums = pool.invoke(new Sum(weights, scale, 0, size));
+        for (int i = 0; i <= N; i++) {
+            sums[i] /= size;
+        }
+        return sums;
+    }
+
+    private boolean canTakeLion(GameState state) {
+        int count = state.generateMoves(legal);
+        for (int i = 0; i < count; i++) {
+            int captured = Move.isDrop(legal[i]) ? 0 : state.getPiece(Move.getTo(legal[i]));
+            if (captured != 0 && GameState.kindOf(captured) == PieceKind.LION) return true;
+        }
+        return false;
+    }
+
+    /**
+     * This class adds up the gradient and the loss of a range of positions.
+     */
+    @SuppressWarnings("serial")
+    private final class Sum extends RecursiveTask<double[]> {
+        private final double[] weights;
+        private final double scale;
+        private final int from;
+        private final int to;
+
+        Sum(double[] weights, double scale, int from, int to) {
+            this.weights = weights;
+            this.scale = scale;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > MIN_SPLIT) {
+                int middle = (from + to) >>> 1;
+                Sum left = new Sum(weights, scale, from, middle);
+                left.fork();
+                double[] sums = new Sum(weights, scale, middle, to).compute();
+                double[] leftSums = left.join();
+                for (int i = 0; i <= N; i++) {
+                    sums[i] += leftSums[i];
+                }
+                return sums;
+            }
+            double[] sums = new double[N + 1];
+            byte[] features = TexelTuner.this.features;
+            byte[] results = TexelTuner.this.results;
+            for (int p = from; p < to; p++) {
+                int base = p * N;
+                double score = 0;
+                for (int i = 0; i < N; i++) {
+                    score += weights[i] * features[base + i];
+                }
+                double predicted = 1 / (1 + Math.exp(-scale * score));
+                double error = predicted - results[p] * 0.5;
+                sums[N] += error * error;
+                // The derivative of the squared error by the score.
+                double slope = 2 * error * predicted * (1 - predicted) * scale;
+                for (int i = 0; i < N; i++) {
+                    sums[i] += slope * features[base + i];
+                }
+            }
+            return sums;
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package animalchess.analysis;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.engine.Evaluator;
+import animalchess.engine.Search;
+import animalchess.engine.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * This class implements a round-robin tournament between engine
+ * configurations, each a {@code SelfPlay.Policy}, played on threads.
+ * <p>
+ * Every pair of entrants plays every opening twice, once with each side
+ * {@code UPPER}, for a number of rounds; a game still going after
+ * {@code maxPly} moves is a draw. The games are spread so that each pair
+ * plays both sides of an opening one after the other, and each game has
+ * its own seed, like in {@code SelfPlay}.
+ * <p>
+ * The {@code Result} gives the Elo difference of each pair with a 95%
+ * error bar. A match of two entrants can be run as a sequential
+ * probability ratio test ({@code Sprt}): it then stops as soon as the
+ * log-likelihood ratio leaves its bounds, instead of playing every game.
+ *
+ * @author Yoochul Kim
+ * @see SelfPlay
+ */
+public class Tournament {
+    private final List<String> names;
+    private final List<SelfPlay.Policy> policies;
+    private final int[][] openings;
+    private final int rounds;
+    private final int maxPly;
+    private final long seed;
+
+    /**
+     * Constructor to create {@code Tournament}.
+     *
+     * @param names    the names of the entrants.
+     * @param policies the {@code SelfPlay.Policy} of each entrant, in the same order.
+     * @param openings the moves of each opening, encoded by {@code Move}.
+     * @param rounds   the number of times every pair plays every opening with both sides.
+     * @param maxPly   the max number of moves of a game, opening included.
+     * @param seed     the seed from which each game has its own.
+     * @throws IllegalArgumentException if there are fewer than two entrants, no opening,
+     *                                  or an opening which is illegal or over.
+     */
+    public Tournament(List<String> names, List<SelfPlay.Policy> policies, int[][] openings, int rounds,
+                      int maxPly, long seed) {
+        if (names.size() < 2 || names.size() != policies.size()) {
+            throw new IllegalArgumentException("there should be at least two entrants, each with a policy");
+        }
+        if (openings.length == 0 || rounds <= 0) {
+            throw new IllegalArgumentException("there should be at least one opening and one round");
+        }
+        GameState state = new GameState();
+        for (int[] opening : openings) {
+            state.setStart();
+            for (int move : opening) {
+                if (state.getWinner() != null || !state.isLegal(move)) {
+                    throw new IllegalArgumentException("an opening has an illegal move");
+                }
+                state.play(move);
+            }
+            if (state.getWinner() != null || opening.length >= maxPly) {
+                throw new IllegalArgumentException("an opening should leave a game to play");
+            }
+        }
+        this.names = new ArrayList<>(names);
+        this.policies = new ArrayList<>(policies);
+        this.openings = openings.clone();
+        this.rounds = rounds;
+        this.maxPly = maxPly;
+        this.seed = seed;
+    }
+
+    /**
+     * Get random openings: positions after a number of random moves, with
+     * the game not over.
+     *
+     * @param count the number of openings.
+     * @param plies the number of moves of each opening.
+     * @param seed  the seed of the random moves.
+     * @return the moves of each opening.
+     */
+    public static int[][] randomOpenings(int count, int plies, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[][] openings = new int[count][plies];
+        int[] legal = new int[GameState.MAX_MOVES];
+        GameState state = new GameState();
+        for (int i = 0; i < count; i++) {
+            state.setStart();
+            for (int ply = 0; ply < plies; ply++) {
+                if (state.getWinner() != null) {
+                    // Start this opening again.
+                    state.setStart();
+                    ply = -1;
+                    continue;
+                }
+                int move = legal[random.nextInt(state.generateMoves(legal))];
+                openings[i][ply] = move;
+                state.play(move);
+            }
+            if (state.getWinner() != null) i--;
+        }
+        return openings;
+    }
+
+    /**
+     * Get a policy searching with its own {@code Evaluator}, one {@code Search}
+     * per thread, to try evaluation and search parameters.
+     *
+     * @param evaluators the supplier of the {@code Evaluator} of each thread.
+     * @param depth      the max depth of a move.
+     * @param nodes      the max number of nodes of a move.
+     * @return the {@code SelfPlay.Policy}.
+     */
+    public static SelfPlay.Policy searchPolicy(Supplier<Evaluator> evaluators, int depth, long nodes) {
+        ThreadLocal<Search> searches = ThreadLocal.withInitial(() -> new Search(evaluators.get()));
+        return (state, moves, count, random) -> {
+            SearchResult result = searches.get().search(state, depth, nodes, Long.MAX_VALUE);
+            return result.getBestMove();
+        };
+    }
+
+    /**
+     * Plays the tournament on threads.
+     *
+     * @param threads the number of threads.
+     * @param sprt    the {@code Sprt} of a match of two entrants, or null to play every game.
+     * @return the {@code Result} of the games played.
+     * @throws IllegalArgumentException if there is a test but not two entrants.
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    public Result run(int threads, Sprt sprt) throws InterruptedException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("there should be at least one thread");
+        }
+        if (sprt != null && names.size() != 2) {
+            throw new IllegalArgumentException("a probability ratio test needs a match of two entrants");
+        }
+        Result result = new Result(names, sprt);
+        int pairs = names.size() * (names.size() - 1) / 2;
+        long games = 2L * pairs * openings.length * rounds;
+        AtomicLong next = new AtomicLong();
+        List<Throwable> failures = new ArrayList<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    GameState state = new GameState();
+                    int[] legal = new int[GameState.MAX_MOVES];
+                    long game;
+                    while (!result.isDecided() && (game = next.getAndIncrement()) < games) {
+                        playGame(game, pairs, state, legal, result);
+                    }
+                } catch (RuntimeException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                    result.stop();
+                }
+            }, "tournament-" + t);
+            workers[t].start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            result.stop();
+            throw e;
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("a game of the tournament failed", failures.get(0));
+        }
+        return result;
+    }
+
+    // Game g plays side g % 2 of an opening; the pairs take turns on each opening.
+    private void playGame(long game, int pairs, GameState state, int[] legal, Result result) {
+        long rest = game / 2;
+        int pair = (int) (rest % pairs);
+        int[] opening = openings[(int) (rest / pairs % openings.length)];
+        int first = 0;
+        int second = pair;
+        // The pair numbered in the order (0,1), (0,2), ..., (1,2), ...
+        while (second >= names.size() - 1 - first) {
+            second -= names.size() - 1 - first;
+            first++;
+        }
+        second += first + 1;
+        int upper = game % 2 == 0 ? first : second;
+        int lower = game % 2 == 0 ? second : first;
+
+        SplittableRandom random = new SplittableRandom(seed + (game + 1) * 0x9E3779B97F4A7C15L);
+        state.setStart();
+        for (int move : opening) {
+            state.play(move);
+        }
+        for (int ply = opening.length; ply < maxPly && state.getWinner() == null; ply++) {
+            int count = state.generateMoves(legal);
+            SelfPlay.Policy policy = policies.get(state.getSideToMove() == Game.Side.UPPER ? upper : lower);
+            state.play(policy.choose(state, legal, count, random));
+        }
+        Game.Side winner = state.getWinner();
+        result.add(upper, lower, winner == null ? 0 : winner == Game.Side.UPPER ? 1 : -1);
+    }
+
+    /**
+     * Get the Elo difference matching a score.
+     *
+     * @param score the share of the points, from 0 to 1.
+     * @return the Elo difference, infinite for a score of 0 or 1.
+     */
+    public static double elo(double score) {
+        if (score <= 0) return Double.NEGATIVE_INFINITY;
+        if (score >= 1) return Double.POSITIVE_INFINITY;
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * Get the score expected from an Elo difference.
+     *
+     * @param elo the Elo difference.
+     * @return the share of the points, from 0 to 1.
+     */
+    public static double score(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Get the Elo difference of a record of games.
+     *
+     * @param wins   the number of games won.
+     * @param draws  the number of games drawn.
+     * @param losses the number of games lost.
+     * @return the Elo difference, NaN if there is no game.
+     */
+    public static double elo(long wins, long draws, long losses) {
+        long games = wins + draws + losses;
+        return games == 0 ? Double.NaN : elo((wins + draws / 2.0) / games);
+    }
+
+    /**
+     * Get the half width of the 95% confidence interval of the Elo
+     * difference of a record of games.
+     *
+     * @param wins   the number of games won.
+     * @param draws  the number of games drawn.
+     * @param losses the number of games lost.
+     * @return the error bar in Elo, infinite if the games do not tell, as
+     * when they all have the same result.
+     */
+    public static double eloError(long wins, long draws, long losses) {
+        long games = wins + draws + losses;
+        if (games == 0) return Double.POSITIVE_INFINITY;
+        double score = (wins + draws / 2.0) / games;
+        double variance = variance(wins, draws, losses, score);
+        // A one-sided record has no spread to measure, and an infinite Elo.
+        if (variance == 0 || score <= 0 || score >= 1) return Double.POSITIVE_INFINITY;
+        double deviation = Math.sqrt(variance / games);
+        return (elo(score + 1.96 * deviation) - elo(score - 1.96 * deviation)) / 2;
+    }
+
+    // The variance of the points of one game.
+    private static double variance(long wins, long draws, long losses, double score) {
+        double games = wins + draws + losses;
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+                + losses * score * score) / games;
+    }
+
+    /**
+     * This class holds a sequential probability ratio test of a match:
+     * whether the first entrant is {@code elo1} stronger than the second
+     * (H1), rather than only {@code elo0} (H0), with error rates alpha and
+     * beta. The log-likelihood ratio uses the normal approximation of the
+     * generalized SPRT on the win, draw and loss counts.
+     */
+    public static final class Sprt {
+        private final double score0;
+        private final double score1;
+        private final double lowerBound;
+        private final double upperBound;
+
+        /**
+         * Constructor to create {@code Sprt}.
+         *
+         * @param elo0  the Elo difference of H0.
+         * @param elo1  the Elo difference of H1, greater than {@code elo0}.
+         * @param alpha the probability of accepting H1 when H0 holds.
+         * @param beta  the probability of accepting H0 when H1 holds.
+         * @throws IllegalArgumentException if the hypotheses or the error rates are wrong.
+         */
+        public Sprt(double elo0, double elo1, double alpha, double beta) {
+            if (!(elo0 < elo1) || !(alpha > 0 && alpha < 1) || !(beta > 0 && beta < 1)) {
+                throw new IllegalArgumentException("elo0 should be below elo1 and the error rates from 0 to 1");
+            }
+            this.score0 = score(elo0);
+            this.score1 = score(elo1);
+            this.lowerBound = Math.log(beta / (1 - alpha));
+            this.upperBound = Math.log((1 - beta) / alpha);
+        }
+
+        /**
+         * Get the log-likelihood ratio of a record of games.
+         *
+         * @param wins   the number of games won.
+         * @param draws  the number of games drawn.
+         * @param losses the number of games lost.
+         * @return the ratio, 0 without any game.
+         */
+        public double llr(long wins, long draws, long losses) {
+            if (wins + draws + losses == 0) return 0;
+            // Half a game of each outcome more, so that a one-sided record still varies.
+            double w = wins + 0.5;
+            double d = draws + 0.5;
+            double l = losses + 0.5;
+            double games = w + d + l;
+            double score = (w + d / 2) / games;
+            double variance = (w * (1 - score) * (1 - score) + d * (0.5 - score) * (0.5 - score)
+                    + l * score * score) / games;
+            return (score1 - score0) * (2 * score - score0 - score1) * games / (2 * variance);
+        }
+
+        /**
+         * Get the ratio below which H0 is accepted.
+         *
+         * @return the lower bound.
+         */
+        public double getLowerBound() {
+            return lowerBound;
+        }
+
+        /**
+         * Get the ratio above which H1 is accepted.
+         *
+         * @return the upper bound.
+         */
+        public double getUpperBound() {
+            return upperBound;
+        }
+    }
+
+    /**
+     * This class holds the results of a tournament, filled by its threads.
+     */
+    public static final class Result {
+        /**
+         * The test has not decided yet, or there is no test.
+         */
+        public static final int UNDECIDED = 0;
+        /**
+         * The test accepted H0.
+         */
+        public static final int H0 = 1;
+        /**
+         * The test accepted H1.
+         */
+        public static final int H1 = 2;
+
+        private final List<String> names;
+        private final Sprt sprt;
+        // Guarded by this: the wins, draws and losses of entrant i against j at [i][j].
+        private final long[][] wins;
+        private final long[][] draws;
+        private final long[][] losses;
+        private int decision = UNDECIDED;
+        private volatile boolean decided;
+
+        Result(List<String> names, Sprt sprt) {
+            int size = names.size();
+            this.names = names;
+            this.sprt = sprt;
+            this.wins = new long[size][size];
+            this.draws = new long[size][size];
+            this.losses = new long[size][size];
+        }
+
+        synchronized void add(int upper, int lower, int outcome) {
+            if (outcome > 0) {
+                wins[upper][lower]++;
+                losses[lower][upper]++;
+            } else if (outcome < 0) {
+                losses[upper][lower]++;
+                wins[lower][upper]++;
+            } else {
+                draws[upper][lower]++;
+                draws[lower][upper]++;
+            }
+            if (sprt != null && decision == UNDECIDED) {
+                double llr = sprt.llr(wins[0][1], draws[0][1], losses[0][1]);
+                if (llr >= sprt.getUpperBound()) decision = H1;
+                if (llr <= sprt.getLowerBound()) decision = H0;
+                decided = decision != UNDECIDED;
+            }
+        }
+
+        void stop() {
+            decided = true;
+        }
+
+        boolean isDecided() {
+            return decided;
+        }
+
+        /**
+         * Get the decision of the test.
+         *
+         * @return {@code H0}, {@code H1} or {@code UNDECIDED}.
+         */
+        public synchronized int getDecision() {
+            return decision;
+        }
+
+        /**
+         * Get the log-likelihood ratio of the test so far.
+         *
+         * @return the ratio, 0 without a test.
+         */
+        public synchronized double getLlr() {
+            return sprt == null ? 0 : sprt.llr(wins[0][1], draws[0][1], losses[0][1]);
+        }
+
+        /**
+         * Get the number of games won by an entrant against another.
+         *
+         * @param entrant  the index of the entrant.
+         * @param opponent the index of the opponent.
+         * @return the number of games.
+         */
+        public synchronized long getWins(int entrant, int opponent) {
+            return wins[entrant][opponent];
+        }
+
+        /**
+         * Get the number of games drawn by an entrant against another.
+         *
+         * @param entrant  the index of the entrant.
+         * @param opponent the index of the opponent.
+         * @return the number of games.
+         */
+        public synchronized long getDraws(int entrant, int opponent) {
+            return draws[entrant][opponent];
+        }
+
+        /**
+         * Get the number of games lost by an entrant against another.
+         *
+         * @param entrant  the index of the entrant.
+         * @param opponent the index of the opponent.
+         * @return the number of games.
+         */
+        public synchronized long getLosses(int entrant, int opponent) {
+            return losses[entrant][opponent];
+        }
+
+        /**
+         * Get the number of games played.
+         *
+         * @return the number of games.
+         */
+        public synchronized long getGames() {
+            long games = 0;
+            for (int i = 0; i < names.size(); i++) {
+                for (int j = i + 1; j < names.size(); j++) {
+                    games += wins[i][j] + draws[i][j] + losses[i][j];
+                }
+            }
+            return games;
+        }
+
+        /**
+         * Get how much stronger an entrant is than another.
+         *
+         * @param entrant  the index of the entrant.
+         * @param opponent the index of the opponent.
+         * @return the Elo difference, NaN if they have not played.
+         */
+        public synchronized double getElo(int entrant, int opponent) {
+            return elo(wins[entrant][opponent], draws[entrant][opponent], losses[entrant][opponent]);
+        }
+
+        /**
+         * Get the 95% error bar of the Elo difference of an entrant and another.
+         *
+         * @param entrant  the index of the entrant.
+         * @param opponent the index of the opponent.
+         * @return the half width of the interval, in Elo.
+         */
+        public synchronized double getEloError(int entrant, int opponent) {
+            return eloError(wins[entrant][opponent], draws[entrant][opponent], losses[entrant][opponent]);
+        }
+
+        /**
+         * Get how much stronger an entrant is than the field, from all its games.
+         *
+         * @param entrant the index of the entrant.
+         * @return the Elo difference, NaN if it has not played.
+         */
+        public synchronized double getElo(int entrant) {
+            return elo(Arrays.stream(wins[entrant]).sum(), Arrays.stream(draws[entrant]).sum(),
+                    Arrays.stream(losses[entrant]).sum());
+        }
+
+        /**
+         * Get the 95% error bar of the Elo difference of an entrant and the field.
+         *
+         * @param entrant the index of the entrant.
+         * @return the half width of the interval, in Elo.
+         */
+        public synchronized double getEloError(int entrant) {
+            return eloError(Arrays.stream(wins[entrant]).sum(), Arrays.stream(draws[entrant]).sum(),
+                    Arrays.stream(losses[entrant]).sum());
+        }
+
+        @Override
+        public synchronized String toString() {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < names.size(); i++) {
+                text.append(String.format("%-16s %+7.1f +/- %5.1f  (+%d =%d -%d)%n", names.get(i),
+                        getElo(i), getEloError(i), Arrays.stream(wins[i]).sum(),
+                        Arrays.stream(draws[i]).sum(), Arrays.stream(losses[i]).sum()));
+            }
+            if (sprt != null) {
+                text.append(String.format("LLR %.2f [%.2f, %.2f] %s%n", getLlr(), sprt.getLowerBound(),
+                        sprt.getUpperBound(), decision == H1 ? "H1" : decision == H0 ? "H0" : "undecided"));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package animalchess.engine;
+
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.Zobrist;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class implements a bounded cache of search results shared by all
+ * games and requests, keyed by the {@code Zobrist} hash of the position.
+ * <p>
+ * The cache keeps one result per position, the deepest one put, and a
+ * lookup for a depth is answered by any result at least as deep. It is cut
+ * into segments by the high bits of the hash, each with its own lock and
+ * its own open-addressing table of primitive arrays, so there is no boxing
+ * and threads rarely wait for each other. Lookups read optimistically and
+ * only retry under the lock if a writer got in the way.
+ * <p>
+ * A full segment evicts with the CLOCK policy: a hit marks the entry as
+ * referenced, and the hand of the clock sweeps the table, sparing the
+ * referenced entries once, until it finds one to evict.
+ * <p>
+ * Looked up by {@code GameState}, a position and its mirror share one
+ * entry, under the {@link Zobrist#canonicalHash(GameState)}, and the best
+ * move is mirrored as needed.
+ *
+ * @author Yoochul Kim
+ * @see Search
+ */
+public final class AnalysisCache {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENT_NUMBER = 1 << SEGMENT_BITS;
+    // The hash kept for a position whose hash is 0, which marks an empty slot.
+    private static final long ZERO_HASH = 1;
+
+    private final Segment[] segments = new Segment[SEGMENT_NUMBER];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final int capacity;
+
+    /**
+     * Constructor to create {@code AnalysisCache} holding at most about
+     * {@code capacity} results.
+     *
+     * @param capacity the number of results kept.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public AnalysisCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("the capacity should be positive");
+        }
+        int perSegment = Math.max(1, capacity / SEGMENT_NUMBER);
+        this.capacity = perSegment * SEGMENT_NUMBER;
+        for (int i = 0; i < SEGMENT_NUMBER; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Looks a result of at least the depth up.
+     *
+     * @param hash  the {@code Zobrist} hash of the position.
+     * @param depth the depth wanted.
+     * @return the cached {@code SearchResult}, with no node counted, or null.
+     */
+    public SearchResult get(long hash, int depth) {
+        long entry = segmentOf(hash).get(key(hash));
+        if (entry == 0 || depthOf(entry) < depth) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new SearchResult((int) (entry >>> 32), (short) (entry >>> 16), depthOf(entry), 0);
+    }
+
+    /**
+     * Puts a result, unless the cache has a deeper one for the position.
+     *
+     * @param hash   the {@code Zobrist} hash of the position.
+     * @param result the {@code SearchResult} of the position.
+     */
+    public void put(long hash, SearchResult result) {
+        if (result.getDepth() <= 0) return;
+        long entry = (long) result.getBestMove() << 32
+                | (result.getScore() & 0xFFFFL) << 16
+                | Math.min(result.getDepth(), 0xFF);
+        if (segmentOf(hash).put(key(hash), entry)) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Looks a result of at least the depth up for the position or its mirror.
+     *
+     * @param state the {@code GameState} of the position.
+     * @param depth the depth wanted.
+     * @return the cached {@code SearchResult} for the position, with no node counted, or null.
+     */
+    public SearchResult get(GameState state, int depth) {
+        long hash = Zobrist.hash(state);
+        long mirrored = Zobrist.mirroredHash(state);
+        SearchResult result = get(Math.min(hash, mirrored), depth);
+        if (result == null || mirrored >= hash || result.getBestMove() == SearchResult.NO_MOVE) {
+            return result;
+        }
+        return new SearchResult(Move.mirror(result.getBestMove()), result.getScore(), result.getDepth(), 0);
+    }
+
+    /**
+     * Puts a result for the position and its mirror, unless the cache has a
+     * deeper one.
+     *
+     * @param state  the {@code GameState} of the position.
+     * @param result the {@code SearchResult} of the position.
+     */
+    public void put(GameState state, SearchResult result) {
+        long hash = Zobrist.hash(state);
+        long mirrored = Zobrist.mirroredHash(state);
+        if (mirrored >= hash || result.getBestMove() == SearchResult.NO_MOVE) {
+            put(Math.min(hash, mirrored), result);
+        } else {
+            put(mirrored, new SearchResult(Move.mirror(result.getBestMove()), result.getScore(),
+                    result.getDepth(), result.getNodes()));
+        }
+    }
+
+    /**
+     * Get the number of lookups answered.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups not answered.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of results evicted to make room.
+     *
+     * @return the number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of results in the cache.
+     *
+     * @return the number of results.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get how full the cache is.
+     *
+     * @return the number of results per thousand results it can hold.
+     */
+    public int getHashFull() {
+        return (int) ((long) size() * 1000 / capacity);
+    }
+
+    private Segment segmentOf(long hash) {
+        return segments[(int) (hash >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    private static long key(long hash) {
+        return hash == 0 ? ZERO_HASH : hash;
+    }
+
+    private static int depthOf(long entry) {
+        return (int) (entry & 0xFF);
+    }
+
+    /**
+     * This class implements one segment: an open-addressing table with
+     * linear probing, at most half full, and a CLOCK over its slots.
+     */
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private final long[] keys;
+        // The best move, the score and the depth of each result, 0 if the slot is empty.
+        private final long[] entries;
+        private final boolean[] referenced;
+        private final int mask;
+        private final int maxSize;
+        private int size;
+        private int hand;
+
+        Segment(int maxSize) {
+            int capacity = Integer.highestOneBit(Math.max(2, maxSize * 2 - 1)) << 1;
+            keys = new long[capacity];
+            entries = new long[capacity];
+            referenced = new boolean[capacity];
+            mask = capacity - 1;
+            this.maxSize = maxSize;
+        }
+
+        long get(long key) {
+            long stamp = lock.tryOptimisticRead();
+            int slot = find(key);
+            long entry = slot < 0 ? 0 : entries[slot];
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    slot = find(key);
+                    entry = slot < 0 ? 0 : entries[slot];
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (slot >= 0) {
+                // A lost mark only makes the entry a bit likelier to be evicted.
+                referenced[slot] = true;
+            }
+            return entry;
+        }
+
+        // Returns true if an entry was evicted.
+        boolean put(long key, long entry) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = find(key);
+                if (slot >= 0) {
+                    if (depthOf(entries[slot]) <= depthOf(entry)) {
+                        entries[slot] = entry;
+                    }
+                    return false;
+                }
+                boolean evicted = false;
+                if (size == maxSize) {
+                    evict();
+                    evicted = true;
+                }
+                slot = (int) key & mask;
+                while (keys[slot] != 0) slot = (slot + 1) & mask;
+                keys[slot] = key;
+                entries[slot] = entry;
+                referenced[slot] = false;
+                size++;
+                return evicted;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Returns the slot of the key, or -1; it may be stale under an optimistic read.
+        private int find(long key) {
+            int slot = (int) key & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long stored = keys[slot];
+                if (stored == key) return slot;
+                if (stored == 0) return -1;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void evict() {
+            while (true) {
+                hand = (hand + 1) & mask;
+                if (keys[hand] == 0) continue;
+                if (referenced[hand]) {
+                    referenced[hand] = false;
+                    continue;
+                }
+                remove(hand);
+                return;
+            }
+        }
+
+        // Removes the entry of the slot, shifting back the entries probed past it.
+        private void remove(int slot) {
+            int empty = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                long key = keys[next];
+                if (key == 0) break;
+                int home = (int) key & mask;
+                // Moved back unless its home lies cyclically after the empty slot.
+                boolean stays = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+                if (!stays) {
+                    keys[empty] = key;
+                    entries[empty] = entries[next];
+                    referenced[empty] = referenced[next];
+                    empty = next;
+                }
+            }
+            keys[empty] = 0;
+            entries[empty] = 0;
+            referenced[empty] = false;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package animalchess.engine;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.PieceKind;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class implements the evaluation of many positions in one call,
+ * giving the same scores as {@link Evaluator#evaluate(GameState)}.
+ * <p>
+ * The positions are given as a struct of arrays, laid out as in
+ * {@code GameStatePool} and {@link GameState#writeTo(java.nio.ByteBuffer)}:
+ * {@code BOARD_BYTES} board bytes, {@code HAND_BYTES} hand counts and one
+ * flags byte per position, so no {@code GameState} or {@code Game} is made.
+ * <p>
+ * The weights are folded into a table of the value for {@code UPPER} of
+ * each board byte on each square, so scoring a board is a counted loop of
+ * table lookups without branches, and the hands and the side to move are
+ * a few multiplications and a sign flip. Large batches are split over a
+ * {@code ForkJoinPool}.
+ *
+ * @author Yoochul Kim
+ * @see Evaluator
+ */
+public final class BatchEvaluator {
+    /**
+     * The number of board bytes of a position.
+     */
+    public static final int BOARD_BYTES = GameState.SQUARE_NUMBER;
+    /**
+     * The number of hand counts of a position, {@code UPPER}'s then {@code LOWER}'s, by hand index.
+     */
+    public static final int HAND_BYTES = 2 * GameState.HAND_KIND_NUMBER;
+    /**
+     * The number of positions under which a batch is not split any more.
+     */
+    public static final int MIN_SPLIT = 1 << 12;
+
+    // The board bytes fit in 4 bits: the kind ordinal + 1 and LOWER_BIT.
+    private static final int CODE_BITS = 4;
+
+    // [square << CODE_BITS | board byte] the value of the piece for UPPER.
+    private final int[] squareValues = new int[BOARD_BYTES << CODE_BITS];
+    // [hand index] the value of a piece in a hand.
+    private final int[] handValues = new int[GameState.HAND_KIND_NUMBER];
+
+    /**
+     * Constructor to create {@code BatchEvaluator} with the weights of an {@code Evaluator}.
+     *
+     * @param evaluator the {@code Evaluator} whose scores are given.
+     */
+    public BatchEvaluator(Evaluator evaluator) {
+        int[] weights = evaluator.getWeights();
+        for (PieceKind kind : PieceKind.values()) {
+            for (Game.Side side : Game.Side.values()) {
+                int code = GameState.encode(kind, side);
+                for (int square = 0; square < BOARD_BYTES; square++) {
+                    int value = weights[Evaluator.BOARD_WEIGHTS + kind.ordinal()];
+                    if (kind == PieceKind.CHICK) {
+                        int row = square / Game.WIDTH;
+                        int advance = side == Game.Side.UPPER ? row : Game.MAX_ROW - row;
+                        value += advance * weights[Evaluator.CHICK_ADVANCE_WEIGHT];
+                    }
+                    squareValues[square << CODE_BITS | code] = side == Game.Side.UPPER ? value : -value;
+                }
+            }
+        }
+        for (int handIndex = 0; handIndex < GameState.HAND_KIND_NUMBER; handIndex++) {
+            handValues[handIndex] = weights[Evaluator.HAND_WEIGHTS + handIndex];
+        }
+    }
+
+    /**
+     * Evaluates the positions from {@code from} to {@code to}, each from its side to move.
+     *
+     * @param boards the board bytes, {@code BOARD_BYTES} per position.
+     * @param hands  the hand counts, {@code HAND_BYTES} per position.
+     * @param flags  the flags, one per position, as in {@link GameState#getFlags()}.
+     * @param from   the first position, inclusive.
+     * @param to     the last position, exclusive.
+     * @param scores the array receiving the scores, by position.
+     * @throws IllegalArgumentException if an array is too short for the positions.
+     */
+    public void evaluate(byte[] boards, byte[] hands, byte[] flags, int from, int to, int[] scores) {
+        check(boards, hands, flags, from, to, scores);
+        evaluateRange(boards, hands, flags, from, to, scores);
+    }
+
+    /**
+     * Evaluates the first {@code count} positions, split over a pool.
+     *
+     * @param boards the board bytes, {@code BOARD_BYTES} per position.
+     * @param hands  the hand counts, {@code HAND_BYTES} per position.
+     * @param flags  the flags, one per position, as in {@link GameState#getFlags()}.
+     * @param count  the number of positions.
+     * @param scores the array receiving the scores, by position.
+     * @param pool   the {@code ForkJoinPool} running the parts of the batch.
+     * @throws IllegalArgumentException if an array is too short for the positions.
+     */
+    public void evaluate(byte[] boards, byte[] hands, byte[] flags, int count, int[] scores, ForkJoinPool pool) {
+        check(boards, hands, flags, 0, count, scores);
+        pool.invoke(new Split(boards, hands, flags, 0, count, scores));
+    }
+
+    private static void check(byte[] boards, byte[] hands, byte[] flags, int from, int to, int[] scores) {
+        if (from < 0 || from > to) {
+            throw new IllegalArgumentException("the positions from " + from + " to " + to + " are not a range");
+        }
+        if (boards.length < (long) to * BOARD_BYTES || hands.length < (long) to * HAND_BYTES
+                || flags.length < to || scores.length < to) {
+            throw new IllegalArgumentException("the arrays are too short for " + to + " positions");
+        }
+    }
+
+    private void evaluateRange(byte[] boards, byte[] hands, byte[] flags, int from, int to, int[] scores) {
+        int[] values = squareValues;
+        for (int position = from; position < to; position++) {
+            int base = position * BOARD_BYTES;
+            int score = 0;
+            for (int square = 0; square < BOARD_BYTES; square++) {
+                score += values[square << CODE_BITS | boards[base + square]];
+            }
+            scores[position] = score;
+        }
+        int dog = handValues[0];
+        int cat = handValues[1];
+        int chick = handValues[2];
+        int lowerHand = GameState.HAND_KIND_NUMBER;
+        for (int position = from; position < to; position++) {
+            int base = position * HAND_BYTES;
+            int score = scores[position]
+                    + (hands[base] - hands[base + lowerHand]) * dog
+                    + (hands[base + 1] - hands[base + lowerHand + 1]) * cat
+                    + (hands[base + 2] - hands[base + lowerHand + 2]) * chick;
+            // Negated without a branch when LOWER is to move.
+            int lower = flags[position] & GameState.LOWER_TO_MOVE;
+            scores[position] = (score ^ -lower) + lower;
+        }
+    }
+
+    /**
+     * This class splits a batch in halves until it is small enough to evaluate.
+     */
+    @SuppressWarnings("serial")
+    private final class Split extends RecursiveAction {
+        private final byte[] boards;
+        private final byte[] hands;
+        private final byte[] flags;
+        private final int from;
+        private final int to;
+        private final int[] scores;
+
+        Split(byte[] boards, byte[] hands, byte[] flags, int from, int to, int[] scores) {
+            this.boards = boards;
+            this.hands = hands;
+            this.flags = flags;
+            this.from = from;
+            this.to = to;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_SPLIT) {
+                evaluateRange(boards, hands, flags, from, to, scores);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Split(boards, hands, flags, from, middle, scores),
+                    new Split(boards, hands, flags, middle, to, scores));
+        }
+    }
+}
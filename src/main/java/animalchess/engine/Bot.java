@@ -0,0 +1,164 @@
+package animalchess.engine;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.PieceKind;
+
+/**
+ * This class implements a bot playing a {@code Game} at a {@code BotLevel}.
+ * <p>
+ * A bot only holds its level, its scheduler and the state of its random
+ * numbers, so a server can keep thousands of them. The search of a move is
+ * taken from the {@link SearchPool#shared()} pool for the time of the move,
+ * as bots may play on virtual threads, and only the small buffers are kept
+ * per thread.
+ * Each move takes its budget of nodes from the {@code BotScheduler}, if
+ * any; a move granted too few nodes to search one ply plays like the
+ * {@code RANDOM} level.
+ * <p>
+ * Given the same seed and enough budget, a bot plays the same moves.
+ *
+ * @author Yoochul Kim
+ * @see BotLevel
+ */
+public final class Bot {
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private final BotLevel level;
+    private final BotScheduler scheduler;
+    private long seed;
+
+    /**
+     * Constructor to create {@code Bot} without any budget but its level.
+     *
+     * @param level the {@code BotLevel} of the bot.
+     * @param seed  the seed of the random choices.
+     */
+    public Bot(BotLevel level, long seed) {
+        this(level, seed, null);
+    }
+
+    /**
+     * Constructor to create {@code Bot} taking its budget from a scheduler.
+     *
+     * @param level     the {@code BotLevel} of the bot.
+     * @param seed      the seed of the random choices.
+     * @param scheduler the {@code BotScheduler} shared by the bots, or null for none.
+     */
+    public Bot(BotLevel level, long seed, BotScheduler scheduler) {
+        if (level == null) {
+            throw new IllegalArgumentException("the level should not be null");
+        }
+        this.level = level;
+        this.seed = seed;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Plays a move for the side to move of the {@code Game}.
+     *
+     * @param game the {@code Game} to play.
+     * @return the move played, encoded by {@code Move}.
+     * @throws IllegalStateException if the game is already over.
+     */
+    public int play(Game game) {
+        GameState state = WORKSPACE.get().state;
+        state.copyFrom(game);
+        int move = chooseMove(state);
+        if (move == SearchResult.NO_MOVE) {
+            throw new IllegalStateException("the game is already over");
+        }
+        game.play(move);
+        return move;
+    }
+
+    /**
+     * Chooses a move for the side to move. The position is left as it was.
+     *
+     * @param state the {@code GameState} to play.
+     * @return the move encoded by {@code Move}, or {@code NO_MOVE} if the game is over.
+     */
+    public int chooseMove(GameState state) {
+        Workspace workspace = WORKSPACE.get();
+        if (level.getMaxDepth() > 0) {
+            long nodes = scheduler == null ? level.getMaxNodes() : scheduler.acquire(level.getMaxNodes());
+            if (nodes > 0) {
+                int move = searchMove(state, nodes);
+                if (move != SearchResult.NO_MOVE) return move;
+            }
+        }
+        return randomMove(state, workspace.moves);
+    }
+
+    /**
+     * Sets the seed of the next random choices, to replay the moves of a bot.
+     *
+     * @param seed the seed of the random choices.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Get the level of the bot.
+     *
+     * @return the {@code BotLevel}.
+     */
+    public BotLevel getLevel() {
+        return level;
+    }
+
+    // Plays any of the best lines scoring within the margin, or NO_MOVE if
+    // not even one ply could be searched.
+    private int searchMove(GameState state, long nodes) {
+        Search search = SearchPool.shared().acquire();
+        try {
+            search.setMultiPv(level.getLines());
+            SearchResult result = search.search(state, level.getMaxDepth(), nodes, Long.MAX_VALUE);
+            if (scheduler != null) {
+                scheduler.release(nodes - result.getNodes());
+            }
+            if (result.getDepth() == 0) {
+                return SearchResult.NO_MOVE;
+            }
+            SearchInfo info = search.getInfo();
+            int lines = 1;
+            while (lines < info.getLineCount() && info.getScore(lines) >= info.getScore(0) - level.getMargin()) {
+                lines++;
+            }
+            return info.getMove(nextInt(lines), 0);
+        } finally {
+            SearchPool.shared().release(search);
+        }
+    }
+
+    private int randomMove(GameState state, int[] moves) {
+        int count = state.generateMoves(moves);
+        if (count == 0) {
+            return SearchResult.NO_MOVE;
+        }
+        for (int i = 0; i < count; i++) {
+            int captured = Move.isDrop(moves[i]) ? 0 : state.getPiece(Move.getTo(moves[i]));
+            if (captured != 0 && GameState.kindOf(captured) == PieceKind.LION) return moves[i];
+        }
+        return moves[nextInt(count)];
+    }
+
+    // The generator of SplittableRandom, kept in one long.
+    private int nextInt(int bound) {
+        long z = seed += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (int) ((z >>> 1) % bound);
+    }
+
+    /**
+     * This class holds the buffers of the bots of one thread.
+     */
+    private static final class Workspace {
+        private final GameState state = new GameState();
+        private final int[] moves = new int[GameState.MAX_MOVES];
+    }
+}
@@ -0,0 +1,89 @@
+package animalchess.engine;
+
+/**
+ * This enum lists the strength levels of a {@code Bot}. A level is a depth
+ * cap, a budget of nodes per move, and a randomisation: the bot searches
+ * the best few moves and plays any of them scoring within a margin of the
+ * best one.
+ * <p>
+ * The weakest levels search a few hundred nodes at most, so they choose a
+ * move in microseconds.
+ *
+ * @author Yoochul Kim
+ * @see Bot
+ */
+public enum BotLevel {
+    /**
+     * Plays any legal move, but takes the lion when it can.
+     */
+    RANDOM(0, 0, 1, 0),
+    /**
+     * Looks one ply ahead and plays any of its best six moves, even one
+     * scoring 400 below the best.
+     */
+    BEGINNER(1, 200, 6, 400),
+    /**
+     * Looks two plies ahead and plays any of its best four moves within 150 of the best.
+     */
+    CASUAL(2, 2_000, 4, 150),
+    /**
+     * Looks four plies ahead and plays any of its best three moves within 50 of the best.
+     */
+    CLUB(4, 20_000, 3, 50),
+    /**
+     * Looks eight plies ahead and plays either of its best two moves within 10 of the best.
+     */
+    EXPERT(8, 200_000, 2, 10),
+    /**
+     * Searches as deep as two million nodes allow and always plays the best move.
+     */
+    MASTER(Search.MAX_PLY, 2_000_000, 1, 0);
+
+    private final int maxDepth;
+    private final long maxNodes;
+    private final int lines;
+    private final int margin;
+
+    BotLevel(int maxDepth, long maxNodes, int lines, int margin) {
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.lines = lines;
+        this.margin = margin;
+    }
+
+    /**
+     * Get the max depth searched.
+     *
+     * @return the depth in plies, 0 if the level does not search.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Get the budget of nodes of a move.
+     *
+     * @return the max number of nodes.
+     */
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Get the number of best moves searched to choose from.
+     *
+     * @return the number of lines of the search.
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * Get how much worse than the best move a chosen move may score.
+     *
+     * @return the margin of score.
+     */
+    public int getMargin() {
+        return margin;
+    }
+}
@@ -0,0 +1,100 @@
+package animalchess.engine;
+
+/**
+ * This class implements the budget of CPU shared by all the bots of a
+ * server, counted in search nodes: a bucket refilled at a fixed number of
+ * nodes per second, from which each move takes its budget.
+ * <p>
+ * A move never waits for the bucket. When it runs low, a move is granted
+ * fewer nodes than its level asks for, down to none, so the bots play
+ * weaker moves as quickly as ever once the machine is saturated. The nodes
+ * a move leaves unused are given back.
+ *
+ * @author Yoochul Kim
+ * @see Bot
+ */
+public final class BotScheduler {
+    private static final long MAX_REFILL_MICROS = 60_000_000;
+
+    private final long nodesPerSecond;
+    private final long capacity;
+
+    // Guarded by this.
+    private long available;
+    private long lastRefill;
+    private long granted;
+    private long cut;
+
+    /**
+     * Constructor to create {@code BotScheduler}, full.
+     *
+     * @param nodesPerSecond the number of nodes all bots may search per second.
+     * @param capacity       the max number of nodes saved up while the bots are idle.
+     * @throws IllegalArgumentException if a number is not positive.
+     */
+    public BotScheduler(long nodesPerSecond, long capacity) {
+        if (nodesPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("the rate and the capacity should be positive");
+        }
+        this.nodesPerSecond = nodesPerSecond;
+        this.capacity = capacity;
+        this.available = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes the budget of a move, without waiting.
+     *
+     * @param wanted the number of nodes the level of the bot asks for.
+     * @return the number of nodes granted, from 0 to {@code wanted}.
+     */
+    public synchronized long acquire(long wanted) {
+        refill();
+        long nodes = Math.max(0, Math.min(wanted, available));
+        available -= nodes;
+        granted += nodes;
+        cut += wanted - nodes;
+        return nodes;
+    }
+
+    /**
+     * Gives back the nodes a move did not search.
+     *
+     * @param unused the number of nodes granted but not searched.
+     */
+    public synchronized void release(long unused) {
+        if (unused <= 0) return;
+        available = Math.min(capacity, available + unused);
+        granted -= unused;
+    }
+
+    /**
+     * Get the number of nodes granted and searched so far.
+     *
+     * @return the number of nodes.
+     */
+    public synchronized long getGranted() {
+        return granted;
+    }
+
+    /**
+     * Get the number of nodes asked for but not granted so far, the
+     * strength given up to keep the latency.
+     *
+     * @return the number of nodes.
+     */
+    public synchronized long getCut() {
+        return cut;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        // Capped so that a long idle time cannot overflow.
+        long micros = Math.min((now - lastRefill) / 1000, MAX_REFILL_MICROS);
+        long nodes = micros * nodesPerSecond / 1_000_000;
+        if (nodes > 0) {
+            available = Math.min(capacity, available + nodes);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package animalchess.engine;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.PieceKind;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements the evaluation of a position for the engine.
+ * <p>
+ * The score is the material on the board and in the hands, plus a bonus
+ * for each row the chicks have advanced, seen from the side to move.
+ * The weights are kept in one array, so that they can be tuned from data:
+ * the score is the sum of the weights times the {@link #features(GameState, int[])}
+ * of the position. Tuned weights are saved in a weights file, which is read
+ * at startup for the default weights when the system property
+ * {@code WEIGHTS_PROPERTY} gives its path. If it cannot be read, an error
+ * is printed and the built-in weights are used.
+ *
+ * @author Yoochul Kim
+ * @see Search
+ */
+public class Evaluator {
+    /**
+     * The score of a won position, minus the number of plies to the win.
+     */
+    public static final int WIN = 30000;
+    /**
+     * The index of the first weight of the pieces on the board, by {@code PieceKind} ordinal.
+     */
+    public static final int BOARD_WEIGHTS = 0;
+    /**
+     * The index of the first weight of the pieces in a hand, by hand index.
+     */
+    public static final int HAND_WEIGHTS = BOARD_WEIGHTS + 6;
+    /**
+     * The index of the weight of each row a chick has advanced.
+     */
+    public static final int CHICK_ADVANCE_WEIGHT = HAND_WEIGHTS + GameState.HAND_KIND_NUMBER;
+    /**
+     * The number of weights.
+     */
+    public static final int WEIGHT_NUMBER = CHICK_ADVANCE_WEIGHT + 1;
+
+    /**
+     * The system property giving the path of the weights file read at startup.
+     */
+    public static final String WEIGHTS_PROPERTY = "animalchess.weights";
+
+    // The names of the weights in a weights file.
+    private static final String[] WEIGHT_NAMES = {
+            "lion", "dog", "cat", "chick", "promoted_cat", "promoted_chick",
+            "hand_dog", "hand_cat", "hand_chick",
+            "chick_advance"
+    };
+
+    private static final int[] BUILT_IN_WEIGHTS = {
+            // lion, dog, cat, chick, promoted cat, promoted chick
+            0, 450, 350, 100, 450, 450,
+            // dog, cat, chick in a hand
+            500, 380, 120,
+            // chick advance
+            15
+    };
+
+    private static final int[] DEFAULT_WEIGHTS = loadDefaultWeights();
+
+    private final int[] weights;
+
+    /**
+     * Constructor to create {@code Evaluator} with the default weights: the
+     * weights file given by {@code WEIGHTS_PROPERTY} at startup, if any, else
+     * the built-in weights.
+     */
+    public Evaluator() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    /**
+     * Constructor to create {@code Evaluator} with the given weights.
+     *
+     * @param weights the {@code WEIGHT_NUMBER} weights, which are copied.
+     * @throws IllegalArgumentException if the number of weights is wrong.
+     */
+    public Evaluator(int[] weights) {
+        if (weights.length != WEIGHT_NUMBER) {
+            throw new IllegalArgumentException("an evaluator needs " + WEIGHT_NUMBER + " weights");
+        }
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Evaluates the position from the side to move.
+     *
+     * @param state the {@code GameState} to evaluate.
+     * @return the score, positive if the side to move is better.
+     */
+    public int evaluate(GameState state) {
+        int score = 0;
+        for (int square = 0; square < GameState.SQUARE_NUMBER; square++) {
+            int code = state.getPiece(square);
+            if (code == 0) continue;
+            PieceKind kind = GameState.kindOf(code);
+            int value = weights[BOARD_WEIGHTS + kind.ordinal()];
+            if (kind == PieceKind.CHICK) {
+                int row = square / Game.WIDTH;
+                int advance = (code & GameState.LOWER_BIT) == 0 ? row : Game.MAX_ROW - row;
+                value += advance * weights[CHICK_ADVANCE_WEIGHT];
+            }
+            score += (code & GameState.LOWER_BIT) == 0 ? value : -value;
+        }
+        for (int handIndex = 0; handIndex < GameState.HAND_KIND_NUMBER; handIndex++) {
+            PieceKind kind = GameState.handKindOf(handIndex);
+            int count = state.getHandCount(Game.Side.UPPER, kind) - state.getHandCount(Game.Side.LOWER, kind);
+            score += count * weights[HAND_WEIGHTS + handIndex];
+        }
+        return state.getSideToMove() == Game.Side.UPPER ? score : -score;
+    }
+
+    /**
+     * Computes the features of a position from {@code UPPER}: for each
+     * weight, how many times it counts for {@code UPPER} minus for
+     * {@code LOWER}. The score of {@code UPPER} is the sum of the weights
+     * times the features.
+     *
+     * @param state    the {@code GameState}.
+     * @param features the array receiving the {@code WEIGHT_NUMBER} features.
+     */
+    public static void features(GameState state, int[] features) {
+        for (int i = 0; i < WEIGHT_NUMBER; i++) {
+            features[i] = 0;
+        }
+        for (int square = 0; square < GameState.SQUARE_NUMBER; square++) {
+            int code = state.getPiece(square);
+            if (code == 0) continue;
+            PieceKind kind = GameState.kindOf(code);
+            int sign = (code & GameState.LOWER_BIT) == 0 ? 1 : -1;
+            features[BOARD_WEIGHTS + kind.ordinal()] += sign;
+            if (kind == PieceKind.CHICK) {
+                int row = square / Game.WIDTH;
+                features[CHICK_ADVANCE_WEIGHT] += sign * (sign > 0 ? row : Game.MAX_ROW - row);
+            }
+        }
+        for (int handIndex = 0; handIndex < GameState.HAND_KIND_NUMBER; handIndex++) {
+            PieceKind kind = GameState.handKindOf(handIndex);
+            features[HAND_WEIGHTS + handIndex] =
+                    state.getHandCount(Game.Side.UPPER, kind) - state.getHandCount(Game.Side.LOWER, kind);
+        }
+    }
+
+    /**
+     * Reads a weights file: one weight per line, its name and its value,
+     * with lines starting with {@code #} ignored. Weights left out keep
+     * their built-in value.
+     *
+     * @param file the path of the weights file.
+     * @return the {@code WEIGHT_NUMBER} weights.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line is not a known weight and a number.
+     */
+    public static int[] readWeights(Path file) throws IOException {
+        int[] weights = BUILT_IN_WEIGHTS.clone();
+        for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] words = line.split("\\s+");
+            int index = words.length == 2 ? indexOf(words[0]) : -1;
+            if (index < 0) {
+                throw new IllegalArgumentException("not a weight: " + line);
+            }
+            weights[index] = Integer.parseInt(words[1]);
+        }
+        return weights;
+    }
+
+    /**
+     * Writes a weights file, replacing it if it exists.
+     *
+     * @param file    the path of the weights file.
+     * @param weights the {@code WEIGHT_NUMBER} weights.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if the number of weights is wrong.
+     */
+    public static void writeWeights(Path file, int[] weights) throws IOException {
+        if (weights.length != WEIGHT_NUMBER) {
+            throw new IllegalArgumentException("an evaluator needs " + WEIGHT_NUMBER + " weights");
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add("# weights of animalchess.engine.Evaluator");
+        for (int i = 0; i < WEIGHT_NUMBER; i++) {
+            lines.add(WEIGHT_NAMES[i] + " " + weights[i]);
+        }
+        Files.write(file, lines, StandardCharsets.US_ASCII);
+    }
+
+    private static int indexOf(String name) {
+        for (int i = 0; i < WEIGHT_NUMBER; i++) {
+            if (WEIGHT_NAMES[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private static int[] loadDefaultWeights() {
+        String path = System.getProperty(WEIGHTS_PROPERTY);
+        if (path == null) {
+            return BUILT_IN_WEIGHTS;
+        }
+        try {
+            return readWeights(Paths.get(path));
+        } catch (IOException | RuntimeException e) {
+            // Failing here would make this class unusable for the whole JVM.
+            System.err.println("cannot read the weights file " + path + ", using the built-in weights: " + e);
+            return BUILT_IN_WEIGHTS;
+        }
+    }
+
+    /**
+     * Get a copy of the weights.
+     *
+     * @return the weights of this evaluator.
+     */
+    public int[] getWeights() {
+        return weights.clone();
+    }
+}
@@ -0,0 +1,357 @@
+package animalchess.engine;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.PieceKind;
+import animalchess.Zobrist;
+
+/**
+ * This class implements a solver proving or disproving that the side to
+ * move can force the capture of the opponent lion, by depth-first
+ * proof-number search (df-pn).
+ * <p>
+ * As in tsume problems, the attacker only plays moves which threaten the
+ * lion, or take it, drops included, while the defender plays every legal
+ * move. So a proof is a forced win by a sequence of threats, and a disproof
+ * means there is none, within the max depth; a line coming back to a
+ * position of the current path counts as a defence. The proof and disproof
+ * numbers are kept in a bounded hash table of primitive arrays, in buckets
+ * of four entries which replace the one with the smallest search effort,
+ * so the solver runs in a fixed amount of memory. The
+ * search stops at a number of nodes or a time, or when {@link #stop()} is
+ * called, and then reports {@code UNKNOWN}.
+ * <p>
+ * A solver reuses its table and buffers and is used by one thread at a time.
+ *
+ * @author Yoochul Kim
+ * @see Search
+ */
+public class MateSolver {
+    /**
+     * The side to move can force the capture of the opponent lion.
+     */
+    public static final int PROVEN = 1;
+    /**
+     * The side to move cannot force the capture by threats.
+     */
+    public static final int DISPROVEN = 2;
+    /**
+     * The search stopped before settling the position.
+     */
+    public static final int UNKNOWN = 0;
+    /**
+     * The max number of plies of a line.
+     */
+    public static final int MAX_PLY = 64;
+
+    private static final int INFINITY = 100_000_000;
+    private static final int TIME_CHECK_MASK = 0x3FF;
+    private static final int BUCKET_SIZE = 4;
+
+    // The table: the proof number of the side to move (phi) and its disproof number (delta).
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final int[] generations;
+    // The number of nodes searched below each entry.
+    private final int[] efforts;
+    private final int mask;
+    private int generation;
+
+    private final int[][] moves = new int[MAX_PLY + 1][GameState.MAX_MOVES];
+    private final long[][] hashes = new long[MAX_PLY + 1][GameState.MAX_MOVES];
+    private final long[] path = new long[MAX_PLY + 1];
+
+    private GameState state;
+    private Game.Side attacker;
+    private int maxPly;
+    private long nodes;
+    private long maxNodes;
+    private long deadline;
+    private volatile boolean stopped;
+    private int bestMove;
+
+    /**
+     * Constructor to create {@code MateSolver} with a table of about
+     * {@code tableSize} positions.
+     *
+     * @param tableSize the number of positions kept, rounded up to a power of two.
+     * @throws IllegalArgumentException if the size is not positive.
+     */
+    public MateSolver(int tableSize) {
+        if (tableSize <= 0 || tableSize > 1 << 30) {
+            throw new IllegalArgumentException("the table size should be from 1 to 2^30");
+        }
+        int capacity = Math.max(BUCKET_SIZE, Integer.highestOneBit(tableSize * 2 - 1));
+        keys = new long[capacity];
+        phis = new int[capacity];
+        deltas = new int[capacity];
+        generations = new int[capacity];
+        efforts = new int[capacity];
+        mask = capacity - BUCKET_SIZE;
+    }
+
+    /**
+     * Solves the position of a {@code Game} for the side to move.
+     *
+     * @param game       the {@code Game} to solve.
+     * @param maxNodes   the max number of nodes, or {@code Long.MAX_VALUE}.
+     * @param timeMillis the max time in milliseconds, or {@code Long.MAX_VALUE}.
+     * @return {@code PROVEN}, {@code DISPROVEN} or {@code UNKNOWN}.
+     */
+    public int solve(Game game, long maxNodes, long timeMillis) {
+        return solve(GameState.of(game), MAX_PLY, maxNodes, timeMillis);
+    }
+
+    /**
+     * Solves a position for the side to move. The position is left as it was.
+     *
+     * @param state      the {@code GameState} to solve.
+     * @param maxPly     the max number of plies of a line, up to {@code MAX_PLY}.
+     * @param maxNodes   the max number of nodes, or {@code Long.MAX_VALUE}.
+     * @param timeMillis the max time in milliseconds, or {@code Long.MAX_VALUE}.
+     * @return {@code PROVEN}, {@code DISPROVEN} or {@code UNKNOWN}.
+     */
+    public int solve(GameState state, int maxPly, long maxNodes, long timeMillis) {
+        this.state = state;
+        this.attacker = state.getSideToMove();
+        this.maxPly = Math.min(maxPly, MAX_PLY);
+        this.nodes = 0;
+        this.maxNodes = maxNodes;
+        long now = System.currentTimeMillis();
+        this.deadline = timeMillis >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeMillis;
+        this.stopped = false;
+        this.bestMove = SearchResult.NO_MOVE;
+        // Entries of the last solve may belong to the other attacker.
+        generation++;
+
+        long hash = Zobrist.hash(state);
+        mid(0, hash, INFINITY, INFINITY);
+        int slot = find(hash);
+        if (slot < 0 || stopped && phis[slot] != 0 && deltas[slot] != 0) {
+            return UNKNOWN;
+        }
+        if (phis[slot] == 0) {
+            bestMove = findProvingMove(hash);
+            return PROVEN;
+        }
+        return deltas[slot] == 0 ? DISPROVEN : UNKNOWN;
+    }
+
+    /**
+     * Stops the running solve, from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Get the first move of the forced win found by the last solve.
+     *
+     * @return the move encoded by {@code Move}, or {@code NO_MOVE} if the position was not proven.
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Get the number of nodes searched by the last solve.
+     *
+     * @return the number of nodes.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    // Multiple iterative deepening: searches the node until its phi or delta
+    // reaches its threshold, then stores them.
+    private void mid(int ply, long hash, int thresholdPhi, int thresholdDelta) {
+        long start = nodes;
+        if (++nodes >= maxNodes || (nodes & TIME_CHECK_MASK) == 0 && System.currentTimeMillis() >= deadline) {
+            stopped = true;
+        }
+        if (stopped) return;
+
+        if (state.getWinner() != null) {
+            // The side to move has lost its lion.
+            store(hash, INFINITY, 0, 1);
+            return;
+        }
+        int count = generate(ply);
+        if (count < 0) {
+            // The side to move takes the lion.
+            store(hash, 0, INFINITY, 1);
+            return;
+        }
+        if (count == 0) {
+            store(hash, INFINITY, 0, 1);
+            return;
+        }
+        int[] childMoves = moves[ply];
+        long[] childHashes = hashes[ply];
+        for (int i = 0; i < count; i++) {
+            int undo = state.play(childMoves[i]);
+            childHashes[i] = Zobrist.hash(state);
+            state.undo(childMoves[i], undo);
+        }
+        path[ply] = hash;
+        boolean childIsAttacker = state.getSideToMove() != attacker;
+
+        while (true) {
+            // phi is the least delta of the children and delta the sum of their phi.
+            long delta = 0;
+            int best = -1;
+            int bestDelta = INFINITY;
+            int secondDelta = INFINITY;
+            int bestPhi = 0;
+            for (int i = 0; i < count; i++) {
+                long value = childValue(ply, childHashes[i], childIsAttacker);
+                int childPhi = (int) (value >>> 32);
+                int childDelta = (int) value;
+                delta += childPhi;
+                if (childDelta < bestDelta) {
+                    secondDelta = bestDelta;
+                    bestDelta = childDelta;
+                    bestPhi = childPhi;
+                    best = i;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+            }
+            int phi = bestDelta;
+            int sum = (int) Math.min(delta, INFINITY);
+            if (phi >= thresholdPhi || sum >= thresholdDelta) {
+                store(hash, phi, sum, nodes - start);
+                return;
+            }
+
+            long childThresholdPhi = (long) thresholdDelta - sum + bestPhi;
+            int childThresholdDelta = Math.min(thresholdPhi, secondDelta + 1);
+            int move = childMoves[best];
+            int undo = state.play(move);
+            mid(ply + 1, childHashes[best], (int) Math.min(childThresholdPhi, INFINITY), childThresholdDelta);
+            state.undo(move, undo);
+            if (stopped) return;
+        }
+    }
+
+    // The phi and delta of a child, packed in a long; a repetition or a line
+    // too long is a success of the defender.
+    private long childValue(int ply, long hash, boolean childIsAttacker) {
+        boolean defended = ply + 1 >= maxPly;
+        for (int i = 0; i <= ply && !defended; i++) {
+            defended = path[i] == hash;
+        }
+        if (defended) {
+            return childIsAttacker ? (long) INFINITY << 32 : INFINITY;
+        }
+        int slot = find(hash);
+        if (slot < 0) {
+            return 1L << 32 | 1;
+        }
+        return (long) phis[slot] << 32 | deltas[slot];
+    }
+
+    // Generates the moves of the side to move into the buffer of the ply:
+    // every legal move for the defender, the threats for the attacker.
+    // Returns -1 if a move takes the opponent lion.
+    private int generate(int ply) {
+        int[] buffer = moves[ply];
+        int count = state.generateMoves(buffer);
+        Game.Side side = state.getSideToMove();
+        int lion = lionSquare(side == Game.Side.UPPER ? Game.Side.LOWER : Game.Side.UPPER);
+        for (int i = 0; i < count; i++) {
+            if (Move.getTo(buffer[i]) == lion) return -1;
+        }
+        if (side != attacker) {
+            return count;
+        }
+
+        int threats = 0;
+        for (int i = 0; i < count; i++) {
+            int move = buffer[i];
+            int undo = state.play(move);
+            boolean threat = attacks(side, lion);
+            state.undo(move, undo);
+            if (threat) buffer[threats++] = move;
+        }
+        return threats;
+    }
+
+    private int lionSquare(Game.Side side) {
+        int lion = GameState.encode(PieceKind.LION, side);
+        for (int square = 0; square < GameState.SQUARE_NUMBER; square++) {
+            if (state.getPiece(square) == lion) return square;
+        }
+        return -1;
+    }
+
+    // Returns whether a piece of the side can move to the square.
+    private boolean attacks(Game.Side side, int square) {
+        if (square < 0) return false;
+        for (int from = 0; from < GameState.SQUARE_NUMBER; from++) {
+            int code = state.getPiece(from);
+            if (code != 0 && GameState.sideOf(code) == side
+                    && (GameState.kindOf(code).getMask(side, from) & 1 << square) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int findProvingMove(long hash) {
+        int count = generate(0);
+        int[] rootMoves = moves[0];
+        if (count < 0) {
+            // Take the lion.
+            int lion = lionSquare(attacker == Game.Side.UPPER ? Game.Side.LOWER : Game.Side.UPPER);
+            count = state.generateMoves(rootMoves);
+            for (int i = 0; i < count; i++) {
+                if (Move.getTo(rootMoves[i]) == lion) return rootMoves[i];
+            }
+        }
+        path[0] = hash;
+        for (int i = 0; i < count; i++) {
+            int undo = state.play(rootMoves[i]);
+            long childHash = Zobrist.hash(state);
+            state.undo(rootMoves[i], undo);
+            if ((int) childValue(0, childHash, false) == 0) {
+                return rootMoves[i];
+            }
+        }
+        return SearchResult.NO_MOVE;
+    }
+
+    private int find(long hash) {
+        int bucket = (int) hash & mask;
+        for (int slot = bucket; slot < bucket + BUCKET_SIZE; slot++) {
+            if (keys[slot] == hash && generations[slot] == generation) return slot;
+        }
+        return -1;
+    }
+
+    // Stores into the entry of the position if any, else into an entry of an
+    // older solve, else over the entry of the bucket with the smallest effort.
+    private void store(long hash, int phi, int delta, long effort) {
+        int bucket = (int) hash & mask;
+        int slot = find(hash);
+        if (slot >= 0) {
+            effort += efforts[slot];
+        }
+        for (int i = bucket; slot < 0 && i < bucket + BUCKET_SIZE; i++) {
+            if (generations[i] != generation) slot = i;
+        }
+        if (slot < 0) {
+            slot = bucket;
+            for (int i = bucket + 1; i < bucket + BUCKET_SIZE; i++) {
+                if (efforts[i] < efforts[slot]) slot = i;
+            }
+        }
+        keys[slot] = hash;
+        phis[slot] = phi;
+        deltas[slot] = delta;
+        generations[slot] = generation;
+        efforts[slot] = (int) Math.min(effort, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,367 @@
+package animalchess.engine;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.PieceKind;
+
+/**
+ * This class implements the search of the engine: an iterative deepening
+ * alpha-beta search over {@code GameState}, with a search of the captures
+ * at the leaves.
+ * <p>
+ * The moves of every ply are generated into buffers allocated once, so
+ * searching allocates nothing per position. A search can be limited by
+ * depth, nodes and time, and stopped from another thread.
+ * <p>
+ * In multi-PV mode the search keeps the best few moves of the root with
+ * their exact scores: each other root move is only searched against the
+ * worst of them. The lines of each iteration, with their principal
+ * variations, are copied into a {@code SearchInfo} and given to the
+ * {@code SearchListener}, if any, at most once per interval.
+ * <p>
+ * A {@code Search} is used by one thread at a time.
+ *
+ * @author Yoochul Kim
+ * @see Evaluator
+ */
+public class Search {
+    /**
+     * The max number of plies searched from the root, including the captures.
+     */
+    public static final int MAX_PLY = 64;
+
+    // Check the clock once every this many nodes.
+    private static final int TIME_CHECK_INTERVAL = 1024;
+
+    // The order of the captures, by the board byte of the captured piece.
+    private static final int[] CAPTURE_ORDER = new int[16];
+
+    static {
+        for (int code = 1; code < CAPTURE_ORDER.length; code++) {
+            if ((code & (GameState.LOWER_BIT - 1)) == 0 || (code & (GameState.LOWER_BIT - 1)) > PieceKind.values().length) continue;
+            PieceKind kind = GameState.kindOf(code);
+            CAPTURE_ORDER[code] = kind == PieceKind.LION ? 100 : 1 + kind.ordinal();
+        }
+    }
+
+    private final Evaluator evaluator;
+    private final int[][] moves = new int[MAX_PLY + 1][GameState.MAX_MOVES];
+    private final int[][] orders = new int[MAX_PLY + 1][GameState.MAX_MOVES];
+    // The principal variation found from each ply, and its length.
+    private final int[][] variations = new int[MAX_PLY + 1][MAX_PLY];
+    private final int[] lengths = new int[MAX_PLY + 1];
+    // The score and principal variation of each root move, kept in the order of the root moves.
+    private final int[] rootScores = new int[GameState.MAX_MOVES];
+    private final int[][] rootVariations = new int[GameState.MAX_MOVES][];
+    private final int[] rootLengths = new int[GameState.MAX_MOVES];
+    // The scores of the best lines of the running iteration, best first.
+    private int[] lineScores = new int[1];
+    private SearchInfo info = new SearchInfo(1);
+    private int multiPv = 1;
+    private SearchListener listener;
+    private long intervalMillis;
+
+    private GameState state;
+    private long nodes;
+    private long maxNodes;
+    private long deadline;
+    private volatile boolean stopped;
+
+    /**
+     * Constructor to create {@code Search} with the given {@code Evaluator}.
+     *
+     * @param evaluator the {@code Evaluator} of the positions.
+     */
+    public Search(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Sets the number of best moves searched with their exact score. It
+     * takes effect from the next search.
+     *
+     * @param lines the number of lines, 1 by default.
+     * @throws IllegalArgumentException if the number is not from 1 to {@code GameState.MAX_MOVES}.
+     */
+    public void setMultiPv(int lines) {
+        if (lines < 1 || lines > GameState.MAX_MOVES) {
+            throw new IllegalArgumentException("the number of lines should be from 1 to " + GameState.MAX_MOVES);
+        }
+        // Fewer lines reuse the arrays, so switching costs nothing.
+        if (lines > info.getMaxLines()) {
+            lineScores = new int[lines];
+            info = new SearchInfo(lines);
+        }
+        multiPv = lines;
+    }
+
+    /**
+     * Sets the listener of the iterations of the next searches.
+     *
+     * @param listener       the {@code SearchListener}, or null for none.
+     * @param intervalMillis the least time between two calls, but the last iteration is always given.
+     * @throws IllegalArgumentException if the interval is negative.
+     */
+    public void setListener(SearchListener listener, long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("the interval should not be negative");
+        }
+        this.listener = listener;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Get the info of the last completed iteration of the running or last search.
+     * It is filled again by the next iteration.
+     *
+     * @return the {@code SearchInfo} of the search.
+     */
+    public SearchInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * Searches the best move of the position of a {@code Game} for the side to move.
+     *
+     * @param game       the {@code Game} to search, which is left as it is.
+     * @param maxDepth   the max depth, in plies, from 1.
+     * @param maxNodes   the max number of nodes, or {@code Long.MAX_VALUE}.
+     * @param timeMillis the max time in milliseconds, or {@code Long.MAX_VALUE}.
+     * @return the {@code SearchResult} of the last completed iteration.
+     */
+    public SearchResult search(Game game, int maxDepth, long maxNodes, long timeMillis) {
+        return search(GameState.of(game), maxDepth, maxNodes, timeMillis);
+    }
+
+    /**
+     * Searches the best move of the position for the side to move.
+     * The position is left as it was once the search is over.
+     *
+     * @param state      the {@code GameState} to search.
+     * @param maxDepth   the max depth, in plies, from 1.
+     * @param maxNodes   the max number of nodes, or {@code Long.MAX_VALUE}.
+     * @param timeMillis the max time in milliseconds, or {@code Long.MAX_VALUE}.
+     * @return the {@code SearchResult} of the last completed iteration.
+     */
+    public SearchResult search(GameState state, int maxDepth, long maxNodes, long timeMillis) {
+        this.state = state;
+        this.nodes = 0;
+        this.maxNodes = maxNodes;
+        long now = System.currentTimeMillis();
+        this.deadline = timeMillis >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeMillis;
+        this.stopped = false;
+        this.info.clear();
+
+        int[] rootMoves = moves[0];
+        int count = state.generateMoves(rootMoves);
+        if (count == 0) {
+            return new SearchResult(SearchResult.NO_MOVE, 0, 0, 0);
+        }
+        int lines = Math.min(multiPv, count);
+        for (int i = 0; i < count; i++) {
+            if (rootVariations[i] == null) rootVariations[i] = new int[MAX_PLY];
+        }
+
+        long lastReport = -intervalMillis;
+        boolean reported = true;
+        int completedDepth = 0;
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY); depth++) {
+            for (int i = 0; i < count; i++) {
+                // Once the lines are filled, a move only needs to beat the worst of them.
+                int alpha = i < lines ? -Evaluator.WIN - 1 : lineScores[lines - 1];
+                int move = rootMoves[i];
+                int undo = state.play(move);
+                int score = -alphaBeta(depth - 1, 1, -Evaluator.WIN - 1, -alpha);
+                state.undo(move, undo);
+                if (stopped) break;
+                rootScores[i] = score;
+                rootVariations[i][0] = move;
+                rootLengths[i] = 1;
+                if (i < lines || score > alpha) {
+                    insertLineScore(Math.min(i, lines - 1), score);
+                    System.arraycopy(variations[1], 0, rootVariations[i], 1, lengths[1]);
+                    rootLengths[i] += lengths[1];
+                }
+            }
+            if (stopped) break;
+            // The best moves of this iteration are searched first by the next one.
+            sortRoot(rootMoves, count);
+            completedDepth = depth;
+            long time = System.currentTimeMillis() - now;
+            info.set(depth, nodes, time);
+            for (int line = 0; line < lines; line++) {
+                info.setLine(line, rootScores[line], rootVariations[line], rootLengths[line]);
+            }
+            reported = false;
+            if (listener != null && time - lastReport >= intervalMillis) {
+                listener.onInfo(info);
+                lastReport = time;
+                reported = true;
+            }
+            // A forced win or loss found will not change with more depth.
+            if (isDecided(lines)) break;
+        }
+        if (!reported && listener != null) {
+            listener.onInfo(info);
+        }
+        int bestScore = completedDepth == 0 ? 0 : info.getScore(0);
+        return new SearchResult(rootMoves[0], bestScore, completedDepth, nodes);
+    }
+
+    /**
+     * Stops the running search as soon as possible. It can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Get the number of nodes searched so far by the running or last search.
+     *
+     * @return the number of nodes.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    private int alphaBeta(int depth, int ply, int alpha, int beta) {
+        lengths[ply] = 0;
+        if (checkLimits()) return 0;
+        // The previous move captured the lion, so the side to move has lost.
+        if (state.getWinner() != null) return -Evaluator.WIN + ply;
+        if (depth <= 0 || ply >= MAX_PLY) return quiescence(ply, alpha, beta);
+
+        int[] plyMoves = moves[ply];
+        int count = state.generateMoves(plyMoves);
+        if (count == 0) return 0;
+        orderMoves(plyMoves, orders[ply], count);
+
+        for (int i = 0; i < count; i++) {
+            int move = plyMoves[i];
+            int undo = state.play(move);
+            int score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha);
+            state.undo(move, undo);
+            if (stopped) return 0;
+            if (score > alpha) {
+                alpha = score;
+                if (alpha >= beta) break;
+                setVariation(ply, move);
+            }
+        }
+        return alpha;
+    }
+
+    private int quiescence(int ply, int alpha, int beta) {
+        lengths[ply] = 0;
+        if (checkLimits()) return 0;
+        if (state.getWinner() != null) return -Evaluator.WIN + ply;
+
+        int standPat = evaluator.evaluate(state);
+        if (standPat >= beta || ply >= MAX_PLY) return standPat;
+        if (standPat > alpha) alpha = standPat;
+
+        int[] plyMoves = moves[ply];
+        int count = state.generateMoves(plyMoves);
+        int captures = 0;
+        // Keep the captures only, they are never drops.
+        for (int i = 0; i < count; i++) {
+            if (!Move.isDrop(plyMoves[i]) && state.getPiece(Move.getTo(plyMoves[i])) != 0) {
+                plyMoves[captures++] = plyMoves[i];
+            }
+        }
+        orderMoves(plyMoves, orders[ply], captures);
+
+        for (int i = 0; i < captures; i++) {
+            int move = plyMoves[i];
+            int undo = state.play(move);
+            int score = -quiescence(ply + 1, -beta, -alpha);
+            state.undo(move, undo);
+            if (stopped) return 0;
+            if (score > alpha) {
+                alpha = score;
+                if (alpha >= beta) break;
+                setVariation(ply, move);
+            }
+        }
+        return alpha;
+    }
+
+    // The variation of the ply is the move followed by the variation of the next ply.
+    private void setVariation(int ply, int move) {
+        variations[ply][0] = move;
+        System.arraycopy(variations[ply + 1], 0, variations[ply], 1, lengths[ply + 1]);
+        lengths[ply] = 1 + lengths[ply + 1];
+    }
+
+    // Inserts a score into the best lines, from the index down to its place.
+    private void insertLineScore(int index, int score) {
+        int i = index;
+        while (i > 0 && lineScores[i - 1] < score) {
+            lineScores[i] = lineScores[i - 1];
+            i--;
+        }
+        lineScores[i] = score;
+    }
+
+    private boolean isDecided(int lines) {
+        for (int line = 0; line < lines; line++) {
+            if (Math.abs(rootScores[line]) <= Evaluator.WIN - MAX_PLY) return false;
+        }
+        return true;
+    }
+
+    // Sorts the root moves by score, best first, with their variations.
+    private void sortRoot(int[] rootMoves, int count) {
+        // Insertion sort, stable so the moves failing low keep their order.
+        for (int i = 1; i < count; i++) {
+            int move = rootMoves[i];
+            int score = rootScores[i];
+            int[] variation = rootVariations[i];
+            int length = rootLengths[i];
+            int j = i - 1;
+            while (j >= 0 && rootScores[j] < score) {
+                rootMoves[j + 1] = rootMoves[j];
+                rootScores[j + 1] = rootScores[j];
+                rootVariations[j + 1] = rootVariations[j];
+                rootLengths[j + 1] = rootLengths[j];
+                j--;
+            }
+            rootMoves[j + 1] = move;
+            rootScores[j + 1] = score;
+            rootVariations[j + 1] = variation;
+            rootLengths[j + 1] = length;
+        }
+    }
+
+    private boolean checkLimits() {
+        nodes++;
+        if (nodes >= maxNodes) {
+            stopped = true;
+        } else if (nodes % TIME_CHECK_INTERVAL == 0 && System.currentTimeMillis() >= deadline) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    // Sorts the captures first, the most valuable captured piece first.
+    private void orderMoves(int[] plyMoves, int[] order, int count) {
+        for (int i = 0; i < count; i++) {
+            int move = plyMoves[i];
+            order[i] = Move.isDrop(move) ? 0 : CAPTURE_ORDER[state.getPiece(Move.getTo(move))];
+        }
+        // Insertion sort, stable so the generation order breaks ties.
+        for (int i = 1; i < count; i++) {
+            int move = plyMoves[i];
+            int value = order[i];
+            int j = i - 1;
+            while (j >= 0 && order[j] < value) {
+                plyMoves[j + 1] = plyMoves[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+            plyMoves[j + 1] = move;
+            order[j + 1] = value;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package animalchess.engine;
+
+/**
+ * This class holds the info of a completed iteration of a {@code Search}:
+ * its depth, the nodes searched so far, and the best lines, each a score
+ * and its principal variation, best first.
+ * <p>
+ * A {@code SearchInfo} belongs to its {@code Search}, which fills the same
+ * arrays again after each iteration, so reporting it allocates nothing.
+ *
+ * @author Yoochul Kim
+ * @see SearchListener
+ */
+public final class SearchInfo {
+    private final int[] scores;
+    private final int[][] variations;
+    private final int[] lengths;
+    private int lineCount;
+    private int depth;
+    private long nodes;
+    private long timeMillis;
+
+    SearchInfo(int maxLines) {
+        scores = new int[maxLines];
+        variations = new int[maxLines][Search.MAX_PLY];
+        lengths = new int[maxLines];
+    }
+
+    void set(int depth, long nodes, long timeMillis) {
+        this.depth = depth;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+    }
+
+    void setLine(int line, int score, int[] variation, int length) {
+        scores[line] = score;
+        System.arraycopy(variation, 0, variations[line], 0, length);
+        lengths[line] = length;
+        lineCount = Math.max(lineCount, line + 1);
+    }
+
+    void clear() {
+        lineCount = 0;
+        depth = 0;
+        nodes = 0;
+        timeMillis = 0;
+    }
+
+    /**
+     * Get the max number of lines.
+     *
+     * @return the number of lines the arrays can hold.
+     */
+    int getMaxLines() {
+        return scores.length;
+    }
+
+    /**
+     * Get the depth of the iteration.
+     *
+     * @return the depth in plies.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the number of nodes searched from the start of the search.
+     *
+     * @return the number of nodes.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Get the time from the start of the search.
+     *
+     * @return the time in milliseconds.
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Get the speed of the search.
+     *
+     * @return the number of nodes per second.
+     */
+    public long getNodesPerSecond() {
+        return nodes * 1000 / Math.max(1, timeMillis);
+    }
+
+    /**
+     * Get the number of lines, at most the number asked and the number of legal moves.
+     *
+     * @return the number of lines.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Get the score of a line.
+     *
+     * @param line the line, from 0 for the best.
+     * @return the score from the side to move.
+     * @throws IndexOutOfBoundsException if there is no such line.
+     */
+    public int getScore(int line) {
+        checkLine(line);
+        return scores[line];
+    }
+
+    /**
+     * Get the number of moves of the principal variation of a line.
+     *
+     * @param line the line, from 0 for the best.
+     * @return the number of moves, at least 1.
+     * @throws IndexOutOfBoundsException if there is no such line.
+     */
+    public int getLength(int line) {
+        checkLine(line);
+        return lengths[line];
+    }
+
+    /**
+     * Get a move of the principal variation of a line.
+     *
+     * @param line  the line, from 0 for the best.
+     * @param index the index of the move, from 0 for the move of the root.
+     * @return the move encoded by {@code Move}.
+     * @throws IndexOutOfBoundsException if there is no such line or move.
+     */
+    public int getMove(int line, int index) {
+        if (index < 0 || index >= getLength(line)) {
+            throw new IndexOutOfBoundsException("no move " + index + " in line " + line);
+        }
+        return variations[line][index];
+    }
+
+    private void checkLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("no line " + line);
+        }
+    }
+}
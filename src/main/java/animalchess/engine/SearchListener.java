@@ -0,0 +1,22 @@
+package animalchess.engine;
+
+/**
+ * This interface receives the progress of a running {@code Search}: the
+ * lines found by each completed iteration, no more often than the interval
+ * given to {@link Search#setListener(SearchListener, long)}, and always the
+ * last iteration.
+ * <p>
+ * It is called on the thread of the search, which waits for it to return.
+ *
+ * @author Yoochul Kim
+ * @see SearchInfo
+ */
+public interface SearchListener {
+    /**
+     * Receives the info of a completed iteration. The {@code SearchInfo} is
+     * reused by the search, so it should not be kept after returning.
+     *
+     * @param info the depth, nodes and lines of the iteration.
+     */
+    void onInfo(SearchInfo info);
+}
@@ -0,0 +1,75 @@
+package animalchess.engine;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class implements a bounded pool of free {@code Search} objects.
+ * <p>
+ * A search holds buffers for every ply, so it is too big to create per
+ * request, and one per thread does not help once requests run on virtual
+ * threads, each of them new. Callers take a search for the time of one
+ * request and give it back; a search given back to a full pool is left to
+ * the garbage collector, so the pool never holds more than its capacity.
+ *
+ * @author Yoochul Kim
+ * @see Search
+ */
+public final class SearchPool {
+    private static final SearchPool SHARED = new SearchPool(Runtime.getRuntime().availableProcessors());
+
+    private final BlockingQueue<Search> free;
+
+    /**
+     * Constructor to create {@code SearchPool} keeping at most {@code capacity} free searches.
+     *
+     * @param capacity the max number of free searches kept.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public SearchPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("the capacity should be positive");
+        }
+        free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Get the pool shared by the server and the bots, which keeps one free
+     * search per core.
+     *
+     * @return the shared {@code SearchPool}.
+     */
+    public static SearchPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a free search, or creates one if they are all in use.
+     *
+     * @return a {@code Search} with one line and no listener.
+     */
+    public Search acquire() {
+        Search search = free.poll();
+        return search != null ? search : new Search(new Evaluator());
+    }
+
+    /**
+     * Gives a search back, with one line and no listener again.
+     *
+     * @param search the {@code Search} taken from this pool, not in use anymore.
+     */
+    public void release(Search search) {
+        search.setMultiPv(1);
+        search.setListener(null, 0);
+        free.offer(search);
+    }
+
+    /**
+     * Get the number of free searches.
+     *
+     * @return the number of searches kept.
+     */
+    public int size() {
+        return free.size();
+    }
+}
@@ -0,0 +1,71 @@
+package animalchess.engine;
+
+/**
+ * This class holds the result of a search: the best move found,
+ * its score and how much was searched.
+ *
+ * @author Yoochul Kim
+ * @see Search
+ */
+public final class SearchResult {
+    /**
+     * The best move of a position without any legal move.
+     */
+    public static final int NO_MOVE = -1;
+
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+
+    /**
+     * Constructor to create {@code SearchResult}.
+     *
+     * @param bestMove the best move encoded by {@code Move}, or {@code NO_MOVE}.
+     * @param score    the score of the best move, from the side to move.
+     * @param depth    the depth of the last completed iteration.
+     * @param nodes    the number of positions searched.
+     */
+    public SearchResult(int bestMove, int score, int depth, long nodes) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Get the best move found.
+     *
+     * @return the best move encoded by {@code Move}, or {@code NO_MOVE}.
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Get the score of the best move, from the side to move.
+     *
+     * @return the score, {@code Evaluator.WIN} minus the plies for a forced win.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Get the depth of the last completed iteration.
+     *
+     * @return the depth searched.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the number of positions searched.
+     *
+     * @return the number of nodes.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+}
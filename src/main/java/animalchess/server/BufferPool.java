@@ -0,0 +1,63 @@
+package animalchess.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * This class implements a pool of direct buffers of one size.
+ * <p>
+ * Direct buffers are costly to create and are freed late by the garbage
+ * collector, so connections take them from a pool and give them back.
+ * A pool belongs to one I/O thread and is not thread-safe.
+ *
+ * @author Yoochul Kim
+ * @see GameServer
+ */
+class BufferPool {
+    private final int bufferSize;
+    private final int capacity;
+    private final ArrayDeque<ByteBuffer> buffers;
+
+    /**
+     * Constructor to create {@code BufferPool}.
+     *
+     * @param bufferSize the size of each buffer in bytes.
+     * @param capacity   the max number of free buffers kept.
+     */
+    BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.buffers = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Get a cleared buffer, a new one if the pool is empty.
+     *
+     * @return the direct {@code ByteBuffer}.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        return buffer == null ? ByteBuffer.allocateDirect(bufferSize) : buffer;
+    }
+
+    /**
+     * Gives a buffer back to this pool.
+     *
+     * @param buffer the {@code ByteBuffer} from {@code acquire()}.
+     */
+    void release(ByteBuffer buffer) {
+        if (buffers.size() < capacity) {
+            buffer.clear();
+            buffers.push(buffer);
+        }
+    }
+
+    /**
+     * Get the number of free buffers kept.
+     *
+     * @return the number of free buffers.
+     */
+    int size() {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,265 @@
+package animalchess.server;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.engine.AnalysisCache;
+import animalchess.engine.Evaluator;
+import animalchess.engine.Search;
+import animalchess.engine.SearchInfo;
+import animalchess.engine.SearchListener;
+import animalchess.engine.SearchPool;
+import animalchess.engine.SearchResult;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class implements a line-based text protocol, close to USI, to play
+ * a {@code Game} and ask the engine for moves.
+ * <p>
+ * The commands are:
+ * <ul>
+ *     <li>{@code usi} answers the id of the engine, then {@code usiok}.</li>
+ *     <li>{@code isready} answers {@code readyok}.</li>
+ *     <li>{@code usinewgame} restores the start position.</li>
+ *     <li>{@code position startpos [moves m1 m2 ...]} sets the position after the moves.</li>
+ *     <li>{@code move m} plays one move for the side to move, and answers {@code ok}.</li>
+ *     <li>{@code go [depth d] [nodes n] [movetime ms] [multipv k]} answers {@code bestmove m},
+ *     or {@code bestmove resign} once the game is over. With {@code multipv}, it is preceded
+ *     by {@code info} lines giving the best k moves of the iterations.</li>
+ *     <li>{@code quit} closes the connection.</li>
+ * </ul>
+ * Moves are written as in {@link Move#toText(int)}. A command which fails
+ * is answered by {@code error} and the reason.
+ * <p>
+ * The fixed answers are prebuilt read-only buffers, which are written
+ * to the connections without copying them. The results of {@code go} are
+ * kept in an {@code AnalysisCache} shared by all connections, which answers
+ * a {@code go depth d} on a position, or its mirror, already searched as deep.
+ *
+ * @author Yoochul Kim
+ * @see GameServer
+ */
+public class EngineProtocol {
+    /**
+     * The time the engine thinks for a {@code go} without limits.
+     */
+    public static final long DEFAULT_MOVE_TIME_MILLIS = 1000;
+    /**
+     * The number of search results kept in the cache.
+     */
+    public static final int CACHE_CAPACITY = 1 << 16;
+    /**
+     * The least time between the {@code info} lines of two iterations.
+     */
+    public static final long INFO_INTERVAL_MILLIS = 100;
+
+    private static final ByteBuffer USI_OK = prebuilt("id name AnimalChess\nid author Yoochul Kim\nusiok\n");
+    private static final ByteBuffer READY_OK = prebuilt("readyok\n");
+    private static final ByteBuffer OK = prebuilt("ok\n");
+    private static final ByteBuffer RESIGN = prebuilt("bestmove resign\n");
+    private static final ByteBuffer NOTHING = prebuilt("");
+
+    /**
+     * The answer of {@code quit}, after which the connection is closed.
+     */
+    static final ByteBuffer QUIT = prebuilt("");
+
+    private static final AnalysisCache CACHE = new AnalysisCache(CACHE_CAPACITY);
+
+    private EngineProtocol() {
+    }
+
+    /**
+     * Get the cache of the search results, to read its metrics.
+     *
+     * @return the {@code AnalysisCache} shared by all connections.
+     */
+    public static AnalysisCache getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Runs one command line on the {@code Game}.
+     * It should be called by the only thread using the game.
+     *
+     * @param line the command, without the line break.
+     * @param game the {@code Game} of the connection.
+     * @return the answer to write back, possibly empty.
+     */
+    public static ByteBuffer handle(String line, Game game) {
+        String[] words = line.trim().split("\\s+");
+        try {
+            switch (words[0]) {
+                case "usi":
+                    return USI_OK.duplicate();
+                case "isready":
+                    return READY_OK.duplicate();
+                case "usinewgame":
+                    game.reset();
+                    return NOTHING.duplicate();
+                case "position":
+                    return position(words, game);
+                case "move":
+                    if (words.length != 2) return error("move needs one move");
+                    game.play(Move.parse(words[1]));
+                    return OK.duplicate();
+                case "go":
+                    return go(words, game);
+                case "quit":
+                    return QUIT;
+                case "":
+                    return NOTHING.duplicate();
+                default:
+                    return error("unknown command " + words[0]);
+            }
+        } catch (RuntimeException e) {
+            return error(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private static ByteBuffer position(String[] words, Game game) {
+        if (words.length < 2 || !words[1].equals("startpos")) {
+            return error("only position startpos is supported");
+        }
+        game.reset();
+        if (words.length > 2) {
+            if (!words[2].equals("moves")) return error("position startpos should be followed by moves");
+            for (int i = 3; i < words.length; i++) {
+                game.play(Move.parse(words[i]));
+            }
+        }
+        return NOTHING.duplicate();
+    }
+
+    private static ByteBuffer go(String[] words, Game game) {
+        int depth = Search.MAX_PLY;
+        long nodes = Long.MAX_VALUE;
+        long moveTime = Long.MAX_VALUE;
+        int multiPv = 0;
+        boolean depthGiven = false;
+        // Whether nodes or movetime is given, which make the result depend on the machine.
+        boolean budgetGiven = false;
+        for (int i = 1; i + 1 < words.length; i += 2) {
+            long value = Long.parseLong(words[i + 1]);
+            switch (words[i]) {
+                case "depth":
+                    if (value <= 0) return error("depth should be positive");
+                    depth = (int) Math.min(value, Search.MAX_PLY);
+                    depthGiven = true;
+                    break;
+                case "nodes":
+                    if (value <= 0) return error("nodes should be positive");
+                    nodes = value;
+                    budgetGiven = true;
+                    break;
+                case "movetime":
+                    if (value <= 0) return error("movetime should be positive");
+                    moveTime = value;
+                    budgetGiven = true;
+                    break;
+                case "multipv":
+                    if (value < 1 || value > GameState.MAX_MOVES) {
+                        return error("multipv should be from 1 to " + GameState.MAX_MOVES);
+                    }
+                    multiPv = (int) value;
+                    break;
+                default:
+                    return error("unknown limit " + words[i]);
+            }
+        }
+        // Without any limit, think for the default time.
+        if (!depthGiven && !budgetGiven) {
+            moveTime = DEFAULT_MOVE_TIME_MILLIS;
+            budgetGiven = true;
+        }
+
+        GameState state = GameState.of(game);
+        if (multiPv > 0) {
+            return analyse(state, depth, nodes, moveTime, multiPv);
+        }
+        // Only a search limited by depth alone gives the same answer each time.
+        SearchResult result = budgetGiven ? null : CACHE.get(state, depth);
+        if (result == null) {
+            // Not one search per thread, as the mailboxes may run each message on a new virtual thread.
+            Search search = SearchPool.shared().acquire();
+            try {
+                result = search.search(state, depth, nodes, moveTime);
+            } finally {
+                SearchPool.shared().release(search);
+            }
+            CACHE.put(state, result);
+        }
+        if (result.getBestMove() == SearchResult.NO_MOVE) {
+            return RESIGN.duplicate();
+        }
+        return text("bestmove " + Move.toText(result.getBestMove()) + "\n");
+    }
+
+    // Searches the best lines, writing the info of the iterations before the best move.
+    private static ByteBuffer analyse(GameState state, int depth, long nodes, long moveTime, int multiPv) {
+        Search search = SearchPool.shared().acquire();
+        InfoWriter writer = new InfoWriter();
+        search.setMultiPv(multiPv);
+        search.setListener(writer, INFO_INTERVAL_MILLIS);
+        SearchResult result;
+        try {
+            result = search.search(state, depth, nodes, moveTime);
+        } finally {
+            SearchPool.shared().release(search);
+        }
+        if (result.getBestMove() == SearchResult.NO_MOVE) {
+            return RESIGN.duplicate();
+        }
+        writer.text.append("bestmove ").append(Move.toText(result.getBestMove())).append('\n');
+        return text(writer.text.toString());
+    }
+
+    /**
+     * This class writes the info of the iterations as {@code info} lines,
+     * one per line of the search.
+     */
+    private static final class InfoWriter implements SearchListener {
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void onInfo(SearchInfo info) {
+            for (int line = 0; line < info.getLineCount(); line++) {
+                text.append("info depth ").append(info.getDepth())
+                        .append(" multipv ").append(line + 1);
+                int score = info.getScore(line);
+                if (Math.abs(score) > Evaluator.WIN - Search.MAX_PLY) {
+                    // The number of plies to the capture of a lion, negative if lost.
+                    text.append(" score mate ").append(score > 0 ? Evaluator.WIN - score : -(Evaluator.WIN + score));
+                } else {
+                    text.append(" score cp ").append(score);
+                }
+                text.append(" nodes ").append(info.getNodes())
+                        .append(" nps ").append(info.getNodesPerSecond())
+                        .append(" hashfull ").append(CACHE.getHashFull())
+                        .append(" time ").append(info.getTimeMillis())
+                        .append(" pv");
+                for (int i = 0; i < info.getLength(line); i++) {
+                    text.append(' ').append(Move.toText(info.getMove(line, i)));
+                }
+                text.append('\n');
+            }
+        }
+    }
+
+    private static ByteBuffer error(String message) {
+        return text("error " + message + "\n");
+    }
+
+    private static ByteBuffer text(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer prebuilt(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+}
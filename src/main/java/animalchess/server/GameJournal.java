@@ -0,0 +1,104 @@
+package animalchess.server;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.MoveEventRing;
+import animalchess.store.MoveLog;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class writes the moves of one hosted game to a {@code MoveLog}.
+ * <p>
+ * It reads the move events of the game, so the paths playing the game do
+ * not know about the log, and appends a snapshot every
+ * {@code SNAPSHOT_INTERVAL} moves, when events were lost, or when the game
+ * was reset or loaded, as its moves start again from another position.
+ * It is only used by the mailbox of its session, which answers the
+ * messages once {@link #whenDurable()} completes.
+ *
+ * @author Yoochul Kim
+ * @see GameSession
+ */
+class GameJournal implements MoveEventRing.Handler {
+    /**
+     * The number of moves between two snapshots of a game.
+     */
+    static final int SNAPSHOT_INTERVAL = 64;
+
+    private final long gameId;
+    private final Game game;
+    private final MoveLog log;
+    private final MoveEventRing.Reader events;
+    private final GameState state = new GameState();
+    private long lost;
+    private int snapshotMoveCount;
+    // The sequence number of the last record appended.
+    private long lastSequence;
+    // Set by a reset event; the rest of the batch is in the snapshot taken after it.
+    private boolean restarted;
+
+    /**
+     * Constructor to create {@code GameJournal}. A game which is not in the
+     * start position is logged with a snapshot first.
+     *
+     * @param gameId the id of the game in the log.
+     * @param game   the {@code Game} to log.
+     * @param log    the {@code MoveLog} to write to.
+     */
+    GameJournal(long gameId, Game game, MoveLog log) {
+        this.gameId = gameId;
+        this.game = game;
+        this.log = log;
+        this.events = game.getMoveEvents().newReader();
+        if (game.getMoveCount() != 0) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Appends the moves played since the last call.
+     */
+    void record() {
+        restarted = false;
+        events.poll(this, Integer.MAX_VALUE);
+        if (events.getLost() != lost || restarted) {
+            lost = events.getLost();
+            snapshot();
+        } else if (game.getMoveCount() - snapshotMoveCount >= SNAPSHOT_INTERVAL) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Appends the moves played since the last call and the end of the game.
+     */
+    void end() {
+        record();
+        lastSequence = log.appendEnd(gameId);
+    }
+
+    /**
+     * Returns a future completed once every record appended so far is forced to disk.
+     *
+     * @return the future from {@link MoveLog#whenDurable(long)}.
+     */
+    CompletableFuture<Void> whenDurable() {
+        return log.whenDurable(lastSequence);
+    }
+
+    @Override
+    public void onEvent(long event, long sequence, boolean endOfBatch) {
+        if (MoveEventRing.isReset(event)) {
+            restarted = true;
+        }
+        if (restarted) return;
+        lastSequence = log.append(gameId, MoveEventRing.moveCountOf(event), MoveEventRing.moveOf(event));
+    }
+
+    private void snapshot() {
+        state.copyFrom(game);
+        lastSequence = log.appendSnapshot(gameId, state);
+        snapshotMoveCount = state.getMoveCount();
+    }
+}
@@ -0,0 +1,365 @@
+package animalchess.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class implements a non-blocking TCP server speaking the
+ * {@code EngineProtocol}, one game per connection.
+ * <p>
+ * A handful of I/O threads, each with its own {@code Selector}, serve all
+ * connections. The first I/O thread also accepts the connections and hands
+ * them out in turn. The commands of a connection run in the mailbox of its
+ * {@code GameSession}, so a slow {@code go} never blocks the I/O threads,
+ * and the answers come back in the order of the commands.
+ * <p>
+ * Each connection reads into a direct buffer from the pool of its I/O
+ * thread, and the answers are written with gathering writes.
+ *
+ * @author Yoochul Kim
+ * @see EngineProtocol
+ * @see GameSessionManager
+ */
+public class GameServer implements AutoCloseable {
+    /**
+     * The size of the read buffer of a connection, the longest command line.
+     */
+    public static final int READ_BUFFER_SIZE = 4096;
+
+    // The max number of answers written by one gathering write.
+    private static final int MAX_GATHER = 16;
+    // The max number of free read buffers kept by each I/O thread.
+    private static final int BUFFER_POOL_CAPACITY = 256;
+
+    private static final ByteBuffer LINE_TOO_LONG =
+            ByteBuffer.wrap("error line too long\n".getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+
+    private final GameSessionManager manager;
+    private final ServerSocketChannel serverChannel;
+    private final IoLoop[] loops;
+    private int nextLoop;
+
+    /**
+     * Constructor to create {@code GameServer} and start listening.
+     *
+     * @param address   the address to listen to, port 0 for any free port.
+     * @param ioThreads the number of I/O threads.
+     * @param manager   the {@code GameSessionManager} hosting the games.
+     * @throws IOException if the server cannot listen to the address.
+     */
+    public GameServer(InetSocketAddress address, int ioThreads, GameSessionManager manager) throws IOException {
+        if (ioThreads <= 0) {
+            throw new IllegalArgumentException("a server needs at least one I/O thread");
+        }
+        this.manager = manager;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+
+        loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new IoLoop("game-server-io-" + i);
+        }
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        for (IoLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Get the port this server listens to.
+     *
+     * @return the local port.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops listening, closes every connection and waits for the I/O threads to stop.
+     *
+     * @throws IOException if the server channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        for (IoLoop loop : loops) {
+            loop.shutdown();
+        }
+        // The connections are closed by their I/O threads on the way out.
+        for (IoLoop loop : loops) {
+            try {
+                loop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            IoLoop loop = loops[nextLoop];
+            nextLoop = (nextLoop + 1) % loops.length;
+            loop.register(channel);
+        }
+    }
+
+    /**
+     * One I/O thread with its selector, its buffers and its connections.
+     */
+    private final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final BufferPool bufferPool = new BufferPool(READ_BUFFER_SIZE, BUFFER_POOL_CAPACITY);
+        private final ConcurrentLinkedQueue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        IoLoop(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        void register(SocketChannel channel) {
+            accepted.offer(channel);
+            selector.wakeup();
+        }
+
+        void requestWrite(Connection connection) {
+            pendingWrites.offer(connection);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerAccepted();
+                    flushPendingWrites();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                // The selector is broken, nothing can be served anymore.
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // Closing anyway.
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid()) return;
+            if (key.isAcceptable()) {
+                try {
+                    accept();
+                } catch (IOException e) {
+                    // The connection was reset before being accepted.
+                }
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isReadable()) connection.read();
+                if (key.isValid() && key.isWritable()) connection.flush();
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+
+        private void registerAccepted() {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                try {
+                    Connection connection = new Connection(this, channel, manager.open());
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void flushPendingWrites() {
+            Connection connection;
+            while ((connection = pendingWrites.poll()) != null) {
+                try {
+                    connection.flush();
+                } catch (IOException e) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * One client connection, read and written by its I/O thread only.
+     */
+    private final class Connection {
+        private final IoLoop loop;
+        private final SocketChannel channel;
+        private final GameSession session;
+        private final ByteBuffer readBuffer;
+        private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writeRequested = new AtomicBoolean();
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+        private SelectionKey key;
+        private volatile boolean closeAfterFlush;
+        private boolean closed;
+        // Cleared once a line is too long, as nothing read afterwards would be answered.
+        private boolean reading = true;
+
+        Connection(IoLoop loop, SocketChannel channel, GameSession session) {
+            this.loop = loop;
+            this.channel = channel;
+            this.session = session;
+            this.readBuffer = loop.bufferPool.acquire();
+        }
+
+        void read() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            int lineStart = readBuffer.position();
+            for (int i = lineStart; i < readBuffer.limit(); i++) {
+                if (readBuffer.get(i) == '\n') {
+                    dispatch(lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            readBuffer.position(lineStart);
+            readBuffer.compact();
+            if (!readBuffer.hasRemaining()) {
+                // A full buffer without a line break cannot be a command. The error
+                // goes through the mailbox, after the answers to the commands before it.
+                reading = false;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                session.ask(game -> LINE_TOO_LONG.duplicate()).whenComplete((answer, failure) -> {
+                    if (failure == null) {
+                        outbound.offer(answer);
+                    }
+                    closeAfterFlush = true;
+                    requestWrite();
+                });
+            }
+        }
+
+        private void dispatch(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = readBuffer.get(start + i);
+            }
+            String line = new String(bytes, StandardCharsets.US_ASCII);
+            // The answers of a session complete in the order of the commands,
+            // once the moves they played are logged.
+            session.ask(game -> EngineProtocol.handle(line, game)).whenComplete((answer, failure) -> {
+                if (failure != null || answer == EngineProtocol.QUIT) {
+                    // The session is closed or cannot log its moves anymore.
+                    closeAfterFlush = true;
+                    requestWrite();
+                } else if (answer.hasRemaining()) {
+                    send(answer);
+                }
+            });
+        }
+
+        void send(ByteBuffer answer) {
+            outbound.offer(answer);
+            requestWrite();
+        }
+
+        private void requestWrite() {
+            if (writeRequested.compareAndSet(false, true)) {
+                loop.requestWrite(this);
+            }
+        }
+
+        void flush() throws IOException {
+            if (closed) return;
+            writeRequested.set(false);
+            while (true) {
+                int count = 0;
+                for (ByteBuffer buffer : outbound) {
+                    if (count == MAX_GATHER) break;
+                    gather[count++] = buffer;
+                }
+                if (count == 0) break;
+
+                channel.write(gather, 0, count);
+                int written = 0;
+                while (written < count && !gather[written].hasRemaining()) {
+                    outbound.poll();
+                    written++;
+                }
+                clearGather(count);
+                if (written < count) {
+                    // The socket is full, wait until it can be written again.
+                    key.interestOps((reading ? SelectionKey.OP_READ : 0) | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(reading ? SelectionKey.OP_READ : 0);
+            if (closeAfterFlush) {
+                close();
+            }
+        }
+
+        private void clearGather(int count) {
+            for (int i = 0; i < count; i++) {
+                gather[i] = null;
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            if (key != null) key.cancel();
+            closeQuietly(channel);
+            loop.bufferPool.release(readBuffer);
+            manager.close(session.getId());
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Closing anyway.
+        }
+    }
+}
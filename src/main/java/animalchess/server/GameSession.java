@@ -0,0 +1,317 @@
+package animalchess.server;
+
+import animalchess.Game;
+import animalchess.GameSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This class implements one hosted game with its own mailbox.
+ * <p>
+ * Every access to the {@code Game} is a message in the mailbox, and the
+ * messages are run one at a time on a shared pool of threads. So a game is
+ * only ever used by one thread at a time without any lock, and the games of
+ * a process are spread over all cores. Readers which only need the position
+ * use {@link #getSnapshot()} instead, without going through the mailbox.
+ * <p>
+ * With a {@code GameJournal}, the moves of a batch of messages are appended
+ * to the log after the batch, and the messages are only answered once the
+ * log has forced them to disk, so an answer is never lost by a crash. The
+ * answers keep the order of the messages, and the group commit of the log
+ * still forces the batches of many sessions with one {@code fsync}.
+ * <p>
+ * Once the pool of threads is shut down, the messages sent to the session
+ * are run by the thread sending them and fail, except {@code close}, which
+ * still ends the game. If the journal of the session fails, the failure is
+ * reported once and the later messages fail with it, since their moves
+ * could not be logged.
+ *
+ * @author Yoochul Kim
+ * @see GameSessionManager
+ */
+public class GameSession {
+    // The max number of messages run before letting other sessions use the thread.
+    private static final int MAX_BATCH = 64;
+
+    private final long id;
+    private final Game game;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drainTask = this::drain;
+    private final GameJournal journal;
+    private final Executor answerExecutor = this::executeAnswers;
+    // The answers to the messages of the batch, given once its moves are durable.
+    private final List<Consumer<Throwable>> answers = new ArrayList<>();
+    // Completed once the answers of the previous batches are given, so they keep their order.
+    private CompletableFuture<Void> answered = CompletableFuture.completedFuture(null);
+
+    private volatile long lastActive;
+    // Only changed by the messages, so it is always seen in order.
+    private boolean closed;
+    // The first failure of the journal, only used by the messages as closed.
+    private RuntimeException journalFailure;
+    // Set once the executor rejected the mailbox, which is then drained by the senders.
+    private volatile boolean rejected;
+
+    /**
+     * Constructor to create {@code GameSession} with given id, {@code Game}
+     * and the {@code Executor} running the messages.
+     *
+     * @param id       the id of this session.
+     * @param game     the {@code Game} hosted by this session.
+     * @param executor the {@code Executor} shared by the sessions.
+     */
+    GameSession(long id, Game game, Executor executor) {
+        this(id, game, executor, null);
+    }
+
+    /**
+     * Constructor to create {@code GameSession} whose moves are written by
+     * a {@code GameJournal} after each batch of messages.
+     *
+     * @param id       the id of this session.
+     * @param game     the {@code Game} hosted by this session.
+     * @param executor the {@code Executor} shared by the sessions.
+     * @param journal  the {@code GameJournal} of the game, or null.
+     */
+    GameSession(long id, Game game, Executor executor, GameJournal journal) {
+        this.id = id;
+        this.game = game;
+        this.executor = executor;
+        this.journal = journal;
+        this.lastActive = System.nanoTime();
+    }
+
+    /**
+     * Runs the task on the game, after the messages already in the mailbox.
+     * With a journal, the future is only completed once the moves played so
+     * far are forced to disk.
+     *
+     * @param task the task reading or playing the game.
+     * @param <T>  the type of the result of the task.
+     * @return the future of the result of the task. It fails with
+     * {@code IllegalStateException} if the session is closed before the task
+     * runs, or if the moves of the session cannot be logged.
+     */
+    public <T> CompletableFuture<T> ask(Function<Game, T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        send(() -> {
+            T value = null;
+            RuntimeException error = null;
+            if (closed || rejected) {
+                error = new IllegalStateException("the session is closed");
+            } else if (journalFailure != null) {
+                error = notLogged(journalFailure);
+            } else {
+                try {
+                    value = task.apply(game);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+            }
+            T result = value;
+            RuntimeException exception = error;
+            answers.add(failure -> {
+                if (exception != null) {
+                    future.completeExceptionally(exception);
+                } else if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(result);
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * Plays a batch of moves encoded by {@code Move}, in one message.
+     * The moves are played in order, alternating the sides, until the
+     * first move which is illegal or comes after the end of the game.
+     *
+     * @param moves  the array of the encoded moves.
+     * @param offset the index of the first move to play.
+     * @param length the number of moves to play.
+     * @return the future of the number of moves played.
+     */
+    public CompletableFuture<Integer> submitMoves(int[] moves, int offset, int length) {
+        return ask(game -> {
+            int played = 0;
+            for (int i = offset; i < offset + length; i++) {
+                if (game.getWinner() != null) break;
+                try {
+                    game.play(moves[i]);
+                } catch (IllegalArgumentException e) {
+                    break;
+                }
+                played++;
+            }
+            return played;
+        });
+    }
+
+    /**
+     * Get the position after the last move, without going through the mailbox.
+     *
+     * @return the last {@code GameSnapshot} published by the game.
+     */
+    public GameSnapshot getSnapshot() {
+        return game.getSnapshot();
+    }
+
+    /**
+     * Get the id of this session.
+     *
+     * @return the id of this session.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Get the time the last message was sent to this session.
+     *
+     * @return the time from {@code System.nanoTime()}.
+     */
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * Returns whether messages are waiting or running in the mailbox.
+     *
+     * @return true if this session is busy.
+     */
+    boolean isBusy() {
+        return scheduled.get() || !mailbox.isEmpty();
+    }
+
+    /**
+     * Closes this session after the messages already in the mailbox.
+     * The messages sent afterwards fail.
+     *
+     * @param onClosed called with the game once the session is closed.
+     */
+    void close(Consumer<Game> onClosed) {
+        send(() -> {
+            if (!closed) {
+                closed = true;
+                try {
+                    if (journal != null && journalFailure == null) {
+                        journal.end();
+                    }
+                } catch (RuntimeException e) {
+                    journalFailed(e);
+                } finally {
+                    // The game is given back even if its end could not be logged.
+                    onClosed.accept(game);
+                }
+            }
+        });
+    }
+
+    private void send(Runnable message) {
+        lastActive = System.nanoTime();
+        mailbox.offer(message);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        if (!rejected) {
+            try {
+                executor.execute(drainTask);
+                return;
+            } catch (RejectedExecutionException e) {
+                rejected = true;
+            }
+        }
+        // The pool is shut down, so the messages are run here.
+        drain();
+    }
+
+    private void drain() {
+        Runnable message;
+        int count = 0;
+        try {
+            while (count < MAX_BATCH && (message = mailbox.poll()) != null) {
+                message.run();
+                count++;
+            }
+            if (journal != null && !closed && journalFailure == null) {
+                try {
+                    journal.record();
+                } catch (RuntimeException e) {
+                    journalFailed(e);
+                }
+            }
+        } finally {
+            answerBatch();
+            // Cleared even if a message failed, or the mailbox would never run again.
+            scheduled.set(false);
+            // Messages sent while draining, or left over after the batch.
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    // Gives the answers of the batch once its moves are durable, after the previous batches.
+    private void answerBatch() {
+        if (answers.isEmpty()) return;
+        List<Consumer<Throwable>> batch = new ArrayList<>(answers);
+        answers.clear();
+        if (journal == null) {
+            for (Consumer<Throwable> answer : batch) {
+                answer.accept(null);
+            }
+            return;
+        }
+        CompletableFuture<Void> durable;
+        if (journalFailure == null) {
+            durable = journal.whenDurable();
+        } else {
+            durable = new CompletableFuture<>();
+            durable.completeExceptionally(journalFailure);
+        }
+        answered = answered.thenCompose(previous -> durable).handleAsync((nothing, e) -> {
+            Throwable failure = null;
+            if (e != null) {
+                failure = notLogged(e instanceof CompletionException ? e.getCause() : e);
+            }
+            for (Consumer<Throwable> answer : batch) {
+                answer.accept(failure);
+            }
+            return null;
+        }, answerExecutor);
+    }
+
+    // The answers are given on the pool, not on the writer thread of the log, or here once the pool is shut down.
+    private void executeAnswers(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private static IllegalStateException notLogged(Throwable cause) {
+        return new IllegalStateException("the moves of the session cannot be logged", cause);
+    }
+
+    // The journal is not used after its first failure, so it is only reported once.
+    private void journalFailed(RuntimeException e) {
+        journalFailure = e;
+        System.err.println("The moves of game session " + id + " cannot be logged anymore: " + e.getMessage());
+    }
+}
@@ -0,0 +1,249 @@
+package animalchess.server;
+
+import animalchess.Game;
+import animalchess.GamePool;
+import animalchess.GameState;
+import animalchess.Player;
+import animalchess.store.MoveLog;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements the manager of the games hosted in one process.
+ * <p>
+ * Each game lives in a {@code GameSession} with its own mailbox, and all
+ * mailboxes share one pool of threads: virtual threads where the JVM has
+ * them, otherwise a work-stealing pool with one thread per core. Sessions
+ * are kept in a concurrent map, so there is no global lock and contention
+ * only grows with the number of active games.
+ * <p>
+ * Sessions without any message for longer than the idle timeout are
+ * evicted, and their games are given back to a {@code GamePool}.
+ * <p>
+ * With a {@code MoveLog}, the moves of every session are written to the
+ * log, and the games recovered from it after a crash are hosted again
+ * with {@link #restore(Map)}.
+ *
+ * @author Yoochul Kim
+ * @see GameSession
+ */
+public class GameSessionManager implements AutoCloseable {
+    // The number of released games kept to be reused.
+    private static final int POOL_CAPACITY = 1024;
+    // The max time to wait for the messages already sent when closing.
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService sweeper;
+    private final long idleTimeoutNanos;
+    private final ConcurrentHashMap<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final GamePool gamePool = new GamePool(POOL_CAPACITY);
+    private final MoveLog log;
+
+    /**
+     * Constructor to create {@code GameSessionManager} on the default pool of threads.
+     *
+     * @param idleTimeoutMillis the time after which an idle session is evicted.
+     */
+    public GameSessionManager(long idleTimeoutMillis) {
+        this(defaultExecutor(), idleTimeoutMillis);
+    }
+
+    /**
+     * Constructor to create {@code GameSessionManager} on the given pool of threads.
+     *
+     * @param executor          the {@code ExecutorService} running the mailboxes.
+     * @param idleTimeoutMillis the time after which an idle session is evicted.
+     */
+    public GameSessionManager(ExecutorService executor, long idleTimeoutMillis) {
+        this(executor, idleTimeoutMillis, null);
+    }
+
+    /**
+     * Constructor to create {@code GameSessionManager} on the given pool of
+     * threads, writing the moves of the sessions to the {@code MoveLog}.
+     *
+     * @param executor          the {@code ExecutorService} running the mailboxes.
+     * @param idleTimeoutMillis the time after which an idle session is evicted.
+     * @param log               the {@code MoveLog} of the moves, or null.
+     */
+    public GameSessionManager(ExecutorService executor, long idleTimeoutMillis, MoveLog log) {
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("the idle timeout should be positive");
+        }
+        this.executor = executor;
+        this.log = log;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeoutMillis / 2);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a session with a game in the start position for the two given players.
+     *
+     * @param p0 the first player of the game
+     * @param p1 the second player of the game
+     * @return the new {@code GameSession}
+     */
+    public GameSession open(Player p0, Player p1) {
+        return register(gamePool.acquire(p0, p1));
+    }
+
+    /**
+     * Opens a session with a game in the start position.
+     *
+     * @return the new {@code GameSession}
+     */
+    public GameSession open() {
+        return register(gamePool.acquire());
+    }
+
+    /**
+     * Opens sessions with the ids and positions of games recovered by
+     * {@link MoveLog#recover(java.nio.file.Path)}. New sessions get ids above them.
+     *
+     * @param games the positions of the games, by id
+     * @return the number of sessions opened
+     * @throws IllegalArgumentException if a session with one of the ids is open
+     */
+    public int restore(Map<Long, GameState> games) {
+        for (Map.Entry<Long, GameState> entry : games.entrySet()) {
+            long id = entry.getKey();
+            if (sessions.containsKey(id)) {
+                throw new IllegalArgumentException("a session with the id " + id + " is open");
+            }
+            Game game = gamePool.acquire();
+            entry.getValue().copyTo(game);
+            nextId.accumulateAndGet(id, Math::max);
+            register(id, game);
+        }
+        return games.size();
+    }
+
+    /**
+     * Get the session with the id.
+     *
+     * @param id the id of the session
+     * @return the {@code GameSession}, or null if it is closed or evicted
+     */
+    public GameSession get(long id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Plays a batch of moves encoded by {@code Move} in the session with the id.
+     *
+     * @param id    the id of the session
+     * @param moves the encoded moves
+     * @return the future of the number of moves played, failed with
+     * {@code IllegalArgumentException} if there is no session with the id
+     * @see GameSession#submitMoves(int[], int, int)
+     */
+    public CompletableFuture<Integer> submitMoves(long id, int... moves) {
+        GameSession session = sessions.get(id);
+        if (session == null) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("a session with the passed id does not exist"));
+            return future;
+        }
+        return session.submitMoves(moves, 0, moves.length);
+    }
+
+    /**
+     * Closes the session with the id, after the messages already in its mailbox.
+     *
+     * @param id the id of the session
+     * @return true if there was a session with the id
+     */
+    public boolean close(long id) {
+        GameSession session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        session.close(gamePool::release);
+        return true;
+    }
+
+    /**
+     * Closes every session which has had no message for longer than the idle timeout.
+     * It is called regularly by this manager.
+     *
+     * @return the number of sessions evicted
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (GameSession session : sessions.values()) {
+            if (now - session.getLastActive() > idleTimeoutNanos && !session.isBusy()
+                    && sessions.remove(session.getId(), session)) {
+                session.close(gamePool::release);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Get the number of open sessions.
+     *
+     * @return the number of open sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops evicting sessions, shuts the pool of threads down and waits for
+     * the messages already sent to run, so that the {@code MoveLog} can be
+     * closed after this manager.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private GameSession register(Game game) {
+        return register(nextId.incrementAndGet(), game);
+    }
+
+    private GameSession register(long id, Game game) {
+        GameJournal journal = log == null ? null : new GameJournal(id, game, log);
+        GameSession session = new GameSession(id, game, executor, journal);
+        sessions.put(id, session);
+        return session;
+    }
+
+    /**
+     * Creates the pool of threads for the mailboxes: virtual threads
+     * where the JVM has them, otherwise a work-stealing pool.
+     *
+     * @return the {@code ExecutorService} for the mailboxes
+     */
+    static ExecutorService defaultExecutor() {
+        try {
+            // Looked up by name, since the project is compiled for Java 8.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newWorkStealingPool();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package animalchess.server;
+
+/**
+ * This class implements a histogram of latencies in the style of
+ * HdrHistogram: log-linear buckets which keep about two significant
+ * digits of every value, from one nanosecond up to centuries, in a
+ * fixed array of counters.
+ * <p>
+ * Recording never allocates. A histogram is recorded by one thread;
+ * the histograms of several threads are added up with {@link #add}.
+ *
+ * @author Yoochul Kim
+ * @see LoadGenerator
+ */
+public class LatencyHistogram {
+    // Each power of two is split into this many linear buckets.
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_NUMBER = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+
+    private final long[] counts = new long[BUCKET_NUMBER];
+    private long totalCount;
+    private long max;
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        totalCount++;
+        if (value > max) max = value;
+    }
+
+    /**
+     * Adds the latencies recorded by another histogram to this one.
+     *
+     * @param other the {@code LatencyHistogram} to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_NUMBER; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Get the latency below which the {@code percentile} of the latencies are.
+     *
+     * @param percentile the percentile, e.g. 99.9.
+     * @return the latency in nanoseconds, within about 1%, or 0 if nothing is recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_NUMBER; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Get the number of latencies recorded.
+     *
+     * @return the number of latencies.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Get the highest latency recorded.
+     *
+     * @return the highest latency in nanoseconds.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,311 @@
+package animalchess.server;
+
+import animalchess.GameState;
+import animalchess.Move;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a load generator for the {@code GameServer}, to size
+ * the hardware it needs.
+ * <p>
+ * Each simulated client opens one connection and plays whole games on it,
+ * both sides in turn, choosing random legal moves or asking the engine with
+ * {@code go}. Every {@code move} command goes through {@code Game.play} and
+ * {@code Piece.move} on the server, as in production. The round trip of each
+ * {@code move} is recorded in a {@code LatencyHistogram}.
+ * <p>
+ * Run from the command line, it starts a server in the same JVM unless an
+ * address is given:
+ * <pre>
+ * java animalchess.server.LoadGenerator [--clients N] [--games N] [--engine DEPTH]
+ *                                       [--io-threads N] [--host HOST --port PORT]
+ * </pre>
+ *
+ * @author Yoochul Kim
+ * @see LatencyHistogram
+ */
+public class LoadGenerator {
+    /**
+     * The max number of plies of a simulated game, random games can be long.
+     */
+    public static final int MAX_PLY = 300;
+
+    private final InetSocketAddress address;
+    private final int clients;
+    private final int gamesPerClient;
+    private final int engineDepth;
+    private final long seed;
+
+    /**
+     * Constructor to create {@code LoadGenerator}.
+     *
+     * @param address        the address of the server.
+     * @param clients        the number of concurrent clients.
+     * @param gamesPerClient the number of games each client plays.
+     * @param engineDepth    the depth of {@code go} for the moves, or 0 for random moves.
+     * @param seed           the seed of the random moves.
+     */
+    public LoadGenerator(InetSocketAddress address, int clients, int gamesPerClient, int engineDepth, long seed) {
+        this.address = address;
+        this.clients = clients;
+        this.gamesPerClient = gamesPerClient;
+        this.engineDepth = engineDepth;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs the clients until every one has played its games.
+     *
+     * @return the {@code Report} of the run.
+     * @throws IOException if a client fails to talk to the server.
+     * @throws InterruptedException if interrupted while waiting for the clients.
+     */
+    public Report run() throws IOException, InterruptedException {
+        LatencyHistogram[] histograms = new LatencyHistogram[clients];
+        Thread[] threads = new Thread[clients];
+        AtomicLong games = new AtomicLong();
+        IOException[] failure = new IOException[1];
+
+        AtomicLong clientAllocated = new AtomicLong();
+        Map<Long, Long> allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histograms[i] = histogram;
+            long clientSeed = seed + i;
+            threads[i] = new Thread(() -> {
+                long allocated = currentThreadAllocatedBytes();
+                try {
+                    games.addAndGet(playGames(histogram, new Random(clientSeed)));
+                } catch (IOException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                } finally {
+                    // Read before the thread exits, as a dead thread cannot be asked.
+                    clientAllocated.addAndGet(currentThreadAllocatedBytes() - allocated);
+                }
+            }, "load-client-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = clientAllocated.get();
+        for (Map.Entry<Long, Long> entry : allocatedBytes().entrySet()) {
+            Long before = allocatedBefore.get(entry.getKey());
+            allocated += entry.getValue() - (before == null ? 0 : before);
+        }
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        LatencyHistogram total = new LatencyHistogram();
+        for (LatencyHistogram histogram : histograms) {
+            total.add(histogram);
+        }
+        return new Report(games.get(), total, elapsed, allocated);
+    }
+
+    private int playGames(LatencyHistogram histogram, Random random) throws IOException {
+        int[] moves = new int[GameState.MAX_MOVES];
+        GameState state = new GameState();
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+            for (int game = 0; game < gamesPerClient; game++) {
+                state.setStart();
+                command(out, in, "usinewgame\nisready", "readyok");
+                for (int ply = 0; ply < MAX_PLY && state.getWinner() == null; ply++) {
+                    int move;
+                    if (engineDepth > 0) {
+                        String answer = command(out, in, "go depth " + engineDepth, "bestmove ");
+                        String text = answer.substring("bestmove ".length());
+                        if (text.equals("resign")) break;
+                        move = Move.parse(text);
+                    } else {
+                        int count = state.generateMoves(moves);
+                        if (count == 0) break;
+                        move = moves[random.nextInt(count)];
+                    }
+
+                    long sent = System.nanoTime();
+                    command(out, in, "move " + Move.toText(move), "ok");
+                    histogram.record(System.nanoTime() - sent);
+                    state.play(move);
+                }
+            }
+            out.write("quit\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+        return gamesPerClient;
+    }
+
+    private static String command(OutputStream out, BufferedReader in, String command, String expected) throws IOException {
+        out.write((command + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        String answer = in.readLine();
+        if (answer == null || !answer.startsWith(expected)) {
+            throw new IOException("unexpected answer to " + command + ": " + answer);
+        }
+        return answer;
+    }
+
+    // The bytes allocated so far by each live platform thread, by id, where the JVM can tell.
+    private static Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> allocated = new HashMap<>();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return allocated;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] > 0) allocated.put(ids[i], bytes[i]);
+        }
+        return allocated;
+    }
+
+    // The bytes allocated so far by the current thread, 0 if the JVM cannot tell.
+    private static long currentThreadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        return Math.max(0, ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId()));
+    }
+
+    /**
+     * This class holds the result of a run.
+     */
+    public static final class Report {
+        private final long games;
+        private final LatencyHistogram latencies;
+        private final long elapsedNanos;
+        private final long allocatedBytes;
+
+        Report(long games, LatencyHistogram latencies, long elapsedNanos, long allocatedBytes) {
+            this.games = games;
+            this.latencies = latencies;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * Get the number of games played.
+         *
+         * @return the number of games.
+         */
+        public long getGames() {
+            return games;
+        }
+
+        /**
+         * Get the latencies of the {@code move} commands.
+         *
+         * @return the {@code LatencyHistogram} of all clients.
+         */
+        public LatencyHistogram getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * Get the number of moves played per second.
+         *
+         * @return the throughput in moves per second.
+         */
+        public double getMovesPerSecond() {
+            return latencies.getTotalCount() * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        /**
+         * Get the number of bytes allocated per second by the clients and by the
+         * platform threads of this JVM live at the end of the run, including the
+         * server if it runs in the same JVM. The virtual threads of the sessions
+         * are not counted. It is 0 if the JVM cannot tell.
+         *
+         * @return the allocation rate in bytes per second.
+         */
+        public double getAllocatedBytesPerSecond() {
+            return allocatedBytes * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("games %d, moves %d in %.2f s%n"
+                            + "throughput %.0f moves/s%n"
+                            + "move latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n"
+                            + "allocation %.1f MB/s%n",
+                    games, latencies.getTotalCount(), elapsedNanos / 1e9,
+                    getMovesPerSecond(),
+                    latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                    latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMax() / 1e3,
+                    getAllocatedBytesPerSecond() / 1e6);
+        }
+    }
+
+    /**
+     * Runs the load generator from the command line and prints the report.
+     *
+     * @param args the options, see the class comment.
+     * @throws Exception if the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = 100;
+        int games = 10;
+        int engineDepth = 0;
+        int ioThreads = 2;
+        String host = null;
+        int port = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--clients":
+                    clients = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--games":
+                    games = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--engine":
+                    engineDepth = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--io-threads":
+                    ioThreads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--host":
+                    host = args[i + 1];
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        if (host != null) {
+            System.out.print(new LoadGenerator(new InetSocketAddress(host, port), clients, games, engineDepth, 1).run());
+            return;
+        }
+        try (GameSessionManager manager = new GameSessionManager(60_000);
+             GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0), ioThreads, manager)) {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+            System.out.print(new LoadGenerator(address, clients, games, engineDepth, 1).run());
+        }
+    }
+}
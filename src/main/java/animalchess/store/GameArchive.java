@@ -0,0 +1,358 @@
+package animalchess.store;
+
+import animalchess.Game;
+import animalchess.Move;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements an append-only archive of finished games.
+ * <p>
+ * The archive is two files in a directory. The data file holds each game
+ * as a 3-byte header, the number of moves and the winner, followed by the
+ * moves packed in 12 bits each, two moves in three bytes. The index file
+ * holds the offset of each game in the data file as 8 bytes, so game N is
+ * found at {@code 8 * N} in the index.
+ * <p>
+ * There is one appender, this class, and any number of {@code Reader}s,
+ * in this process or others. A game is written to the data file before its
+ * offset is written to the index, and readers only see the games in the
+ * index, so appending is safe while readers are active. Readers map both
+ * files into memory and read the moves straight from the mapped pages,
+ * without building a {@code Game}.
+ *
+ * @author Yoochul Kim
+ * @see Reader
+ */
+public class GameArchive implements AutoCloseable {
+    /**
+     * The name of the data file in the directory of an archive.
+     */
+    public static final String DATA_FILE = "games.dat";
+    /**
+     * The name of the index file in the directory of an archive.
+     */
+    public static final String INDEX_FILE = "games.idx";
+    /**
+     * The max number of moves of an archived game.
+     */
+    public static final int MAX_MOVES = 0xFFFF;
+
+    private static final int HEADER = 3;
+    private static final int OFFSET_BYTES = Long.BYTES;
+    private static final int MAX_RECORD = HEADER + packedLength(MAX_MOVES);
+    // The size of a mapped segment; a segment also maps the record starting at its end.
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private static final int NO_WINNER = 0;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD);
+    private final ByteBuffer offset = ByteBuffer.allocate(OFFSET_BYTES);
+    private long dataSize;
+    private long size;
+
+    /**
+     * Constructor to create {@code GameArchive} appending to the archive in the
+     * directory, which is created if it does not exist. Games left half written
+     * by a crash are cut off.
+     *
+     * @param directory the directory of the archive.
+     * @throws IOException if the files cannot be opened.
+     */
+    public GameArchive(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        data = FileChannel.open(directory.resolve(DATA_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // Drop the offsets of games which are not all in the data file.
+        size = index.size() / OFFSET_BYTES;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        dataSize = 0;
+        while (size > 0) {
+            offset.clear();
+            index.read(offset, (size - 1) * OFFSET_BYTES);
+            long last = offset.getLong(0);
+            header.clear();
+            if (data.read(header, last) == HEADER) {
+                long end = last + HEADER + packedLength(header.getShort(0) & 0xFFFF);
+                if (end <= data.size()) {
+                    dataSize = end;
+                    break;
+                }
+            }
+            size--;
+        }
+        index.truncate(size * OFFSET_BYTES);
+        data.truncate(dataSize);
+    }
+
+    /**
+     * Appends a finished game.
+     *
+     * @param moves  the moves encoded by {@code Move}; only the moves themselves are kept.
+     * @param count  the number of moves.
+     * @param winner the side which has won, or null.
+     * @return the number of the game in the archive.
+     * @throws IllegalArgumentException if there are more than {@code MAX_MOVES} moves.
+     * @throws IOException if the game cannot be written.
+     */
+    public long append(int[] moves, int count, Game.Side winner) throws IOException {
+        return append(moves, 0, count, winner);
+    }
+
+    /**
+     * Appends a finished game whose moves are a part of an array.
+     *
+     * @param moves  the moves encoded by {@code Move}; only the moves themselves are kept.
+     * @param from   the index of the first move in the array.
+     * @param count  the number of moves.
+     * @param winner the side which has won, or null.
+     * @return the number of the game in the archive.
+     * @throws IllegalArgumentException if there are more than {@code MAX_MOVES} moves.
+     * @throws IOException if the game cannot be written.
+     */
+    public synchronized long append(int[] moves, int from, int count, Game.Side winner) throws IOException {
+        if (count < 0 || count > MAX_MOVES) {
+            throw new IllegalArgumentException("a game should have at most " + MAX_MOVES + " moves");
+        }
+        record.clear();
+        record.putShort((short) count).put((byte) (winner == null ? NO_WINNER : winner.ordinal() + 1));
+        for (int i = from; i + 1 < from + count; i += 2) {
+            int first = moves[i] & Move.MOVE_MASK;
+            int second = moves[i + 1] & Move.MOVE_MASK;
+            record.put((byte) first).put((byte) (first >>> 8 | second << 4)).put((byte) (second >>> 4));
+        }
+        if ((count & 1) != 0) {
+            int last = moves[from + count - 1] & Move.MOVE_MASK;
+            record.put((byte) last).put((byte) (last >>> 8));
+        }
+        record.flip();
+        writeFully(data, record, dataSize);
+
+        // Published to the readers once the game is written.
+        offset.clear();
+        offset.putLong(0, dataSize);
+        writeFully(index, offset, size * OFFSET_BYTES);
+        dataSize += HEADER + packedLength(count);
+        return size++;
+    }
+
+    /**
+     * Get the number of games in the archive.
+     *
+     * @return the number of games.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Forces the games appended so far to disk.
+     *
+     * @throws IOException if the files cannot be forced.
+     */
+    public synchronized void force() throws IOException {
+        data.force(false);
+        index.force(false);
+    }
+
+    /**
+     * Forces the games appended so far to disk and closes the archive.
+     *
+     * @throws IOException if the files cannot be forced.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        data.close();
+        index.close();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static int packedLength(int count) {
+        return (count * 3 + 1) / 2;
+    }
+
+    /**
+     * This class implements a reader of an archive, mapping its files into memory.
+     * A reader sees the games appended before it was opened or last refreshed.
+     * Its getters can be called by many threads at once, but not while it is refreshed.
+     */
+    public static final class Reader implements AutoCloseable {
+        private final FileChannel data;
+        private final FileChannel index;
+        private final List<ByteBuffer> dataSegments = new ArrayList<>();
+        private final List<ByteBuffer> indexSegments = new ArrayList<>();
+        private long size;
+
+        /**
+         * Constructor to create {@code Reader} of the archive in the directory.
+         *
+         * @param directory the directory of the archive.
+         * @throws IOException if the files cannot be opened.
+         */
+        public Reader(Path directory) throws IOException {
+            data = FileChannel.open(directory.resolve(DATA_FILE), StandardOpenOption.READ);
+            index = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.READ);
+            refresh();
+        }
+
+        /**
+         * Maps the games appended since the reader was opened or last refreshed.
+         *
+         * @return the number of games visible.
+         * @throws IOException if the files cannot be mapped.
+         */
+        public long refresh() throws IOException {
+            // The index first, so the data of every game in it is there.
+            long indexSize = index.size() / OFFSET_BYTES * OFFSET_BYTES;
+            long dataSize = data.size();
+            remap(index, indexSegments, indexSize, 0);
+            remap(data, dataSegments, dataSize, MAX_RECORD);
+            size = indexSize / OFFSET_BYTES;
+            return size;
+        }
+
+        private static void remap(FileChannel channel, List<ByteBuffer> segments, long fileSize, int overlap) throws IOException {
+            // Only the last segment may have grown.
+            int first = Math.max(0, segments.size() - 1);
+            segments.subList(first, segments.size()).clear();
+            long start = first * SEGMENT_SIZE;
+            do {
+                long length = Math.max(0, Math.min(SEGMENT_SIZE + overlap, fileSize - start));
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+                start += SEGMENT_SIZE;
+            } while (start < fileSize);
+        }
+
+        /**
+         * Get the number of games visible to this reader.
+         *
+         * @return the number of games.
+         */
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Get the number of moves of a game.
+         *
+         * @param game the number of the game.
+         * @return the number of moves.
+         */
+        public int getMoveCount(long game) {
+            long offset = offsetOf(game);
+            return segmentOf(offset).getShort(positionOf(offset)) & 0xFFFF;
+        }
+
+        /**
+         * Get the winner of a game.
+         *
+         * @param game the number of the game.
+         * @return the side which has won, or null.
+         */
+        public Game.Side getWinner(long game) {
+            long offset = offsetOf(game);
+            int winner = segmentOf(offset).get(positionOf(offset) + 2);
+            return winner == NO_WINNER ? null : Game.Side.values()[winner - 1];
+        }
+
+        /**
+         * Get one move of a game.
+         *
+         * @param game the number of the game.
+         * @param ply  the index of the move in the game.
+         * @return the move encoded by {@code Move}, without details.
+         */
+        public int getMove(long game, int ply) {
+            long offset = offsetOf(game);
+            ByteBuffer segment = segmentOf(offset);
+            int position = positionOf(offset);
+            if (ply < 0 || ply >= (segment.getShort(position) & 0xFFFF)) {
+                throw new IllegalArgumentException("the game " + game + " has no move " + ply);
+            }
+            return unpack(segment, position + HEADER, ply);
+        }
+
+        /**
+         * Reads the moves of a game into the array.
+         *
+         * @param game  the number of the game.
+         * @param moves the array of at least {@link #getMoveCount(long)} moves to fill.
+         * @return the number of moves.
+         */
+        public int readMoves(long game, int[] moves) {
+            long offset = offsetOf(game);
+            ByteBuffer segment = segmentOf(offset);
+            int position = positionOf(offset);
+            int count = segment.getShort(position) & 0xFFFF;
+            for (int ply = 0; ply < count; ply++) {
+                moves[ply] = unpack(segment, position + HEADER, ply);
+            }
+            return count;
+        }
+
+        /**
+         * Get the stored bytes of a game, without copying them: the header
+         * and the packed moves.
+         *
+         * @param game the number of the game.
+         * @return a read-only view of the mapped bytes of the game.
+         */
+        public ByteBuffer getRecord(long game) {
+            long offset = offsetOf(game);
+            ByteBuffer record = segmentOf(offset).duplicate();
+            int position = positionOf(offset);
+            record.position(position);
+            record.limit(position + HEADER + packedLength(record.getShort(position) & 0xFFFF));
+            return record.slice().asReadOnlyBuffer();
+        }
+
+        @Override
+        public void close() throws IOException {
+            dataSegments.clear();
+            indexSegments.clear();
+            data.close();
+            index.close();
+        }
+
+        private static int unpack(ByteBuffer segment, int moves, int ply) {
+            int position = moves + ply + (ply >> 1);
+            int low = segment.get(position) & 0xFF;
+            int high = segment.get(position + 1) & 0xFF;
+            return (ply & 1) == 0 ? low | (high & 0x0F) << 8 : low >>> 4 | high << 4;
+        }
+
+        private long offsetOf(long game) {
+            if (game < 0 || game >= size) {
+                throw new IllegalArgumentException("the archive has no game " + game);
+            }
+            long position = game * OFFSET_BYTES;
+            return indexSegments.get((int) (position / SEGMENT_SIZE)).getLong((int) (position % SEGMENT_SIZE));
+        }
+
+        private ByteBuffer segmentOf(long offset) {
+            return dataSegments.get((int) (offset / SEGMENT_SIZE));
+        }
+
+        private static int positionOf(long offset) {
+            return (int) (offset % SEGMENT_SIZE);
+        }
+    }
+}
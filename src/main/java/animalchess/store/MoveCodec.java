@@ -0,0 +1,224 @@
+package animalchess.store;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.Move;
+import animalchess.PieceKind;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class implements a compressed encoding of the moves of a game.
+ * <p>
+ * Each move is written as its rank in the legal moves of its position,
+ * which are generated by {@code GameState} and ordered so that the likely
+ * moves come first: captures, the most valuable victim first, then
+ * promotions, then the rest. The ranks are entropy coded by a range coder
+ * with an adaptive model of the ranks, so the frequent low ranks take a
+ * fraction of a bit and a typical move a few bits. Decoding replays the
+ * game on a {@code GameState} to regenerate the same legal moves.
+ * <p>
+ * Each game is coded on its own, from the same starting model, so games
+ * are decoded independently. A codec reuses its buffers and is used by
+ * one thread.
+ *
+ * @author Yoochul Kim
+ * @see GameArchive
+ */
+public final class MoveCodec {
+    // The values of the victims of captures, by PieceKind ordinal.
+    private static final int[] VICTIM_VALUES = {8, 5, 4, 1, 5, 5};
+
+    // The model: the frequency of each rank, adapted after each move.
+    private static final int INCREMENT = 24;
+    private static final int MAX_TOTAL = 1 << 16;
+
+    // The range coder, on 32 bits.
+    private static final long MASK = 0xFFFFFFFFL;
+    private static final long TOP = 1L << 24;
+    private static final long BOTTOM = 1L << 16;
+
+    private final GameState state = new GameState();
+    private final int[] moves = new int[GameState.MAX_MOVES];
+    private final int[] keys = new int[GameState.MAX_MOVES];
+    private final int[] frequencies = new int[GameState.MAX_MOVES];
+    private int total;
+
+    private long low;
+    private long range;
+    private long code;
+
+    /**
+     * Encodes the moves of a game played from the start position.
+     *
+     * @param game  the moves encoded by {@code Move}.
+     * @param count the number of moves.
+     * @param out   the {@code ByteBuffer} to write the code to.
+     * @return the number of bytes written.
+     * @throws IllegalArgumentException if a move is illegal.
+     */
+    public int encode(int[] game, int count, ByteBuffer out) {
+        int start = out.position();
+        state.setStart();
+        resetModel();
+        low = 0;
+        range = MASK;
+
+        for (int i = 0; i < count; i++) {
+            int move = game[i] & Move.MOVE_MASK;
+            int n = orderMoves();
+            int rank = 0;
+            while (rank < n && moves[rank] != move) rank++;
+            if (rank == n) {
+                throw new IllegalArgumentException("the move " + Move.toText(move) + " at " + i + " is illegal");
+            }
+            encodeRank(rank, n, out);
+            state.play(move);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            out.put((byte) (low >>> 24));
+            low = (low << 8) & MASK;
+        }
+        return out.position() - start;
+    }
+
+    /**
+     * Decodes the moves of a game encoded by {@link #encode(int[], int, ByteBuffer)}.
+     *
+     * @param in    the {@code ByteBuffer} to read the code from.
+     * @param count the number of moves of the game.
+     * @param game  the array of at least {@code count} moves to fill.
+     * @return the number of moves decoded, less than {@code count} if the game ended before.
+     */
+    public int decode(ByteBuffer in, int count, int[] game) {
+        state.setStart();
+        resetModel();
+        low = 0;
+        range = MASK;
+        code = 0;
+        for (int i = 0; i < 4; i++) {
+            code = (code << 8 | nextByte(in)) & MASK;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int n = orderMoves();
+            if (n == 0) {
+                return i;
+            }
+            int rank = decodeRank(n, in);
+            game[i] = moves[rank];
+            state.play(moves[rank]);
+        }
+        return count;
+    }
+
+    /**
+     * Get the position reached by the last game encoded or decoded.
+     *
+     * @return the {@code GameState} used by this codec, overwritten by the next game.
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    // Generates the legal moves into the buffer, the likely ones first.
+    private int orderMoves() {
+        int n = state.generateMoves(moves);
+        Game.Side side = state.getSideToMove();
+        for (int i = 0; i < n; i++) {
+            int move = moves[i];
+            int to = Move.getTo(move);
+            int victim = state.getPiece(to);
+            int key = victim == 0 ? 0 : (VICTIM_VALUES[GameState.kindOf(victim).ordinal()] + 1) * 2;
+            if (!Move.isDrop(move)) {
+                PieceKind kind = GameState.kindOf(state.getPiece(Move.getFrom(move)));
+                if (kind.afterMoveTo(side, to / Game.WIDTH) != kind) key++;
+            }
+            // A stable insertion sort, the lists are short.
+            int j = i;
+            while (j > 0 && keys[j - 1] < key) {
+                keys[j] = keys[j - 1];
+                moves[j] = moves[j - 1];
+                j--;
+            }
+            keys[j] = key;
+            moves[j] = move;
+        }
+        return n;
+    }
+
+    private void resetModel() {
+        // Halving every eight ranks, as the first moves are the most likely.
+        for (int rank = 0; rank < frequencies.length; rank++) {
+            frequencies[rank] = Math.max(2, 32 >> (rank / 8));
+        }
+        total = 0;
+        for (int frequency : frequencies) total += frequency;
+    }
+
+    private void update(int rank) {
+        frequencies[rank] += INCREMENT;
+        total += INCREMENT;
+        if (total > MAX_TOTAL) {
+            total = 0;
+            for (int i = 0; i < frequencies.length; i++) {
+                frequencies[i] = Math.max(1, frequencies[i] >> 1);
+                total += frequencies[i];
+            }
+        }
+    }
+
+    private void encodeRank(int rank, int n, ByteBuffer out) {
+        int cumulative = 0;
+        for (int i = 0; i < rank; i++) cumulative += frequencies[i];
+        int sum = cumulative;
+        for (int i = rank; i < n; i++) sum += frequencies[i];
+
+        range /= sum;
+        low = (low + cumulative * range) & MASK;
+        range *= frequencies[rank];
+        while (true) {
+            if (((low ^ (low + range)) & MASK) >= TOP) {
+                if (range >= BOTTOM) break;
+                range = -low & (BOTTOM - 1);
+            }
+            out.put((byte) (low >>> 24));
+            low = (low << 8) & MASK;
+            range = (range << 8) & MASK;
+        }
+        update(rank);
+    }
+
+    private int decodeRank(int n, ByteBuffer in) {
+        int sum = 0;
+        for (int i = 0; i < n; i++) sum += frequencies[i];
+
+        range /= sum;
+        long target = Math.min(((code - low) & MASK) / range, sum - 1);
+        int rank = 0;
+        int cumulative = 0;
+        while (cumulative + frequencies[rank] <= target) {
+            cumulative += frequencies[rank];
+            rank++;
+        }
+
+        low = (low + cumulative * range) & MASK;
+        range *= frequencies[rank];
+        while (true) {
+            if (((low ^ (low + range)) & MASK) >= TOP) {
+                if (range >= BOTTOM) break;
+                range = -low & (BOTTOM - 1);
+            }
+            code = (code << 8 | nextByte(in)) & MASK;
+            low = (low << 8) & MASK;
+            range = (range << 8) & MASK;
+        }
+        update(rank);
+        return rank;
+    }
+
+    private static int nextByte(ByteBuffer in) {
+        return in.hasRemaining() ? in.get() & 0xFF : 0;
+    }
+}
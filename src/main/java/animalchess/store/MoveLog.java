@@ -0,0 +1,478 @@
+package animalchess.store;
+
+import animalchess.GameState;
+import animalchess.Move;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * This class implements an append-only write-ahead log of the moves of
+ * many games, so that the games in progress survive a crash of the JVM.
+ * <p>
+ * Appending a record only copies it into a buffer. One writer thread
+ * writes everything appended since its last write as one frame, then
+ * forces the file to disk, while the next records fill a second buffer.
+ * So a single {@code fsync} commits the moves of all games appended in
+ * the meantime, and the log keeps up with tens of thousands of moves per
+ * second. A caller which must not lose a record waits for it with
+ * {@link #awaitDurable(long)}, or without blocking with
+ * {@link #whenDurable(long)}.
+ * <p>
+ * A move takes 15 bytes: the id of the game, the number of moves played
+ * after it, and the move itself. Snapshots of the whole position are
+ * appended every now and then, so that {@link #recover(Path)} only
+ * replays the moves after the last snapshot of each game, and replays the
+ * games in parallel. A game whose moves start again at move 1 without a
+ * snapshot, as after a reset, is replayed from the start position again.
+ * Each frame carries a checksum; a frame torn by a crash ends the log and
+ * is cut off when the log is opened again.
+ *
+ * @author Yoochul Kim
+ * @see GameState
+ */
+public class MoveLog implements AutoCloseable {
+    /**
+     * The size in bytes of the buffers, and so the max size of a frame.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte MOVE = 1;
+    private static final byte SNAPSHOT = 2;
+    private static final byte END = 3;
+    private static final int MOVE_BYTES = 1 + Long.BYTES + Integer.BYTES + Short.BYTES;
+    private static final int SNAPSHOT_BYTES = 1 + Long.BYTES + GameState.BYTES;
+    private static final int END_BYTES = 1 + Long.BYTES;
+    // The length and the checksum of the records of a frame.
+    private static final int FRAME_HEADER = 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final Thread writer;
+    private final Object lock = new Object();
+
+    // Guarded by the lock.
+    private ByteBuffer filling = newBuffer();
+    private long appended;
+    private long durable;
+    private boolean closed;
+    private boolean stopped;
+    private IOException failure;
+    // The futures of whenDurable, by sequence number.
+    private final TreeMap<Long, CompletableFuture<Void>> waiters = new TreeMap<>();
+
+    // Only used by the writer thread.
+    private ByteBuffer writing = newBuffer();
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Constructor to create {@code MoveLog} appending to the file, which is
+     * created if it does not exist. A torn frame at the end of the file is cut off.
+     *
+     * @param file the path of the log.
+     * @throws IOException if the file cannot be opened.
+     */
+    public MoveLog(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = scan(channel, null);
+        channel.truncate(end);
+        channel.position(end);
+
+        writer = new Thread(this::writeLoop, "move-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends a move of a game.
+     *
+     * @param gameId    the id of the game.
+     * @param moveCount the number of moves played after the move.
+     * @param move      the move encoded by {@code Move}; only the move itself is kept.
+     * @return the sequence number of the record, see {@link #awaitDurable(long)}.
+     * @throws IllegalStateException if the log is closed or has failed.
+     */
+    public long append(long gameId, int moveCount, int move) {
+        synchronized (lock) {
+            ByteBuffer buffer = reserve(MOVE_BYTES);
+            buffer.put(MOVE).putLong(gameId).putInt(moveCount).putShort((short) (move & Move.MOVE_MASK));
+            return ++appended;
+        }
+    }
+
+    /**
+     * Appends a snapshot of a game. The moves appended before it are not
+     * replayed by the recovery anymore.
+     *
+     * @param gameId the id of the game.
+     * @param state  the position of the game.
+     * @return the sequence number of the record, see {@link #awaitDurable(long)}.
+     * @throws IllegalStateException if the log is closed or has failed.
+     */
+    public long appendSnapshot(long gameId, GameState state) {
+        synchronized (lock) {
+            ByteBuffer buffer = reserve(SNAPSHOT_BYTES);
+            buffer.put(SNAPSHOT).putLong(gameId);
+            state.writeTo(buffer);
+            return ++appended;
+        }
+    }
+
+    /**
+     * Appends the end of a game, which is then left out of the recovery.
+     *
+     * @param gameId the id of the game.
+     * @return the sequence number of the record, see {@link #awaitDurable(long)}.
+     * @throws IllegalStateException if the log is closed or has failed.
+     */
+    public long appendEnd(long gameId) {
+        synchronized (lock) {
+            reserve(END_BYTES).put(END).putLong(gameId);
+            return ++appended;
+        }
+    }
+
+    /**
+     * Waits until the record with the sequence number, and all records before
+     * it, are forced to disk.
+     *
+     * @param sequence the sequence number returned when appending.
+     * @throws IOException if the log failed to write.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitDurable(long sequence) throws IOException, InterruptedException {
+        synchronized (lock) {
+            while (durable < sequence) {
+                if (stopped) {
+                    throw stoppedException();
+                }
+                lock.wait();
+            }
+        }
+    }
+
+    /**
+     * Returns a future completed once the record with the sequence number, and
+     * all records before it, are forced to disk. The future is completed by
+     * the writer thread of the log, so its dependents should not block or
+     * append to the log; run them on another {@code Executor}.
+     *
+     * @param sequence the sequence number returned when appending.
+     * @return the future, failed with {@code IOException} if the log failed
+     * to write or was closed before the record was forced to disk.
+     */
+    public CompletableFuture<Void> whenDurable(long sequence) {
+        synchronized (lock) {
+            if (durable >= sequence) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (stopped) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(stoppedException());
+                return future;
+            }
+            return waiters.computeIfAbsent(sequence, key -> new CompletableFuture<>());
+        }
+    }
+
+    /**
+     * Get the sequence number of the last record forced to disk.
+     *
+     * @return the sequence number, 0 if none.
+     */
+    public long getDurable() {
+        synchronized (lock) {
+            return durable;
+        }
+    }
+
+    /**
+     * Commits the records appended so far and closes the log.
+     *
+     * @throws IOException if the last records cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (lock) {
+            if (failure != null) {
+                throw new IOException("the move log failed", failure);
+            }
+        }
+    }
+
+    // Called with the lock held; waits for the writer while the buffer is full.
+    private ByteBuffer reserve(int bytes) {
+        while (true) {
+            if (closed || failure != null) {
+                throw new IllegalStateException("the move log is " + (closed ? "closed" : "failed"));
+            }
+            if (filling.remaining() >= bytes) {
+                if (filling.position() == FRAME_HEADER) {
+                    // The writer waits for the first record of a frame.
+                    lock.notifyAll();
+                }
+                return filling;
+            }
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for the move log", e);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        IOException error = null;
+        while (true) {
+            long sequence;
+            synchronized (lock) {
+                try {
+                    while (filling.position() == FRAME_HEADER && !closed) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (filling.position() == FRAME_HEADER) break;
+                ByteBuffer full = filling;
+                filling = writing;
+                writing = full;
+                sequence = appended;
+                // Appenders waiting for room.
+                lock.notifyAll();
+            }
+
+            try {
+                writeFrame(writing);
+            } catch (IOException e) {
+                error = e;
+                break;
+            }
+            List<CompletableFuture<Void>> done;
+            synchronized (lock) {
+                durable = sequence;
+                lock.notifyAll();
+                done = takeWaiters(sequence);
+            }
+            // Completed out of the lock, as their dependents may run right away.
+            for (CompletableFuture<Void> future : done) {
+                future.complete(null);
+            }
+        }
+
+        IOException cause;
+        List<CompletableFuture<Void>> failed;
+        synchronized (lock) {
+            failure = error;
+            stopped = true;
+            lock.notifyAll();
+            cause = stoppedException();
+            failed = takeWaiters(Long.MAX_VALUE);
+        }
+        for (CompletableFuture<Void> future : failed) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    // Called with the lock held; removes the waiters up to the sequence number.
+    private List<CompletableFuture<Void>> takeWaiters(long sequence) {
+        if (waiters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        NavigableMap<Long, CompletableFuture<Void>> head = waiters.headMap(sequence, true);
+        List<CompletableFuture<Void>> taken = new ArrayList<>(head.values());
+        head.clear();
+        return taken;
+    }
+
+    // Called with the lock held once the writer thread has stopped.
+    private IOException stoppedException() {
+        if (failure != null) {
+            return new IOException("the move log failed", failure);
+        }
+        return new IOException("the move log is closed");
+    }
+
+    private void writeFrame(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        ByteBuffer records = buffer.duplicate();
+        records.position(FRAME_HEADER);
+        crc.reset();
+        crc.update(records);
+        buffer.putInt(0, buffer.limit() - FRAME_HEADER);
+        buffer.putInt(Integer.BYTES, (int) crc.getValue());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        buffer.clear();
+        buffer.position(FRAME_HEADER);
+    }
+
+    private static ByteBuffer newBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.position(FRAME_HEADER);
+        return buffer;
+    }
+
+    /**
+     * Recovers the games in progress from a log: each game is set to its last
+     * snapshot, or the start position, and its later moves are replayed. The
+     * games are replayed in parallel. Ended games are left out.
+     *
+     * @param file the path of the log.
+     * @return the positions of the games in progress, by game id.
+     * @throws IOException if the log cannot be read.
+     * @throws IllegalStateException if moves are missing or illegal.
+     */
+    public static Map<Long, GameState> recover(Path file) throws IOException {
+        Map<Long, Replay> replays = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scan(channel, replays);
+        }
+
+        Map<Long, GameState> games = new HashMap<>();
+        replays.values().parallelStream().forEach(Replay::run);
+        for (Map.Entry<Long, Replay> entry : replays.entrySet()) {
+            games.put(entry.getKey(), entry.getValue().state);
+        }
+        return games;
+    }
+
+    // Reads the frames up to the first torn one, collecting the records into
+    // the replays if any, and returns the length of the valid frames.
+    private static long scan(FileChannel channel, Map<Long, Replay> replays) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+        ByteBuffer records = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        long position = 0;
+        long size = channel.size();
+
+        while (position + FRAME_HEADER <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || length > BUFFER_SIZE - FRAME_HEADER || position + FRAME_HEADER + length > size) {
+                break;
+            }
+            records.clear().limit(length);
+            readFully(channel, records, position + FRAME_HEADER);
+            records.flip();
+            crc.reset();
+            crc.update(records.duplicate());
+            if ((int) crc.getValue() != header.getInt(Integer.BYTES)) {
+                break;
+            }
+            if (replays != null) {
+                readRecords(records, replays);
+            }
+            position += FRAME_HEADER + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private static void readRecords(ByteBuffer records, Map<Long, Replay> replays) {
+        while (records.hasRemaining()) {
+            byte type = records.get();
+            long gameId = records.getLong();
+            switch (type) {
+                case MOVE:
+                    int moveCount = records.getInt();
+                    int move = records.getShort() & Move.MOVE_MASK;
+                    replays.computeIfAbsent(gameId, Replay::new).add(moveCount, move);
+                    break;
+                case SNAPSHOT:
+                    replays.computeIfAbsent(gameId, Replay::new).snapshot(records);
+                    break;
+                case END:
+                    replays.remove(gameId);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown record type " + type);
+            }
+        }
+    }
+
+    /**
+     * This class holds the records of one game to replay.
+     */
+    private static final class Replay {
+        private final long gameId;
+        private final GameState state = new GameState();
+        // The moves after the snapshot, in pairs of move count and move.
+        private int[] moves = new int[32];
+        private int size;
+        // The move count of the last move or snapshot.
+        private int lastMoveCount;
+
+        Replay(long gameId) {
+            this.gameId = gameId;
+        }
+
+        void add(int moveCount, int move) {
+            if (moveCount == 1 && lastMoveCount >= 1) {
+                // The game was reset: the moves before are of a game which is over.
+                state.setStart();
+                size = 0;
+            }
+            lastMoveCount = moveCount;
+            if (size == moves.length) {
+                moves = Arrays.copyOf(moves, size * 2);
+            }
+            moves[size++] = moveCount;
+            moves[size++] = move;
+        }
+
+        void snapshot(ByteBuffer records) {
+            state.readFrom(records);
+            size = 0;
+            lastMoveCount = state.getMoveCount();
+        }
+
+        void run() {
+            for (int i = 0; i < size; i += 2) {
+                int moveCount = moves[i];
+                // Moves already in the snapshot.
+                if (moveCount <= state.getMoveCount()) continue;
+                int move = moves[i + 1];
+                if (moveCount != state.getMoveCount() + 1 || !state.isLegal(move)) {
+                    throw new IllegalStateException("the log of game " + gameId + " is broken at move " + moveCount);
+                }
+                state.play(move);
+            }
+            moves = null;
+        }
+    }
+}
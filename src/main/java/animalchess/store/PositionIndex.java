@@ -0,0 +1,412 @@
+package animalchess.store;
+
+import animalchess.GameState;
+import animalchess.Zobrist;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class implements an index from the positions to the games and
+ * plies where they occur, kept in a memory-mapped file.
+ * <p>
+ * Positions are keyed by their {@code Zobrist} hash, and the index is cut
+ * into partitions by the high bits of the hash. Each partition is an
+ * open-addressing table of {@code SLOT_BYTES}-byte slots, the hash, the
+ * first posting and the number of postings, followed by its postings,
+ * 8 bytes each with the game id and the ply. The tables are probed
+ * straight in the mapped pages, so a lookup allocates nothing and takes
+ * a few memory accesses, and nothing is held on the heap however many
+ * positions are indexed.
+ * <p>
+ * {@link #build(GameArchive.Reader, Path, ForkJoinPool, int)} builds the
+ * index in parallel: games are replayed in chunks which spill their
+ * postings to one temporary file per partition, then each partition is
+ * built on its own and the partitions are joined into the index file.
+ *
+ * @author Yoochul Kim
+ * @see Zobrist
+ */
+public final class PositionIndex implements AutoCloseable {
+    /**
+     * The number of bytes of a slot of a table.
+     */
+    public static final int SLOT_BYTES = 3 * Long.BYTES;
+
+    private static final int MAGIC = 0x50494458;
+    private static final int HEADER = 2 * Integer.BYTES;
+    // The offset of the table, its number of slots and the offset of the postings.
+    private static final int PARTITION_BYTES = 3 * Long.BYTES;
+    private static final int PLY_BITS = 16;
+    private static final int CHUNK = 1024;
+    private static final int MAX_PARTITION_BITS = 16;
+    // The hash kept for a position whose hash is 0, which marks an empty slot.
+    private static final long ZERO_HASH = 1;
+
+    private final FileChannel channel;
+    private final int partitionBits;
+    private final ByteBuffer[] tables;
+    private final ByteBuffer[] postings;
+
+    /**
+     * Constructor to create {@code PositionIndex} mapping the index file.
+     *
+     * @param file the path of an index built by {@code build}.
+     * @throws IOException if the file cannot be mapped.
+     * @throws IllegalArgumentException if the file is not an index.
+     */
+    public PositionIndex(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IllegalArgumentException("the file is not a position index");
+        }
+        partitionBits = header.getInt(Integer.BYTES);
+
+        int partitions = 1 << partitionBits;
+        ByteBuffer directory = ByteBuffer.allocate(partitions * PARTITION_BYTES);
+        channel.read(directory, HEADER);
+        tables = new ByteBuffer[partitions];
+        postings = new ByteBuffer[partitions];
+        for (int p = 0; p < partitions; p++) {
+            long tableOffset = directory.getLong(p * PARTITION_BYTES);
+            long slots = directory.getLong(p * PARTITION_BYTES + Long.BYTES);
+            long postingOffset = directory.getLong(p * PARTITION_BYTES + 2 * Long.BYTES);
+            long end = p + 1 < partitions ? directory.getLong((p + 1) * PARTITION_BYTES) : channel.size();
+            tables[p] = channel.map(FileChannel.MapMode.READ_ONLY, tableOffset, slots * SLOT_BYTES);
+            postings[p] = channel.map(FileChannel.MapMode.READ_ONLY, postingOffset, end - postingOffset);
+        }
+    }
+
+    /**
+     * Packs a game id and a ply into a posting.
+     *
+     * @param gameId the id of the game.
+     * @param ply    the ply of the position in the game.
+     * @return the posting.
+     */
+    public static long posting(long gameId, int ply) {
+        return gameId << PLY_BITS | ply;
+    }
+
+    /**
+     * Get the game id of a posting.
+     *
+     * @param posting the posting.
+     * @return the id of the game.
+     */
+    public static long gameOf(long posting) {
+        return posting >>> PLY_BITS;
+    }
+
+    /**
+     * Get the ply of a posting.
+     *
+     * @param posting the posting.
+     * @return the ply of the position in the game.
+     */
+    public static int plyOf(long posting) {
+        return (int) (posting & ((1 << PLY_BITS) - 1));
+    }
+
+    /**
+     * Get the number of occurrences of a position.
+     *
+     * @param hash the {@code Zobrist} hash of the position.
+     * @return the number of postings of the position, 0 if it is not indexed.
+     */
+    public long count(long hash) {
+        int partition = partitionOf(hash);
+        int slot = find(tables[partition], hash);
+        return slot < 0 ? 0 : tables[partition].getLong(slot * SLOT_BYTES + 2 * Long.BYTES);
+    }
+
+    /**
+     * Reads the postings of a position into the array, from the given one.
+     *
+     * @param hash     the {@code Zobrist} hash of the position.
+     * @param from     the index of the first posting to read.
+     * @param postings the array to fill.
+     * @return the number of postings read, 0 once there are no more.
+     */
+    public int read(long hash, long from, long[] postings) {
+        int partition = partitionOf(hash);
+        ByteBuffer table = tables[partition];
+        int slot = find(table, hash);
+        if (slot < 0) {
+            return 0;
+        }
+        long first = table.getLong(slot * SLOT_BYTES + Long.BYTES);
+        long count = table.getLong(slot * SLOT_BYTES + 2 * Long.BYTES);
+        int read = (int) Math.max(0, Math.min(postings.length, count - from));
+        ByteBuffer list = this.postings[partition];
+        for (int i = 0; i < read; i++) {
+            postings[i] = list.getLong((int) ((first + from + i) * Long.BYTES));
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int partitionOf(long hash) {
+        return partitionBits == 0 ? 0 : (int) (hash >>> (Long.SIZE - partitionBits));
+    }
+
+    // Returns the slot of the hash in the table, or -1.
+    private static int find(ByteBuffer table, long hash) {
+        long key = hash == 0 ? ZERO_HASH : hash;
+        int mask = table.capacity() / SLOT_BYTES - 1;
+        for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+            long stored = table.getLong(slot * SLOT_BYTES);
+            if (stored == key) return slot;
+            if (stored == 0) return -1;
+        }
+    }
+
+    /**
+     * Builds the index of every position of the games of an archive, the
+     * game ids being the numbers of the games in the archive.
+     *
+     * @param games         the {@code GameArchive.Reader} of the games.
+     * @param file          the path of the index to write.
+     * @param pool          the {@code ForkJoinPool} building the index.
+     * @param partitionBits the number of high bits of the hash choosing the
+     *                      partition, from 0 to 16; each partition should hold
+     *                      less than 2<sup>26</sup> postings.
+     * @throws IOException if the files cannot be written.
+     */
+    public static void build(GameArchive.Reader games, Path file, ForkJoinPool pool, int partitionBits)
+            throws IOException {
+        if (partitionBits < 0 || partitionBits > MAX_PARTITION_BITS) {
+            throw new IllegalArgumentException("the number of partition bits should be from 0 to " + MAX_PARTITION_BITS);
+        }
+        int partitions = 1 << partitionBits;
+        Path spillDirectory = Files.createTempDirectory(file.toAbsolutePath().getParent(), "position-index");
+        FileChannel[] spills = new FileChannel[partitions];
+        try {
+            for (int p = 0; p < partitions; p++) {
+                spills[p] = FileChannel.open(spillDirectory.resolve("spill-" + p),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            List<ForkJoinTask<?>> chunks = new ArrayList<>();
+            for (long first = 0; first < games.size(); first += CHUNK) {
+                chunks.add(new ChunkTask(games, first, Math.min(games.size(), first + CHUNK), spills, partitionBits));
+            }
+            try {
+                pool.submit(() -> ForkJoinTask.invokeAll(chunks)).join();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Each partition is built into its own part, in place of its spill.
+            long[][] sizes = new long[partitions][];
+            List<ForkJoinTask<?>> parts = new ArrayList<>();
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                parts.add(ForkJoinTask.adapt(() -> {
+                    try {
+                        sizes[partition] = buildPartition(spills[partition]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            try {
+                pool.submit(() -> ForkJoinTask.invokeAll(parts)).join();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER + partitions * PARTITION_BYTES);
+                header.putInt(MAGIC).putInt(partitionBits);
+                long offset = header.capacity();
+                for (int p = 0; p < partitions; p++) {
+                    header.putLong(offset).putLong(sizes[p][0]).putLong(offset + sizes[p][0] * SLOT_BYTES);
+                    offset += sizes[p][0] * SLOT_BYTES + sizes[p][1] * Long.BYTES;
+                }
+                header.flip();
+                while (header.hasRemaining()) out.write(header);
+                for (FileChannel spill : spills) {
+                    long size = spill.size();
+                    for (long copied = 0; copied < size; ) {
+                        copied += spill.transferTo(copied, size - copied, out);
+                    }
+                }
+                out.force(false);
+            }
+        } finally {
+            for (int p = 0; p < partitions; p++) {
+                if (spills[p] != null) spills[p].close();
+                Files.deleteIfExists(spillDirectory.resolve("spill-" + p));
+            }
+            Files.deleteIfExists(spillDirectory);
+        }
+    }
+
+    // Replaces the spilled hashes and postings of a partition with its table
+    // and postings, returning the number of slots and of postings.
+    private static long[] buildPartition(FileChannel spill) throws IOException {
+        long entries = spill.size() / (2 * Long.BYTES);
+        if (entries * 2 * Long.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("a partition has too many postings, use more partition bits");
+        }
+        ByteBuffer pairs = ByteBuffer.allocateDirect((int) (entries * 2 * Long.BYTES));
+        while (pairs.hasRemaining()) {
+            if (spill.read(pairs, pairs.position()) < 0) break;
+        }
+
+        // Count the postings of each position; the keys are at most the entries.
+        int capacity = tableCapacity(entries);
+        long[] keys = new long[capacity];
+        long[] counts = new long[capacity];
+        int distinct = 0;
+        for (int i = 0; i < entries; i++) {
+            int slot = insert(keys, pairs.getLong(i * 2 * Long.BYTES));
+            if (counts[slot]++ == 0) distinct++;
+        }
+
+        // The final table, with the postings of each slot after those of the slots before it.
+        int slots = tableCapacity(distinct);
+        if ((long) slots * SLOT_BYTES + entries * Long.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("a partition has too many positions, use more partition bits");
+        }
+        long[] finalKeys = new long[slots];
+        long[] finalCounts = new long[slots];
+        for (int i = 0; i < capacity; i++) {
+            if (keys[i] != 0) {
+                int slot = insert(finalKeys, keys[i]);
+                finalCounts[slot] = counts[i];
+            }
+        }
+        keys = null;
+        counts = null;
+        long[] starts = new long[slots];
+        long next = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            starts[slot] = next;
+            next += finalCounts[slot];
+        }
+
+        ByteBuffer part = ByteBuffer.allocateDirect((int) (slots * SLOT_BYTES + entries * Long.BYTES));
+        long[] cursors = Arrays.copyOf(starts, slots);
+        int postingBase = slots * SLOT_BYTES;
+        for (int i = 0; i < entries; i++) {
+            int slot = insert(finalKeys, pairs.getLong(i * 2 * Long.BYTES));
+            part.putLong((int) (postingBase + cursors[slot]++ * Long.BYTES), pairs.getLong(i * 2 * Long.BYTES + Long.BYTES));
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            part.putLong(slot * SLOT_BYTES, finalKeys[slot])
+                    .putLong(slot * SLOT_BYTES + Long.BYTES, starts[slot])
+                    .putLong(slot * SLOT_BYTES + 2 * Long.BYTES, finalCounts[slot]);
+        }
+
+        spill.truncate(0);
+        long position = 0;
+        while (part.hasRemaining()) {
+            position += spill.write(part, position);
+        }
+        return new long[]{slots, entries};
+    }
+
+    // A power of two with the load under a half.
+    private static int tableCapacity(long keys) {
+        long capacity = Long.highestOneBit(Math.max(2, keys * 2 - 1)) << 1;
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("a partition has too many positions, use more partition bits");
+        }
+        return (int) capacity;
+    }
+
+    // Returns the slot of the key in the table, adding it if it is not there.
+    private static int insert(long[] keys, long hash) {
+        long key = hash == 0 ? ZERO_HASH : hash;
+        int mask = keys.length - 1;
+        for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return slot;
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * This class replays a chunk of games and spills their positions to the partitions.
+     */
+    @SuppressWarnings("serial")
+    private static final class ChunkTask extends RecursiveAction {
+        private final GameArchive.Reader games;
+        private final long first;
+        private final long end;
+        private final FileChannel[] spills;
+        private final int partitionBits;
+
+        ChunkTask(GameArchive.Reader games, long first, long end, FileChannel[] spills, int partitionBits) {
+            this.games = games;
+            this.first = first;
+            this.end = end;
+            this.spills = spills;
+            this.partitionBits = partitionBits;
+        }
+
+        @Override
+        protected void compute() {
+            int partitions = spills.length;
+            // The hash and posting pairs of each partition.
+            long[][] pairs = new long[partitions][16];
+            int[] sizes = new int[partitions];
+            int[] moves = new int[GameArchive.MAX_MOVES];
+            GameState state = new GameState();
+
+            for (long game = first; game < end; game++) {
+                int count = games.readMoves(game, moves);
+                state.setStart();
+                for (int ply = 0; ply <= count; ply++) {
+                    long hash = Zobrist.hash(state);
+                    int p = partitionBits == 0 ? 0 : (int) (hash >>> (Long.SIZE - partitionBits));
+                    if (sizes[p] + 2 > pairs[p].length) {
+                        pairs[p] = Arrays.copyOf(pairs[p], pairs[p].length * 2);
+                    }
+                    pairs[p][sizes[p]++] = hash;
+                    pairs[p][sizes[p]++] = posting(game, ply);
+                    if (ply < count) state.play(moves[ply]);
+                }
+            }
+
+            for (int p = 0; p < partitions; p++) {
+                if (sizes[p] == 0) continue;
+                ByteBuffer buffer = ByteBuffer.allocate(sizes[p] * Long.BYTES);
+                buffer.asLongBuffer().put(pairs[p], 0, sizes[p]);
+                try {
+                    synchronized (spills[p]) {
+                        long position = spills[p].size();
+                        while (buffer.hasRemaining()) {
+                            position += spills[p].write(buffer, position);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package animalchess.store;
+
+import animalchess.Game;
+import animalchess.GameState;
+import animalchess.engine.Evaluator;
+import animalchess.engine.Search;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * This class implements the export of games as training data: one record
+ * of {@code RECORD_BYTES} bytes per position, written into shard files of
+ * at most {@code maxRecords} records.
+ * <p>
+ * A record holds the board, a nibble per square as in {@code GameState}
+ * (15 bytes), the hands, a nibble per count (3), the side to move (1), the
+ * score of the position for the side to move (2), the result of the game
+ * for the side to move, 1, 0 or -1 (1), and the ply (2). The score is the
+ * one of the {@code Evaluator}, or of a {@code Search} to a depth.
+ * <p>
+ * Games are queued and taken by writer threads, each replaying its games
+ * into a direct buffer written to its own shard through a
+ * {@code FileChannel}, so the writers never wait for each other. A shard
+ * {@code shard-NNNNN.bin} holds only records; its index
+ * {@code shard-NNNNN.idx} holds a header (a magic number, the record size,
+ * the number of records and the CRC32 of the shard) and an entry per game
+ * (the game id, its first record and its number of records). A game too
+ * long for the rest of a shard goes on in the next one, with an entry in each.
+ *
+ * @author Yoochul Kim
+ * @see GameArchive
+ */
+public class TrainingExport implements AutoCloseable {
+    /**
+     * The size in bytes of a record.
+     */
+    public static final int RECORD_BYTES = 24;
+    /**
+     * The magic number at the start of an index.
+     */
+    public static final int MAGIC = 0x41435444;
+    /**
+     * The size in bytes of the header of an index.
+     */
+    public static final int INDEX_HEADER = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+    /**
+     * The size in bytes of an entry of an index.
+     */
+    public static final int INDEX_ENTRY = Long.BYTES + 2 * Integer.BYTES;
+
+    private static final int BUFFER_RECORDS = 4096;
+    private static final Job END = new Job(0, new int[0], 0, null);
+
+    private final Path directory;
+    private final int maxRecords;
+    private final int scoreDepth;
+    private final BlockingQueue<Job> queue;
+    private final Thread[] writers;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final AtomicLong records = new AtomicLong();
+    private final List<Exception> failures = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Constructor to create {@code TrainingExport} writing shards into a
+     * directory, which is created if it does not exist.
+     *
+     * @param directory  the directory of the shards.
+     * @param writers    the number of writer threads.
+     * @param maxRecords the max number of records of a shard.
+     * @param scoreDepth the depth of the search of the scores, 0 for the {@code Evaluator} alone.
+     * @throws IOException if the directory cannot be created.
+     */
+    public TrainingExport(Path directory, int writers, int maxRecords, int scoreDepth) throws IOException {
+        if (writers <= 0 || maxRecords <= 0 || scoreDepth < 0) {
+            throw new IllegalArgumentException("the writers and the shard size should be positive");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.maxRecords = maxRecords;
+        this.scoreDepth = Math.min(scoreDepth, Search.MAX_PLY);
+        this.queue = new ArrayBlockingQueue<>(4 * writers);
+        this.writers = new Thread[writers];
+        for (int i = 0; i < writers; i++) {
+            this.writers[i] = new Thread(new Writer(), "training-export-" + i);
+            this.writers[i].start();
+        }
+    }
+
+    /**
+     * Queues a game, waiting while the writers are behind.
+     *
+     * @param gameId the id of the game, kept in the indexes.
+     * @param moves  the moves encoded by {@code Move}, which are copied.
+     * @param count  the number of moves.
+     * @param winner the side which won the game, or null for a draw.
+     * @throws IOException if a writer has failed.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if the export is closed.
+     */
+    public void add(long gameId, int[] moves, int count, Game.Side winner) throws IOException, InterruptedException {
+        synchronized (failures) {
+            if (closed) throw new IllegalStateException("the export is closed");
+            check();
+        }
+        int[] copy = new int[count];
+        System.arraycopy(moves, 0, copy, 0, count);
+        put(new Job(gameId, copy, count, winner));
+    }
+
+    /**
+     * Queues every game of an archive, with its number as its id.
+     *
+     * @param games the {@code GameArchive.Reader} of the games.
+     * @throws IOException if a writer has failed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void addGames(GameArchive.Reader games) throws IOException, InterruptedException {
+        int[] moves = new int[GameArchive.MAX_MOVES];
+        for (long game = 0; game < games.size(); game++) {
+            int count = games.readMoves(game, moves);
+            add(game, moves, count, games.getWinner(game));
+        }
+    }
+
+    /**
+     * Get the number of records written so far.
+     *
+     * @return the number of records.
+     */
+    public long getRecords() {
+        return records.get();
+    }
+
+    /**
+     * Writes the games queued, then closes the shards and writes their indexes.
+     * If interrupted while waiting, the writers are stopped and the shards
+     * they were writing are left without an index.
+     *
+     * @throws IOException if a writer has failed.
+     * @throws InterruptedIOException if interrupted while waiting for the
+     * writers; the interrupt status of the thread is set again.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (failures) {
+            if (closed) return;
+            closed = true;
+        }
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                put(END);
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread writer : writers) {
+                writer.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while closing the training export");
+        }
+        synchronized (failures) {
+            check();
+        }
+    }
+
+    // Waits for room in the queue, giving up if the writers have failed.
+    private void put(Job job) throws IOException, InterruptedException {
+        while (!queue.offer(job, 100, TimeUnit.MILLISECONDS)) {
+            synchronized (failures) {
+                check();
+            }
+        }
+    }
+
+    // Called with the failures locked.
+    private void check() throws IOException {
+        if (!failures.isEmpty()) {
+            Exception failure = failures.get(0);
+            throw failure instanceof IOException ? (IOException) failure : new IOException("a writer failed", failure);
+        }
+    }
+
+    /**
+     * Checks the shards of a directory against the checksums of their indexes.
+     *
+     * @param directory the directory of the shards.
+     * @return the number of records of all shards.
+     * @throws IOException if a shard cannot be read, or does not match its index.
+     */
+    public static long verify(Path directory) throws IOException {
+        long total = 0;
+        List<Path> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "shard-*.idx")) {
+            for (Path index : stream) {
+                indexes.add(index);
+            }
+        }
+        Collections.sort(indexes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+        CRC32 crc = new CRC32();
+        for (Path index : indexes) {
+            ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(index));
+            if (header.remaining() < INDEX_HEADER || header.getInt() != MAGIC || header.getInt() != RECORD_BYTES) {
+                throw new IOException("not an index of training records: " + index);
+            }
+            long count = header.getLong();
+            int checksum = header.getInt();
+            Path shard = index.resolveSibling(index.getFileName().toString().replace(".idx", ".bin"));
+            crc.reset();
+            try (FileChannel channel = FileChannel.open(shard, StandardOpenOption.READ)) {
+                if (channel.size() != count * RECORD_BYTES) {
+                    throw new IOException("the shard " + shard + " does not have " + count + " records");
+                }
+                buffer.clear();
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    crc.update(buffer);
+                    buffer.clear();
+                }
+            }
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("the checksum of the shard " + shard + " does not match");
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Reads the position of a record.
+     *
+     * @param record the buffer at the start of the record, which is moved past it.
+     * @param state  the {@code GameState} set to the position, with its move count.
+     */
+    public static void readPosition(ByteBuffer record, GameState state) {
+        ByteBuffer position = ByteBuffer.allocate(GameState.BYTES);
+        for (int i = 0; i < 15; i++) {
+            int b = record.get() & 0xFF;
+            position.put((byte) (b & 0x0F)).put((byte) (b >>> 4));
+        }
+        for (int i = 0; i < 3; i++) {
+            int b = record.get() & 0xFF;
+            position.put((byte) (b & 0x0F)).put((byte) (b >>> 4));
+        }
+        int side = record.get();
+        record.getShort();
+        record.get();
+        int ply = record.getShort() & 0xFFFF;
+        position.put((byte) (side == 0 ? 0 : GameState.LOWER_TO_MOVE)).putInt(ply);
+        position.flip();
+        state.readFrom(position);
+    }
+
+    /**
+     * This class holds a game waiting for a writer.
+     */
+    private static final class Job {
+        private final long gameId;
+        private final int[] moves;
+        private final int count;
+        private final Game.Side winner;
+
+        Job(long gameId, int[] moves, int count, Game.Side winner) {
+            this.gameId = gameId;
+            this.moves = moves;
+            this.count = count;
+            this.winner = winner;
+        }
+    }
+
+    /**
+     * This class implements a writer thread and its current shard.
+     */
+    private final class Writer implements Runnable {
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+        private final ByteBuffer position = ByteBuffer.allocate(GameState.BYTES);
+        private final CRC32 crc = new CRC32();
+        private final GameState state = new GameState();
+        private final Evaluator evaluator = new Evaluator();
+        private final Search search = scoreDepth > 0 ? new Search(evaluator) : null;
+        private ByteBuffer entries = ByteBuffer.allocate(64 * INDEX_ENTRY);
+        private FileChannel channel;
+        private int shard;
+        private int shardRecords;
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Job job = queue.take();
+                    if (job == END) break;
+                    write(job);
+                }
+                if (channel != null) finishShard();
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                synchronized (failures) {
+                    failures.add(e);
+                }
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // The first failure is the one reported.
+                    }
+                }
+            }
+        }
+
+        private void write(Job job) throws IOException {
+            state.setStart();
+            int first = -1;
+            for (int ply = 0; ply < job.count; ply++) {
+                if (channel == null || shardRecords == maxRecords) {
+                    if (channel != null) {
+                        if (first >= 0) entry(job.gameId, first, shardRecords - first);
+                        finishShard();
+                    }
+                    startShard();
+                    first = -1;
+                }
+                if (first < 0) first = shardRecords;
+                putRecord(ply, job.winner);
+                state.play(job.moves[ply]);
+            }
+            if (first >= 0) entry(job.gameId, first, shardRecords - first);
+            records.addAndGet(job.count);
+        }
+
+        private void putRecord(int ply, Game.Side winner) throws IOException {
+            if (!buffer.hasRemaining()) flush();
+            position.clear();
+            state.writeTo(position);
+            // The board and the hands, two nibbles per byte.
+            for (int i = 0; i < GameState.SQUARE_NUMBER + 2 * GameState.HAND_KIND_NUMBER; i += 2) {
+                buffer.put((byte) (position.get(i) | position.get(i + 1) << 4));
+            }
+            Game.Side side = state.getSideToMove();
+            int score = search == null ? evaluator.evaluate(state)
+                    : search.search(state, scoreDepth, Long.MAX_VALUE, Long.MAX_VALUE).getScore();
+            int result = winner == null ? 0 : winner == side ? 1 : -1;
+            buffer.put((byte) side.ordinal()).putShort((short) score).put((byte) result).putShort((short) ply);
+            shardRecords++;
+        }
+
+        private void entry(long gameId, int first, int count) {
+            if (entries.remaining() < INDEX_ENTRY) {
+                ByteBuffer larger = ByteBuffer.allocate(entries.capacity() * 2);
+                entries.flip();
+                entries = larger.put(entries);
+            }
+            entries.putLong(gameId).putInt(first).putInt(count);
+        }
+
+        private void startShard() throws IOException {
+            shard = nextShard.getAndIncrement();
+            channel = FileChannel.open(directory.resolve(String.format("shard-%05d.bin", shard)),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            shardRecords = 0;
+            crc.reset();
+            entries.clear();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        // Writes the rest of the shard, then its index, which tells that the shard is complete.
+        private void finishShard() throws IOException {
+            flush();
+            channel.force(false);
+            channel.close();
+            channel = null;
+            entries.flip();
+            ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER + entries.remaining());
+            index.putInt(MAGIC).putInt(RECORD_BYTES).putLong(shardRecords).putInt((int) crc.getValue()).put(entries);
+            index.flip();
+            try (FileChannel out = FileChannel.open(directory.resolve(String.format("shard-%05d.idx", shard)),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (index.hasRemaining()) {
+                    out.write(index);
+                }
+                out.force(false);
+            }
+        }
+    }
+}
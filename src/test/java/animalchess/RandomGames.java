@@ -0,0 +1,41 @@
+package animalchess;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Random games shared by the tests, played with one random legal move per ply.
+public final class RandomGames {
+
+    private RandomGames() {
+    }
+
+    // Plays a random game into the array, until it is full or the game is over; returns the number of moves.
+    public static int play(Random random, int[] game) {
+        GameState state = new GameState();
+        int[] legal = new int[GameState.MAX_MOVES];
+        int count = 0;
+        while (count < game.length && state.getWinner() == null) {
+            game[count] = legal[random.nextInt(state.generateMoves(legal))];
+            state.play(game[count++]);
+        }
+        return count;
+    }
+
+    // Plays a random game of at most maxPlies moves, returning exactly its moves.
+    public static int[] newGame(Random random, int maxPlies) {
+        int[] game = new int[maxPlies];
+        return Arrays.copyOf(game, play(random, game));
+    }
+
+    public static Game.Side winnerOf(int[] moves, int count) {
+        GameState state = new GameState();
+        for (int i = 0; i < count; i++) {
+            state.play(moves[i]);
+        }
+        return state.getWinner();
+    }
+
+    public static Game.Side winnerOf(int[] moves) {
+        return winnerOf(moves, moves.length);
+    }
+}
@@ -65,6 +65,99 @@ public class GameTest {
         assertTrue(p0Lion instanceof Lion);
     }
 
+    @Test
+    public void testIsLegalMatchesLegalMoves() {
+        // Every square reported by getLegalMoves() should be legal, and no other
+        for (int row = 0; row < Game.HEIGHT; row++) {
+            for (int col = 0; col < Game.WIDTH; col++) {
+                Square from = myGame.getSquare(row, col);
+                if (from.isEmptySquare()) continue;
+                List<Square> moves = from.getPiece().getLegalMoves();
+                for (int i = 0; i < Game.HEIGHT; i++) {
+                    for (int j = 0; j < Game.WIDTH; j++) {
+                        Square to = myGame.getSquare(i, j);
+                        assertEquals(moves.contains(to), myGame.isLegal(from, to));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIsLegalOtherGame() {
+        Game otherGame = new Game(p0, p1);
+        assertTrue(myGame.isLegal(myGame.getSquare(2, 2), myGame.getSquare(3, 2)));
+        assertFalse(myGame.isLegal(myGame.getSquare(2, 2), otherGame.getSquare(3, 2)));
+        assertFalse(myGame.isLegal(myGame.getSquare(1, 2), myGame.getSquare(2, 2)));
+    }
+
+    @Test
+    public void testIsLegalDrop() {
+        assertFalse(myGame.isLegalDrop(p0, PieceKind.CHICK, myGame.getSquare(1, 0)));
+        Chick chick = (Chick) myGame.getSquare(3, 3).getPiece();
+        chick.beCaptured(p0);
+        assertTrue(myGame.isLegalDrop(p0, PieceKind.CHICK, myGame.getSquare(1, 0)));
+        assertFalse(myGame.isLegalDrop(p0, PieceKind.CAT, myGame.getSquare(1, 0)));
+        assertFalse(myGame.isLegalDrop(p0, PieceKind.CHICK, myGame.getSquare(0, 0)));
+    }
+
+    @Test
+    public void testReset() {
+        Chick chick0r = (Chick) myGame.getSquare(2, 3).getPiece();
+        chick0r.move(myGame.getSquare(3, 3));
+        chick0r.move(myGame.getSquare(4, 3));
+        assertTrue(chick0r.getIsPromoted());
+        Piece lion1 = myGame.getSquare(5, 2).getPiece();
+        chick0r.move(lion1.getSquare());
+        assertEquals(p0, myGame.getWinner());
+
+        myGame.reset();
+        assertNull(myGame.getWinner());
+        assertFalse(p0.hasWon());
+        assertTrue(p0.getHand().isEmpty());
+        assertEquals(chick0r, myGame.getSquare(2, 3).getPiece());
+        assertFalse(chick0r.getIsPromoted());
+        assertEquals(lion1, myGame.getSquare(5, 2).getPiece());
+        Piece chick1r = myGame.getSquare(3, 3).getPiece();
+        assertEquals(p1, chick1r.getOwner());
+        assertEquals(myGame.getSquare(3, 3), chick1r.getSquare());
+        assertNull(myGame.getSquare(4, 3).getPiece());
+    }
+
+    @Test
+    public void testGamePoolReuse() {
+        GamePool pool = new GamePool(2);
+        Game game = pool.acquire(p0, p1);
+        game.getSquare(2, 2).getPiece().move(game.getSquare(3, 2));
+        pool.release(game);
+        assertEquals(1, pool.size());
+
+        Player p2 = new Player("Ozgur", 0);
+        Game reused = pool.acquire(p2, p1);
+        assertSame(game, reused);
+        assertEquals(0, pool.size());
+        assertEquals(p2, reused.getPlayer(0));
+        assertEquals(p2, reused.getSquare(2, 2).getPiece().getOwner());
+        assertTrue(reused.getPlayer(1).getHand().isEmpty());
+    }
+
+    @Test
+    public void testPlay() {
+        // P0's chick takes P1's chick, then P1's cat moves
+        myGame.play(Move.of(2 * Game.WIDTH + 3, 3 * Game.WIDTH + 3));
+        myGame.play(Move.of(5 * Game.WIDTH + 4, 4 * Game.WIDTH + 3));
+        // P0 drops the chick
+        myGame.play(Move.drop(PieceKind.CHICK, Game.WIDTH));
+        assertTrue(p0.getHand().isEmpty());
+        assertTrue(myGame.getSquare(1, 0).getPiece() instanceof Chick);
+        assertEquals(3, myGame.getMoveCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPlayNotYourTurn() {
+        myGame.play(Move.of(3 * Game.WIDTH + 2, 2 * Game.WIDTH + 2));
+    }
+
     @Test
     public void fullGame() {
         // This last test plays out a full game, from the beginning, only making
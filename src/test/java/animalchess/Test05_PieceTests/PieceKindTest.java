@@ -0,0 +1,52 @@
+package animalchess.Test05_PieceTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.*;
+
+public class PieceKindTest {
+
+    @Test
+    public void testPromotedAndDemoted() {
+        assertEquals(PieceKind.PROMOTED_CAT, PieceKind.CAT.getPromoted());
+        assertEquals(PieceKind.CHICK, PieceKind.PROMOTED_CHICK.getDemoted());
+        assertEquals(PieceKind.DOG, PieceKind.DOG.getPromoted());
+        assertTrue(PieceKind.CHICK.isPromotable());
+        assertFalse(PieceKind.LION.isPromotable());
+        assertTrue(PieceKind.PROMOTED_CAT.isPromoted());
+    }
+
+    @Test
+    public void testChickMask() {
+        // P0's chick at (2,2) heads downward, P1's heads upward
+        int square = 2 * Game.WIDTH + 2;
+        assertEquals(1 << (3 * Game.WIDTH + 2), PieceKind.CHICK.getMask(Game.Side.UPPER, square));
+        assertEquals(1 << (Game.WIDTH + 2), PieceKind.CHICK.getMask(Game.Side.LOWER, square));
+    }
+
+    @Test
+    public void testLionMaskCorner() {
+        // From a corner, the lion only has three squares
+        assertEquals(3, Integer.bitCount(PieceKind.LION.getMask(Game.Side.UPPER, 0)));
+        assertEquals(8, Integer.bitCount(PieceKind.LION.getMask(Game.Side.LOWER, 2 * Game.WIDTH + 2)));
+    }
+
+    @Test
+    public void testAfterMoveTo() {
+        assertEquals(PieceKind.PROMOTED_CHICK, PieceKind.CHICK.afterMoveTo(Game.Side.UPPER, 4));
+        assertEquals(PieceKind.CHICK, PieceKind.CHICK.afterMoveTo(Game.Side.UPPER, 3));
+        assertEquals(PieceKind.PROMOTED_CAT, PieceKind.CAT.afterMoveTo(Game.Side.LOWER, 1));
+        assertEquals(PieceKind.DOG, PieceKind.DOG.afterMoveTo(Game.Side.LOWER, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalMoveOfPromotablePiece() {
+        Player p0 = new Player("Michael", 0);
+        Player p1 = new Player("Ozgur", 1);
+        Game game = new Game(p0, p1);
+        // A chick cannot move sideways
+        game.getSquare(2, 1).getPiece().move(game.getSquare(2, 0));
+    }
+}
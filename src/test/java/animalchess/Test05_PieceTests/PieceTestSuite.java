@@ -8,6 +8,7 @@ import org.junit.runners.Suite;
             DogTest.class,
             CatTest.class,
             ChickTest.class,
-            LionTest.class})
+            LionTest.class,
+            PieceKindTest.class})
 public class PieceTestSuite { // nothing
 }
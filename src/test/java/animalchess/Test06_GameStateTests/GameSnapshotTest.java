@@ -0,0 +1,69 @@
+package animalchess.Test06_GameStateTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import animalchess.*;
+
+public class GameSnapshotTest {
+
+    private Game game;
+    private Player p0;
+    private Player p1;
+
+    @Before
+    public void setup() {
+        p0 = new Player("Michael", 0);
+        p1 = new Player("Ozgur", 1);
+        game = new Game(p0, p1);
+    }
+
+    @Test
+    public void testStartSnapshot() {
+        GameSnapshot snapshot = game.getSnapshot();
+        assertNotNull(snapshot);
+        assertEquals(new GameState(), snapshot.toGameState());
+        assertEquals(Game.Side.UPPER, snapshot.getSideToMove());
+    }
+
+    @Test
+    public void testPublishedAfterMove() {
+        GameSnapshot before = game.getSnapshot();
+        Chick chick0r = (Chick) game.getSquare(2, 3).getPiece();
+        chick0r.move(game.getSquare(3, 3));
+        GameSnapshot after = game.getSnapshot();
+
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(GameState.of(game), after.toGameState());
+        assertEquals(1, after.getHandCount(Game.Side.UPPER, PieceKind.CHICK));
+        assertEquals(Game.Side.LOWER, after.getSideToMove());
+
+        // The older snapshot still shows the start position
+        assertEquals(new GameState(), before.toGameState());
+        assertEquals(0, before.getHandCount(Game.Side.UPPER, PieceKind.CHICK));
+    }
+
+    @Test
+    public void testPublishedAfterDropAndWin() {
+        Chick chick0r = (Chick) game.getSquare(2, 3).getPiece();
+        chick0r.move(game.getSquare(3, 3));
+        p0.dropPiece(p0.getHand().get(0), game.getSquare(1, 0));
+        assertEquals(GameState.of(game), game.getSnapshot().toGameState());
+
+        chick0r.move(game.getSquare(4, 3));
+        chick0r.move(game.getSquare(5, 2));
+        assertEquals(Game.Side.UPPER, game.getSnapshot().getWinner());
+        assertEquals(GameState.encode(PieceKind.PROMOTED_CHICK, Game.Side.UPPER),
+                game.getSnapshot().getPiece(5 * Game.WIDTH + 2));
+    }
+
+    @Test
+    public void testSnapshotOfState() {
+        GameState state = GameState.of(game);
+        GameSnapshot snapshot = GameSnapshot.of(state, 7);
+        assertEquals(7, snapshot.getVersion());
+        assertEquals(state, snapshot.toGameState());
+    }
+}
@@ -0,0 +1,227 @@
+package animalchess.Test06_GameStateTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import animalchess.*;
+
+import java.util.Random;
+
+public class GameStateTest {
+
+    private Game game;
+    private Player p0;
+    private Player p1;
+
+    @Before
+    public void setup() {
+        p0 = new Player("Michael", 0);
+        p1 = new Player("Ozgur", 1);
+        game = new Game(p0, p1);
+    }
+
+    @Test
+    public void testStartPosition() {
+        GameState state = GameState.of(game);
+        assertEquals(new GameState(), state);
+        assertEquals(GameState.encode(PieceKind.LION, Game.Side.UPPER), state.getPiece(2));
+        assertEquals(GameState.encode(PieceKind.CHICK, Game.Side.LOWER), state.getPiece(3 * Game.WIDTH + 2));
+        assertEquals(0, state.getPiece(Game.WIDTH));
+        assertEquals(Game.Side.UPPER, state.getSideToMove());
+        assertNull(state.getWinner());
+    }
+
+    @Test
+    public void testCaptureAndDrop() {
+        Chick chick0r = (Chick) game.getSquare(2, 3).getPiece();
+        chick0r.move(game.getSquare(3, 3));
+        GameState state = GameState.of(game);
+        assertEquals(1, state.getHandCount(Game.Side.UPPER, PieceKind.CHICK));
+        assertEquals(1, state.getMoveCount());
+        assertEquals(Game.Side.LOWER, state.getSideToMove());
+
+        Piece captured = p0.getHand().get(0);
+        p0.dropPiece(captured, game.getSquare(1, 0));
+        state = GameState.of(game);
+        assertEquals(0, state.getHandCount(Game.Side.UPPER, PieceKind.CHICK));
+        assertEquals(GameState.encode(PieceKind.CHICK, Game.Side.UPPER), state.getPiece(Game.WIDTH));
+        assertEquals(2, state.getMoveCount());
+    }
+
+    @Test
+    public void testMaterialise() {
+        Chick chick0r = (Chick) game.getSquare(2, 3).getPiece();
+        chick0r.move(game.getSquare(3, 3));
+        chick0r.move(game.getSquare(4, 3));
+        GameState state = GameState.of(game);
+
+        Game copy = state.toGame(new Player("Copy 0", 0), new Player("Copy 1", 1));
+        assertEquals(state, GameState.of(copy));
+        Piece promoted = copy.getSquare(4, 3).getPiece();
+        assertTrue(promoted instanceof Chick);
+        assertTrue(((Chick) promoted).getIsPromoted());
+        assertEquals(1, copy.getPlayer(0).getHand().size());
+        assertNull(copy.getPlayer(0).getHand().get(0).getSquare());
+
+        // Reuse the first game for the position
+        game.reset();
+        state.copyTo(game);
+        assertEquals(state, GameState.of(game));
+        assertEquals(p0, game.getSquare(4, 3).getPiece().getOwner());
+    }
+
+    @Test
+    public void testMaterialiseWinner() {
+        Chick chick0r = (Chick) game.getSquare(2, 3).getPiece();
+        chick0r.move(game.getSquare(3, 3));
+        chick0r.move(game.getSquare(4, 3));
+        chick0r.move(game.getSquare(5, 2));
+        GameState state = GameState.of(game);
+        assertEquals(Game.Side.UPPER, state.getWinner());
+
+        Game copy = state.toGame(new Player("Copy 0", 0), new Player("Copy 1", 1));
+        assertEquals(copy.getPlayer(0), copy.getWinner());
+    }
+
+    @Test
+    public void testPool() {
+        GameStatePool pool = new GameStatePool(2);
+        int slot0 = pool.allocate();
+        int slot1 = pool.allocate();
+        assertNotEquals(slot0, slot1);
+        assertEquals(2, pool.size());
+
+        game.getSquare(2, 2).getPiece().move(game.getSquare(3, 2));
+        pool.store(slot1, GameState.of(game));
+        assertEquals(1, pool.getMoveCount(slot1));
+        assertEquals(0, pool.getMoveCount(slot0));
+
+        GameState loaded = new GameState();
+        pool.load(slot1, loaded);
+        assertEquals(GameState.of(game), loaded);
+
+        pool.free(slot0);
+        assertEquals(1, pool.size());
+        assertEquals(slot0, pool.allocate());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPoolDoubleFree() {
+        GameStatePool pool = new GameStatePool(2);
+        int slot = pool.allocate();
+        pool.free(slot);
+        pool.free(slot);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPoolFreeOutOfRange() {
+        new GameStatePool(2).free(2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPoolFull() {
+        GameStatePool pool = new GameStatePool(1);
+        pool.allocate();
+        pool.allocate();
+    }
+
+    @Test
+    public void testGenerateMovesStart() {
+        GameState state = new GameState();
+        int[] moves = new int[GameState.MAX_MOVES];
+        int count = state.generateMoves(moves);
+        int expected = 0;
+        for (int row = 0; row < Game.HEIGHT; row++) {
+            for (int col = 0; col < Game.WIDTH; col++) {
+                Piece piece = game.getSquare(row, col).getPiece();
+                if (piece != null && piece.getOwner() == p0) expected += piece.getLegalMoves().size();
+            }
+        }
+        assertEquals(expected, count);
+        for (int i = 0; i < count; i++) {
+            assertTrue(state.isLegal(moves[i]));
+        }
+    }
+
+    @Test
+    public void testPlayMatchesGame() {
+        // Random games played on both the object model and the compact state
+        Random random = new Random(42);
+        int[] moves = new int[GameState.MAX_MOVES];
+        for (int n = 0; n < 20; n++) {
+            game.reset();
+            GameState state = new GameState();
+            for (int ply = 0; ply < 200 && state.getWinner() == null; ply++) {
+                int count = state.generateMoves(moves);
+                int move = moves[random.nextInt(count)];
+
+                GameState before = new GameState();
+                before.copyFrom(state);
+                int undo = state.play(move);
+                game.play(move);
+                assertEquals(GameState.of(game), state);
+
+                state.undo(move, undo);
+                assertEquals(before, state);
+                state.play(move);
+            }
+        }
+    }
+
+    @Test
+    public void testIsLegal() {
+        GameState state = new GameState();
+        assertTrue(state.isLegal(Move.parse("c3c4")));
+        assertFalse(state.isLegal(Move.parse("c4c3")));  // not P1's turn
+        assertFalse(state.isLegal(Move.parse("c3b3")));  // chicks only go forward
+        assertFalse(state.isLegal(Move.parse("H*a2")));  // nothing in hand
+    }
+
+    @Test
+    public void testMoveText() {
+        assertEquals("c3c4", Move.toText(Move.of(2 * Game.WIDTH + 2, 3 * Game.WIDTH + 2)));
+        assertEquals("H*b2", Move.toText(Move.drop(PieceKind.CHICK, Game.WIDTH + 1)));
+        assertEquals(Move.drop(PieceKind.DOG, 0), Move.parse("D*a1"));
+        assertEquals(Move.of(0, 29), Move.parse("a1e6"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMoveTextBad() {
+        Move.parse("f1a1");
+    }
+
+    @Test
+    public void testMirror() {
+        assertEquals("e3e4", Move.toText(Move.mirror(Move.parse("a3a4"))));
+        assertEquals("H*d2", Move.toText(Move.mirror(Move.parse("H*b2"))));
+        assertEquals(Move.parse("c3c4"), Move.mirror(Move.parse("c3c4")));
+
+        // The start position is its own mirror.
+        GameState mirrored = new GameState();
+        mirrored.copyMirrored(new GameState());
+        assertEquals(new GameState(), mirrored);
+        assertEquals(Zobrist.hash(mirrored), Zobrist.mirroredHash(mirrored));
+
+        // A random game and its mirror stay mirrors of each other, move for move.
+        Random random = new Random(3);
+        GameState state = new GameState();
+        int[] moves = new int[GameState.MAX_MOVES];
+        int[] mirroredMoves = new int[GameState.MAX_MOVES];
+        while (state.getWinner() == null && state.getMoveCount() < 100) {
+            int count = state.generateMoves(moves);
+            assertEquals(count, mirrored.generateMoves(mirroredMoves));
+            int move = moves[random.nextInt(count)];
+            assertTrue(mirrored.isLegal(Move.mirror(move)));
+            state.play(move);
+            mirrored.play(Move.mirror(move));
+
+            GameState expected = new GameState();
+            expected.copyMirrored(state);
+            assertEquals(expected, mirrored);
+            assertEquals(Zobrist.hash(mirrored), Zobrist.mirroredHash(state));
+            assertEquals(Zobrist.canonicalHash(state), Zobrist.canonicalHash(mirrored));
+        }
+    }
+}
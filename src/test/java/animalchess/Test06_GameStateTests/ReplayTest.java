@@ -0,0 +1,69 @@
+package animalchess.Test06_GameStateTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.*;
+
+import java.util.Random;
+
+public class ReplayTest {
+
+    private static GameState positionAt(int[] game, int ply) {
+        GameState state = new GameState();
+        for (int i = 0; i < ply; i++) {
+            state.play(game[i]);
+        }
+        return state;
+    }
+
+    @Test
+    public void testSeek() {
+        Random random = new Random(1);
+        int[] game = new int[150];
+        for (int round = 0; round < 20; round++) {
+            int count = RandomGames.play(random, game);
+            Replay replay = new Replay(game, count, 1 + random.nextInt(20));
+            assertEquals(count, replay.getMoveCount());
+            Replay.Cursor cursor = replay.newCursor();
+            for (int i = 0; i < 30; i++) {
+                int ply = random.nextInt(count + 1);
+                cursor.seek(ply);
+                assertEquals(ply, cursor.getPly());
+                assertEquals(positionAt(game, ply), cursor.getState());
+            }
+            cursor.seek(count);
+            assertEquals(positionAt(game, count), cursor.getState());
+        }
+    }
+
+    @Test
+    public void testStep() {
+        int[] game = new int[100];
+        int count = RandomGames.play(new Random(2), game);
+        Replay.Cursor cursor = new Replay(game, count, 8).newCursor();
+
+        assertFalse(cursor.back());
+        assertEquals(new GameState(), cursor.getState());
+        for (int ply = 1; ply <= count; ply++) {
+            assertTrue(cursor.forward());
+            assertEquals(positionAt(game, ply), cursor.getState());
+        }
+        assertFalse(cursor.forward());
+        for (int ply = count - 1; ply >= 0; ply--) {
+            assertTrue(cursor.back());
+            assertEquals(positionAt(game, ply), cursor.getState());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalMove() {
+        new Replay(new int[]{Move.of(0, 29)}, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSuchPly() {
+        new Replay(new int[0], 0).newCursor().seek(1);
+    }
+}
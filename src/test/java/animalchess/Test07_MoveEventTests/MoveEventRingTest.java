@@ -0,0 +1,121 @@
+package animalchess.Test07_MoveEventTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import animalchess.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MoveEventRingTest {
+
+    private Game game;
+    private Player p0;
+    private Player p1;
+    private List<Long> received;
+    private MoveEventRing.Handler handler;
+
+    @Before
+    public void setup() {
+        p0 = new Player("Michael", 0);
+        p1 = new Player("Ozgur", 1);
+        game = new Game(p0, p1);
+        received = new ArrayList<>();
+        handler = (event, sequence, endOfBatch) -> received.add(event);
+    }
+
+    @Test
+    public void testMoveEvents() {
+        MoveEventRing.Reader reader = game.getMoveEvents().newReader();
+        Chick chick0r = (Chick) game.getSquare(2, 3).getPiece();
+        chick0r.move(game.getSquare(3, 3));
+        chick0r.move(game.getSquare(4, 3));
+
+        assertEquals(2, reader.poll(handler, 10));
+        int capture = MoveEventRing.moveOf(received.get(0));
+        assertEquals(1, MoveEventRing.moveCountOf(received.get(0)));
+        assertEquals(2 * Game.WIDTH + 3, Move.getFrom(capture));
+        assertEquals(3 * Game.WIDTH + 3, Move.getTo(capture));
+        assertEquals(PieceKind.CHICK, Move.getKind(capture));
+        assertEquals(PieceKind.CHICK, Move.getCaptured(capture));
+        assertEquals(Game.Side.UPPER, Move.getSide(capture));
+        assertFalse(Move.isPromotion(capture));
+
+        int promotion = MoveEventRing.moveOf(received.get(1));
+        assertTrue(Move.isPromotion(promotion));
+        assertNull(Move.getCaptured(promotion));
+
+        // Nothing new to read
+        assertEquals(0, reader.poll(handler, 10));
+    }
+
+    @Test
+    public void testDropAndGameEnd() {
+        MoveEventRing.Reader reader = game.getMoveEvents().newReader();
+        Chick chick0r = (Chick) game.getSquare(2, 3).getPiece();
+        chick0r.move(game.getSquare(3, 3));
+        p0.dropPiece(p0.getHand().get(0), game.getSquare(1, 0));
+        chick0r.move(game.getSquare(4, 3));
+        chick0r.move(game.getSquare(5, 2));
+
+        assertEquals(4, reader.poll(handler, 10));
+        int drop = MoveEventRing.moveOf(received.get(1));
+        assertTrue(Move.isDrop(drop));
+        assertEquals(PieceKind.CHICK, Move.getDropKind(drop));
+        assertEquals(Game.WIDTH, Move.getTo(drop));
+
+        int end = MoveEventRing.moveOf(received.get(3));
+        assertTrue(Move.isGameEnd(end));
+        assertEquals(PieceKind.LION, Move.getCaptured(end));
+    }
+
+    @Test
+    public void testResetEvents() {
+        MoveEventRing.Reader reader = game.getMoveEvents().newReader();
+        ((Chick) game.getSquare(2, 3).getPiece()).move(game.getSquare(3, 3));
+        game.reset();
+        ((Chick) game.getSquare(2, 1).getPiece()).move(game.getSquare(3, 1));
+        GameState state = GameState.of(game);
+        state.copyTo(game);
+
+        assertEquals(4, reader.poll(handler, 10));
+        assertFalse(MoveEventRing.isReset(received.get(0)));
+        assertTrue(MoveEventRing.isReset(received.get(1)));
+        assertEquals(0, MoveEventRing.moveCountOf(received.get(1)));
+        assertEquals(1, MoveEventRing.moveCountOf(received.get(2)));
+        assertEquals(2 * Game.WIDTH + 1, Move.getFrom(MoveEventRing.moveOf(received.get(2))));
+        // Loading a position restarts the game too.
+        assertTrue(MoveEventRing.isReset(received.get(3)));
+        assertEquals(1, MoveEventRing.moveCountOf(received.get(3)));
+    }
+
+    @Test
+    public void testBatchesAndLostEvents() {
+        MoveEventRing ring = new MoveEventRing(4);
+        MoveEventRing.Reader slow = ring.newReader();
+        MoveEventRing.Reader fast = ring.newReader();
+        for (int i = 1; i <= 2; i++) {
+            ring.publish(Move.of(i, i + 1), i);
+        }
+        assertEquals(1, fast.poll(handler, 1));
+        assertEquals(1, fast.poll(handler, 1));
+
+        for (int i = 3; i <= 6; i++) {
+            ring.publish(Move.of(i, i + 1), i);
+        }
+        // The slow reader has fallen a lap behind and lost the oldest events
+        received.clear();
+        assertEquals(3, slow.poll(handler, 10));
+        assertEquals(3, slow.getLost());
+        assertEquals(4, MoveEventRing.moveCountOf(received.get(0)));
+        assertEquals(0, slow.getBacklog());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityNotPowerOfTwo() {
+        new MoveEventRing(10);
+    }
+}
@@ -0,0 +1,141 @@
+package animalchess.Test08_ServerTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.server.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+
+public class GameServerTest {
+
+    private GameSessionManager manager;
+    private GameServer server;
+
+    @Before
+    public void setup() throws Exception {
+        manager = new GameSessionManager(Executors.newFixedThreadPool(2), 60_000);
+        server = new GameServer(new InetSocketAddress("127.0.0.1", 0), 2, manager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        manager.close();
+    }
+
+    private static String answer(String line, Game game) {
+        ByteBuffer buffer = EngineProtocol.handle(line, game);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testProtocol() {
+        Game game = new Game(new Player("Michael", 0), new Player("Ozgur", 1));
+        assertEquals("readyok\n", answer("isready", game));
+        assertEquals("", answer("position startpos moves d3d4 a6a5", game));
+        assertEquals(2, game.getMoveCount());
+        assertEquals("ok\n", answer("move d4d5", game));
+        assertTrue(answer("move d5d6", game).startsWith("error"));  // not P0's turn
+        assertTrue(answer("go depth 2", game).startsWith("bestmove "));
+        assertTrue(answer("dance", game).startsWith("error unknown command"));
+        assertEquals("error depth should be positive\n", answer("go depth 0", game));
+        assertEquals("error nodes should be positive\n", answer("go nodes -1", game));
+        assertEquals("error movetime should be positive\n", answer("go depth 2 movetime 0", game));
+        // The prebuilt answers are never used up
+        assertEquals("readyok\n", answer("isready", game));
+    }
+
+    @Test
+    public void testMultiPv() {
+        Game game = new Game(new Player("Michael", 0), new Player("Ozgur", 1));
+        String[] lines = answer("go depth 3 multipv 2", game).split("\n");
+        // The last iteration is always given, one info line per best move
+        assertEquals(lines.length - 1, lines.length / 2 * 2);
+        assertTrue(lines[lines.length - 3].startsWith("info depth 3 multipv 1 score cp "));
+        assertTrue(lines[lines.length - 2].startsWith("info depth 3 multipv 2 score cp "));
+        assertTrue(lines[lines.length - 2].contains(" hashfull "));
+        String best = lines[lines.length - 3].split(" pv ")[1].split(" ")[0];
+        assertEquals("bestmove " + best, lines[lines.length - 1]);
+        assertTrue(answer("go depth 2 multipv 0", game).startsWith("error"));
+        // Later searches are back to one line
+        assertTrue(answer("go depth 2", game).startsWith("bestmove "));
+    }
+
+    @Test
+    public void testOverSocket() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.setSoTimeout(10_000);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+            out.write("usi\nisready\nposition startpos moves d3d4\ngo depth 3\nmove c4c3\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertEquals("id name AnimalChess", in.readLine());
+            assertEquals("id author Yoochul Kim", in.readLine());
+            assertEquals("usiok", in.readLine());
+            assertEquals("readyok", in.readLine());
+            String bestMove = in.readLine();
+            assertTrue(bestMove.startsWith("bestmove "));
+            assertEquals("ok", in.readLine());
+
+            out.write("quit\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    public void testLineTooLong() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.setSoTimeout(10_000);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+            byte[] line = new byte[GameServer.READ_BUFFER_SIZE];
+            Arrays.fill(line, (byte) 'x');
+            out.write("go depth 4\n".getBytes(StandardCharsets.US_ASCII));
+            out.write(line);
+            out.flush();
+            // The error comes after the answer to the slow command before it, only once.
+            assertTrue(in.readLine().startsWith("bestmove "));
+            assertEquals("error line too long", in.readLine());
+            assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    public void testManyConnections() throws Exception {
+        Socket[] sockets = new Socket[50];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = new Socket("127.0.0.1", server.getPort());
+                sockets[i].setSoTimeout(10_000);
+                sockets[i].getOutputStream().write("move c3c4\nisready\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            for (Socket socket : sockets) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                assertEquals("ok", in.readLine());
+                assertEquals("readyok", in.readLine());
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) socket.close();
+            }
+        }
+    }
+}
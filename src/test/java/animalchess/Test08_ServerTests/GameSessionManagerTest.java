@@ -0,0 +1,117 @@
+package animalchess.Test08_ServerTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.server.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+public class GameSessionManagerTest {
+
+    private GameSessionManager manager;
+
+    @Before
+    public void setup() {
+        manager = new GameSessionManager(Executors.newFixedThreadPool(4), 60_000);
+    }
+
+    @After
+    public void tearDown() {
+        manager.close();
+    }
+
+    private static int move(int fromRow, int fromCol, int toRow, int toCol) {
+        return Move.of(fromRow * Game.WIDTH + fromCol, toRow * Game.WIDTH + toCol);
+    }
+
+    @Test
+    public void testSubmitMoves() throws Exception {
+        GameSession session = manager.open();
+        int played = manager.submitMoves(session.getId(),
+                move(2, 3, 3, 3),   // P0's chick takes P1's chick
+                move(5, 4, 4, 3),   // P1's cat
+                move(0, 2, 1, 2)).get();  // P0's lion
+        assertEquals(3, played);
+        assertEquals(3, session.getSnapshot().getMoveCount());
+        assertEquals(1, session.getSnapshot().getHandCount(Game.Side.UPPER, PieceKind.CHICK));
+    }
+
+    @Test
+    public void testTurnsAreTracked() throws Exception {
+        GameSession session = manager.open();
+        // P1 cannot move first, so nothing is played
+        assertEquals(0, (int) manager.submitMoves(session.getId(), move(3, 2, 2, 2)).get());
+        // The batch stops at P0 moving twice
+        assertEquals(1, (int) manager.submitMoves(session.getId(), move(2, 2, 3, 2), move(2, 1, 3, 1)).get());
+    }
+
+    @Test
+    public void testAfterShutdown() throws Exception {
+        GameSession session = manager.open();
+        manager.close();
+        try {
+            session.ask(Game::getMoveCount).get();
+            fail("a session of a closed manager should not run messages");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // Closing it on the way out does not throw.
+        assertTrue(manager.close(session.getId()));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testUnknownSession() throws Exception {
+        manager.submitMoves(12345, move(2, 3, 3, 3)).get();
+    }
+
+    @Test
+    public void testManySessionsInParallel() throws Exception {
+        List<GameSession> sessions = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            GameSession session = manager.open();
+            sessions.add(session);
+            results.add(session.submitMoves(new int[]{move(2, 2, 3, 2)}, 0, 1));
+            results.add(session.submitMoves(new int[]{move(3, 1, 2, 1)}, 0, 1));
+        }
+        for (CompletableFuture<Integer> result : results) {
+            assertEquals(1, (int) result.get());
+        }
+        for (GameSession session : sessions) {
+            assertEquals(2, session.getSnapshot().getMoveCount());
+        }
+        assertEquals(100, manager.size());
+    }
+
+    @Test
+    public void testCloseAndEvict() throws Exception {
+        GameSession session = manager.open();
+        assertTrue(manager.close(session.getId()));
+        assertNull(manager.get(session.getId()));
+        try {
+            session.ask(Game::getMoveCount).get();
+            fail("a closed session should not run any task");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        GameSessionManager quick = new GameSessionManager(Executors.newSingleThreadExecutor(), 1);
+        try {
+            GameSession idle = quick.open();
+            Thread.sleep(20);
+            quick.evictIdle();
+            assertNull(quick.get(idle.getId()));
+        } finally {
+            quick.close();
+        }
+    }
+}
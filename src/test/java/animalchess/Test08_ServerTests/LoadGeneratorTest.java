@@ -0,0 +1,62 @@
+package animalchess.Test08_ServerTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.server.*;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(1_000_000, histogram.getMax());
+        // About two significant digits are kept
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.02);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.02);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testHistogramAdd() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(20);
+        b.record(30);
+        a.add(b);
+        assertEquals(3, a.getTotalCount());
+        assertEquals(30, a.getMax());
+        assertEquals(20, a.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        try (GameSessionManager manager = new GameSessionManager(Executors.newFixedThreadPool(2), 60_000);
+             GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0), 1, manager)) {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+            LoadGenerator.Report report = new LoadGenerator(address, 4, 2, 0, 7).run();
+            assertEquals(8, report.getGames());
+            assertTrue(report.getLatencies().getTotalCount() > 8);
+            assertTrue(report.getMovesPerSecond() > 0);
+            // The clients are gone at the end of the run, but what they allocated is counted.
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+                assertTrue(report.getAllocatedBytesPerSecond() > 0);
+            }
+
+            LoadGenerator.Report engine = new LoadGenerator(address, 2, 1, 1, 7).run();
+            assertEquals(2, engine.getGames());
+            assertTrue(engine.toString().contains("p99.9"));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package animalchess.Test09_EngineTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.engine.*;
+import animalchess.server.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AnalysisCacheTest {
+
+    @Test
+    public void testGetAndPut() {
+        AnalysisCache cache = new AnalysisCache(100);
+        assertNull(cache.get(42, 1));
+        cache.put(42, new SearchResult(Move.of(7, 12), -250, 3, 1000));
+
+        SearchResult result = cache.get(42, 3);
+        assertEquals(Move.of(7, 12), result.getBestMove());
+        assertEquals(-250, result.getScore());
+        assertEquals(3, result.getDepth());
+        assertNotNull(cache.get(42, 1));
+        assertNull(cache.get(42, 4));
+
+        // A shallower result does not replace a deeper one.
+        cache.put(42, new SearchResult(Move.of(7, 2), 10, 2, 10));
+        assertEquals(Move.of(7, 12), cache.get(42, 1).getBestMove());
+        cache.put(42, new SearchResult(Move.of(7, 2), Evaluator.WIN, 5, 10));
+        assertEquals(Evaluator.WIN, cache.get(42, 5).getScore());
+
+        assertEquals(1, cache.size());
+        assertEquals(4, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testClockEviction() {
+        AnalysisCache cache = new AnalysisCache(160);
+        Random random = new Random(1);
+        long[] hot = new long[20];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = random.nextLong();
+            cache.put(hot[i], new SearchResult(i, i, 1, 0));
+        }
+        for (int i = 0; i < 5000; i++) {
+            cache.put(random.nextLong(), new SearchResult(0, 0, 1, 0));
+            // The hot entries are used all the time, so they stay.
+            long hash = hot[i % hot.length];
+            assertNotNull(cache.get(hash, 1));
+            assertEquals(i % hot.length, cache.get(hash, 1).getBestMove());
+        }
+        assertTrue(cache.size() <= 160);
+        assertTrue(cache.getEvictions() >= 5000 + hot.length - 160);
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        AnalysisCache cache = new AnalysisCache(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 50_000; i++) {
+                    long hash = random.nextInt(3000) * 0x9E3779B97F4A7C15L;
+                    SearchResult result = cache.get(hash, 1);
+                    if (result == null) {
+                        cache.put(hash, new SearchResult((int) hash, (short) (hash >>> 40), 1, 0));
+                    } else {
+                        // Never an answer of another position.
+                        assertEquals((int) hash, result.getBestMove());
+                        assertEquals((short) (hash >>> 40), result.getScore());
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(cache.size() <= 1000);
+        assertEquals(200_000, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    public void testProtocolUsesCache() {
+        Game game = new Game(new Player("Alice", 0), new Player("Bob", 1));
+        AnalysisCache cache = EngineProtocol.getCache();
+        String first = StandardCharsets.US_ASCII.decode(EngineProtocol.handle("go depth 3", game)).toString();
+        long hits = cache.getHits();
+        String second = StandardCharsets.US_ASCII.decode(EngineProtocol.handle("go depth 2", game)).toString();
+        assertEquals(hits + 1, cache.getHits());
+        assertTrue(first.startsWith("bestmove "));
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void testMirroredPositionsShareEntry() {
+        AnalysisCache cache = new AnalysisCache(100);
+        GameState state = new GameState();
+        state.play(Move.parse("b3b4"));
+        GameState mirrored = new GameState();
+        mirrored.copyMirrored(state);
+
+        Search search = new Search(new Evaluator());
+        SearchResult result = search.search(state, 3, Long.MAX_VALUE, Long.MAX_VALUE);
+        cache.put(state, result);
+        assertEquals(1, cache.size());
+
+        SearchResult hit = cache.get(mirrored, 3);
+        assertEquals(Move.mirror(result.getBestMove()), hit.getBestMove());
+        assertEquals(result.getScore(), hit.getScore());
+        assertTrue(mirrored.isLegal(hit.getBestMove()));
+        assertEquals(result.getBestMove(), cache.get(state, 3).getBestMove());
+
+        cache.put(mirrored, search.search(mirrored, 3, Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals(1, cache.size());
+    }
+}
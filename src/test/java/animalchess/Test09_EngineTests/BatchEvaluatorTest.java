@@ -0,0 +1,91 @@
+package animalchess.Test09_EngineTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.engine.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class BatchEvaluatorTest {
+    private static final int POSITIONS = 3 * BatchEvaluator.MIN_SPLIT + 17;
+
+    private final GameState[] states = new GameState[POSITIONS];
+    private final byte[] boards = new byte[POSITIONS * BatchEvaluator.BOARD_BYTES];
+    private final byte[] hands = new byte[POSITIONS * BatchEvaluator.HAND_BYTES];
+    private final byte[] flags = new byte[POSITIONS];
+
+    // Random positions, laid out as a struct of arrays.
+    public BatchEvaluatorTest() {
+        Random random = new Random(3);
+        int[] legal = new int[GameState.MAX_MOVES];
+        GameState state = new GameState();
+        ByteBuffer buffer = ByteBuffer.allocate(GameState.BYTES);
+        for (int i = 0; i < POSITIONS; i++) {
+            int count = state.generateMoves(legal);
+            if (count == 0 || state.getMoveCount() > 80) {
+                state.setStart();
+                count = state.generateMoves(legal);
+            }
+            state.play(legal[random.nextInt(count)]);
+            states[i] = new GameState();
+            states[i].copyFrom(state);
+
+            buffer.clear();
+            state.writeTo(buffer);
+            buffer.flip();
+            buffer.get(boards, i * BatchEvaluator.BOARD_BYTES, BatchEvaluator.BOARD_BYTES);
+            buffer.get(hands, i * BatchEvaluator.HAND_BYTES, BatchEvaluator.HAND_BYTES);
+            flags[i] = buffer.get();
+        }
+    }
+
+    @Test
+    public void testSameScoresAsEvaluator() {
+        Evaluator evaluator = new Evaluator();
+        int[] scores = new int[POSITIONS];
+        new BatchEvaluator(evaluator).evaluate(boards, hands, flags, 0, POSITIONS, scores);
+        for (int i = 0; i < POSITIONS; i++) {
+            assertEquals(evaluator.evaluate(states[i]), scores[i]);
+        }
+    }
+
+    @Test
+    public void testOtherWeights() {
+        int[] weights = new int[Evaluator.WEIGHT_NUMBER];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 7 * i - 20;
+        }
+        Evaluator evaluator = new Evaluator(weights);
+        int[] scores = new int[POSITIONS];
+        new BatchEvaluator(evaluator).evaluate(boards, hands, flags, 10, 200, scores);
+        for (int i = 0; i < POSITIONS; i++) {
+            assertEquals(i < 10 || i >= 200 ? 0 : evaluator.evaluate(states[i]), scores[i]);
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        Evaluator evaluator = new Evaluator();
+        BatchEvaluator batch = new BatchEvaluator(evaluator);
+        int[] expected = new int[POSITIONS];
+        batch.evaluate(boards, hands, flags, 0, POSITIONS, expected);
+        int[] scores = new int[POSITIONS];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            batch.evaluate(boards, hands, flags, POSITIONS, scores, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals(expected, scores);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortArrays() {
+        new BatchEvaluator(new Evaluator()).evaluate(boards, hands, flags, 0, POSITIONS + 1, new int[POSITIONS + 1]);
+    }
+}
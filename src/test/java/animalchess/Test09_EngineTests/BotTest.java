@@ -0,0 +1,114 @@
+package animalchess.Test09_EngineTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.engine.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BotTest {
+
+    private static Game newGame() {
+        return new Game(new Player("Michael", 0), new Player("Ozgur", 1));
+    }
+
+    // Plays until the end or the max number of moves, and returns the winner, if any.
+    private static Game.Side play(Bot upper, Bot lower, int maxMoves, List<Integer> moves) {
+        Game game = newGame();
+        while (game.getWinner() == null && game.getMoveCount() < maxMoves) {
+            Bot bot = game.getSideToMove() == Game.Side.UPPER ? upper : lower;
+            int move = bot.play(game);
+            if (moves != null) moves.add(move);
+        }
+        return game.getWinner() == null ? null : game.getWinner().getSide();
+    }
+
+    @Test
+    public void testEveryLevelPlays() {
+        for (BotLevel level : new BotLevel[]{BotLevel.RANDOM, BotLevel.BEGINNER, BotLevel.CASUAL, BotLevel.CLUB}) {
+            Game game = newGame();
+            Bot bot = new Bot(level, 1);
+            for (int i = 0; i < 10 && game.getWinner() == null; i++) {
+                GameState before = GameState.of(game);
+                int move = bot.play(game);
+                assertTrue(level.toString(), before.isLegal(move));
+                assertEquals(i + 1, game.getMoveCount());
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedSameGame() {
+        List<Integer> first = new ArrayList<>();
+        List<Integer> second = new ArrayList<>();
+        play(new Bot(BotLevel.BEGINNER, 5), new Bot(BotLevel.CASUAL, 6), 60, first);
+        play(new Bot(BotLevel.BEGINNER, 5), new Bot(BotLevel.CASUAL, 6), 60, second);
+        assertEquals(first, second);
+
+        List<Integer> other = new ArrayList<>();
+        play(new Bot(BotLevel.BEGINNER, 7), new Bot(BotLevel.CASUAL, 6), 60, other);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    public void testStrongerLevelWins() {
+        int wins = 0;
+        for (int seed = 0; seed < 6; seed++) {
+            Bot club = new Bot(BotLevel.CLUB, seed);
+            Bot random = new Bot(BotLevel.RANDOM, seed);
+            Game.Side clubSide = seed % 2 == 0 ? Game.Side.UPPER : Game.Side.LOWER;
+            Game.Side winner = clubSide == Game.Side.UPPER ? play(club, random, 200, null) : play(random, club, 200, null);
+            if (winner == clubSide) wins++;
+        }
+        assertEquals(6, wins);
+    }
+
+    @Test
+    public void testTakesLion() {
+        Game game = newGame();
+        for (String move : new String[]{"d3d4", "a6a5", "d4d5", "a5a4"}) {
+            game.play(Move.parse(move));
+        }
+        assertEquals("d5c6", Move.toText(new Bot(BotLevel.RANDOM, 3).play(game)));
+        assertEquals(Game.Side.UPPER, game.getWinner().getSide());
+        try {
+            new Bot(BotLevel.RANDOM, 3).play(game);
+            fail();
+        } catch (IllegalStateException e) {
+            // the game is over
+        }
+    }
+
+    @Test
+    public void testSchedulerDegradesStrength() {
+        // About one master move per hour
+        BotScheduler scheduler = new BotScheduler(500, 1_000);
+        Bot bot = new Bot(BotLevel.MASTER, 1, scheduler);
+        Game game = newGame();
+        long start = System.nanoTime();
+        for (int i = 0; i < 20 && game.getWinner() == null; i++) {
+            GameState before = GameState.of(game);
+            assertTrue(before.isLegal(bot.play(game)));
+        }
+        // The moves are not late, only weaker
+        assertTrue(System.nanoTime() - start < 2_000_000_000L);
+        assertTrue(scheduler.getGranted() <= 1_000 + 1_000);
+        assertTrue(scheduler.getCut() > 10 * BotLevel.MASTER.getMaxNodes());
+    }
+
+    @Test
+    public void testSchedulerRefills() throws Exception {
+        BotScheduler scheduler = new BotScheduler(100_000, 1_000);
+        assertEquals(1_000, scheduler.acquire(5_000));
+        assertEquals(4_000, scheduler.getCut());
+        scheduler.release(400);
+        assertEquals(400, scheduler.acquire(400));
+        Thread.sleep(20);
+        assertEquals(1_000, scheduler.acquire(1_000));
+        assertEquals(2_000, scheduler.getGranted());
+    }
+}
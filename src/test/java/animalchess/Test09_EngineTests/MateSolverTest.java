@@ -0,0 +1,121 @@
+package animalchess.Test09_EngineTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.engine.*;
+
+import java.util.Random;
+
+public class MateSolverTest {
+
+    private Game game;
+    private MateSolver solver;
+
+    @Before
+    public void setup() {
+        game = new Game(new Player("Michael", 0), new Player("Ozgur", 1));
+        solver = new MateSolver(1 << 16);
+    }
+
+    @Test
+    public void testCapturesLion() {
+        for (String move : new String[]{"d3d4", "a6a5", "d4d5", "a5a4"}) {
+            game.play(Move.parse(move));
+        }
+        assertEquals(MateSolver.PROVEN, solver.solve(game, Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals("d5c6", Move.toText(solver.getBestMove()));
+    }
+
+    @Test
+    public void testGameOver() {
+        for (String move : new String[]{"d3d4", "a6a5", "d4d5", "a5a4", "d5c6"}) {
+            game.play(Move.parse(move));
+        }
+        assertEquals(MateSolver.DISPROVEN, solver.solve(game, Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals(SearchResult.NO_MOVE, solver.getBestMove());
+    }
+
+    @Test
+    public void testStartPosition() {
+        GameState state = GameState.of(game);
+        assertEquals(MateSolver.DISPROVEN, solver.solve(state, MateSolver.MAX_PLY, Long.MAX_VALUE, Long.MAX_VALUE));
+        // The position is left as it was
+        assertEquals(GameState.of(game), state);
+    }
+
+    @Test
+    public void testNodeLimit() {
+        Random random = new Random(3);
+        GameState state = new GameState();
+        int[] moves = new int[GameState.MAX_MOVES];
+        // Plays until a position takes more than a hundred nodes to solve.
+        while (state.getWinner() == null
+                && (solver.solve(state, MateSolver.MAX_PLY, Long.MAX_VALUE, Long.MAX_VALUE) == MateSolver.UNKNOWN
+                || solver.getNodes() <= 100)) {
+            state.play(moves[random.nextInt(state.generateMoves(moves))]);
+        }
+        assertNull(state.getWinner());
+
+        GameState copy = new GameState();
+        copy.copyFrom(state);
+        assertEquals(MateSolver.UNKNOWN, solver.solve(state, MateSolver.MAX_PLY, 50, Long.MAX_VALUE));
+        assertTrue(solver.getNodes() <= 50);
+        assertEquals(SearchResult.NO_MOVE, solver.getBestMove());
+        // The position is left as it was
+        assertEquals(copy, state);
+    }
+
+    @Test
+    public void testAgreesWithSearch() {
+        Random random = new Random(7);
+        Search search = new Search(new Evaluator());
+        GameState state = new GameState();
+        int[] moves = new int[GameState.MAX_MOVES];
+        int[] replies = new int[GameState.MAX_MOVES];
+        int deepProofs = 0;
+
+        for (int g = 0; g < 30; g++) {
+            state.setStart();
+            for (int ply = 0; ply < 60 && state.getWinner() == null; ply++) {
+                int status = solver.solve(state, MateSolver.MAX_PLY, 50_000, Long.MAX_VALUE);
+                SearchResult result = search.search(state, 3, Long.MAX_VALUE, Long.MAX_VALUE);
+                if (result.getScore() >= Evaluator.WIN - 3) {
+                    // A win within three plies is a win by a threat.
+                    assertEquals(MateSolver.PROVEN, status);
+                }
+                if (status == MateSolver.PROVEN) {
+                    if (result.getScore() != Evaluator.WIN - 1) deepProofs++;
+                    assertProven(state, replies);
+                }
+                int count = state.generateMoves(moves);
+                state.play(moves[random.nextInt(count)]);
+            }
+        }
+        assertTrue(deepProofs > 0);
+    }
+
+    // Checks that the best move leaves every reply of the defender proven.
+    private void assertProven(GameState state, int[] replies) {
+        int move = solver.getBestMove();
+        assertTrue(state.isLegal(move));
+        GameState after = new GameState();
+        after.copyFrom(state);
+        after.play(move);
+        if (after.getWinner() != null) {
+            assertEquals(state.getSideToMove(), after.getWinner());
+            return;
+        }
+        MateSolver child = new MateSolver(1 << 16);
+        int count = after.generateMoves(replies);
+        for (int i = 0; i < count; i++) {
+            int undo = after.play(replies[i]);
+            assertEquals(Move.toText(replies[i]), MateSolver.PROVEN,
+                    child.solve(after, MateSolver.MAX_PLY, 1_000_000, Long.MAX_VALUE));
+            after.undo(replies[i], undo);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package animalchess.Test09_EngineTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.engine.*;
+
+public class SearchPoolTest {
+
+    @Test
+    public void testReuse() {
+        SearchPool pool = new SearchPool(1);
+        Search first = pool.acquire();
+        Search second = pool.acquire();
+        assertNotSame(first, second);
+        pool.release(first);
+        // The pool is full, so this one is dropped
+        pool.release(second);
+        assertEquals(1, pool.size());
+        assertSame(first, pool.acquire());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testReleasedWithOneLine() {
+        SearchPool pool = new SearchPool(1);
+        Search search = pool.acquire();
+        search.setMultiPv(3);
+        search.setListener(info -> fail("a released search should not keep its listener"), 0);
+        pool.release(search);
+
+        search = pool.acquire();
+        search.search(new GameState(), 2, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(1, search.getInfo().getLineCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacity() {
+        new SearchPool(0);
+    }
+}
@@ -0,0 +1,128 @@
+package animalchess.Test09_EngineTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.engine.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SearchTest {
+
+    private Game game;
+    private Search search;
+
+    @Before
+    public void setup() {
+        game = new Game(new Player("Michael", 0), new Player("Ozgur", 1));
+        search = new Search(new Evaluator());
+    }
+
+    @Test
+    public void testStartPosition() {
+        GameState state = GameState.of(game);
+        SearchResult result = search.search(state, 4, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(4, result.getDepth());
+        assertTrue(state.isLegal(result.getBestMove()));
+        assertTrue(result.getNodes() > 0);
+        // The position is left as it was
+        assertEquals(GameState.of(game), state);
+    }
+
+    @Test
+    public void testCapturesLion() {
+        // P0's chick reaches (4,3) and promotes, then it can take P1's lion
+        game.play(Move.parse("d3d4"));
+        game.play(Move.parse("a6a5"));
+        game.play(Move.parse("d4d5"));
+        game.play(Move.parse("a5a4"));
+        SearchResult result = search.search(GameState.of(game), 3, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals("d5c6", Move.toText(result.getBestMove()));
+        assertEquals(Evaluator.WIN - 1, result.getScore());
+    }
+
+    @Test
+    public void testNodeLimit() {
+        SearchResult result = search.search(GameState.of(game), Search.MAX_PLY, 5000, Long.MAX_VALUE);
+        assertTrue(result.getNodes() <= 5000);
+        assertNotEquals(SearchResult.NO_MOVE, result.getBestMove());
+    }
+
+    @Test
+    public void testGameOver() {
+        for (String move : new String[]{"d3d4", "a6a5", "d4d5", "a5a4", "d5c6"}) {
+            game.play(Move.parse(move));
+        }
+        SearchResult result = search.search(GameState.of(game), 3, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(SearchResult.NO_MOVE, result.getBestMove());
+    }
+
+    @Test
+    public void testMultiPv() {
+        GameState state = GameState.of(game);
+        SearchResult single = search.search(state, 4, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        search.setMultiPv(3);
+        SearchResult result = search.search(game, 4, Long.MAX_VALUE, Long.MAX_VALUE);
+        SearchInfo info = search.getInfo();
+        assertEquals(4, info.getDepth());
+        assertEquals(3, info.getLineCount());
+        assertEquals(single.getScore(), result.getScore());
+        assertEquals(result.getBestMove(), info.getMove(0, 0));
+        for (int line = 0; line < 3; line++) {
+            if (line > 0) {
+                assertTrue(info.getScore(line - 1) >= info.getScore(line));
+                assertNotEquals(info.getMove(line - 1, 0), info.getMove(line, 0));
+            }
+            // Each principal variation is a line of legal moves
+            GameState copy = GameState.of(game);
+            for (int i = 0; i < info.getLength(line); i++) {
+                assertTrue(copy.isLegal(info.getMove(line, i)));
+                copy.play(info.getMove(line, i));
+            }
+        }
+        // The score of the second line is the score of its move alone
+        int score = info.getScore(1);
+        state.play(info.getMove(1, 0));
+        SearchResult second = search.search(state, 3, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(score, -second.getScore());
+    }
+
+    @Test
+    public void testListener() {
+        List<Integer> depths = new ArrayList<>();
+        search.setListener(info -> depths.add(info.getDepth()), 0);
+        search.search(game, 4, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(Arrays.asList(1, 2, 3, 4), depths);
+
+        // Throttled, the first and the last iterations are given
+        depths.clear();
+        search.setListener(info -> depths.add(info.getDepth()), Long.MAX_VALUE / 2);
+        search.search(game, 4, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(Arrays.asList(1, 4), depths);
+    }
+
+    @Test
+    public void testStopFromAnotherThread() throws Exception {
+        search.setMultiPv(2);
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            search.stop();
+        });
+        stopper.start();
+        SearchResult result = search.search(game, Search.MAX_PLY, Long.MAX_VALUE, Long.MAX_VALUE);
+        stopper.join();
+        assertTrue(result.getDepth() > 0);
+        assertEquals(result.getDepth(), search.getInfo().getDepth());
+        assertEquals(result.getBestMove(), search.getInfo().getMove(0, 0));
+    }
+}
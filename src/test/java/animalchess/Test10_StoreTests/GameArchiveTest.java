@@ -0,0 +1,111 @@
+package animalchess.Test10_StoreTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import animalchess.*;
+import animalchess.store.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class GameArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndRead() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("archive");
+        Random random = new Random(1);
+        int[][] games = new int[50][];
+        try (GameArchive archive = new GameArchive(directory)) {
+            for (int i = 0; i < games.length; i++) {
+                games[i] = RandomGames.newGame(random, 1 + random.nextInt(120));
+                assertEquals(i, archive.append(games[i], games[i].length, RandomGames.winnerOf(games[i])));
+            }
+            assertEquals(games.length, archive.size());
+        }
+
+        int[] moves = new int[GameArchive.MAX_MOVES];
+        try (GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            assertEquals(games.length, reader.size());
+            for (int i = 0; i < games.length; i++) {
+                int count = reader.readMoves(i, moves);
+                assertEquals(games[i].length, count);
+                assertEquals(games[i].length, reader.getMoveCount(i));
+                for (int ply = 0; ply < count; ply++) {
+                    assertEquals(Move.toText(games[i][ply]), Move.toText(moves[ply]));
+                    assertEquals(moves[ply], reader.getMove(i, ply));
+                }
+                assertEquals(RandomGames.winnerOf(games[i]), reader.getWinner(i));
+                ByteBuffer record = reader.getRecord(i);
+                assertEquals(3 + (count * 3 + 1) / 2, record.remaining());
+                assertTrue(record.isReadOnly());
+            }
+        }
+    }
+
+    @Test
+    public void testAppendWhileReading() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("archive");
+        Random random = new Random(2);
+        try (GameArchive archive = new GameArchive(directory);
+             GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            assertEquals(0, reader.size());
+            int[] first = RandomGames.newGame(random, 40);
+            archive.append(first, first.length, null);
+            assertEquals(0, reader.size());
+            assertEquals(1, reader.refresh());
+
+            int[] second = RandomGames.newGame(random, 41);
+            archive.append(second, second.length, null);
+            assertEquals(first.length, reader.getMoveCount(0));
+            assertEquals(2, reader.refresh());
+            assertEquals(second.length, reader.getMoveCount(1));
+            assertEquals(second[40] & Move.MOVE_MASK, reader.getMove(1, 40));
+        }
+    }
+
+    @Test
+    public void testTornAppend() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("archive");
+        int[] game = RandomGames.newGame(new Random(3), 30);
+        try (GameArchive archive = new GameArchive(directory)) {
+            archive.append(game, game.length, null);
+            archive.append(game, game.length, null);
+        }
+        // The data of the second game is cut short by a crash, after its offset was written.
+        try (FileChannel data = FileChannel.open(directory.resolve(GameArchive.DATA_FILE), StandardOpenOption.WRITE)) {
+            data.truncate(data.size() - 5);
+        }
+        try (FileChannel index = FileChannel.open(directory.resolve(GameArchive.INDEX_FILE), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            index.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        }
+
+        try (GameArchive archive = new GameArchive(directory)) {
+            assertEquals(1, archive.size());
+            assertEquals(1, archive.append(game, game.length, null));
+        }
+        try (GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            assertEquals(2, reader.size());
+            assertEquals(game.length, reader.getMoveCount(1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoGame() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("archive");
+        new GameArchive(directory).close();
+        try (GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            reader.getMoveCount(0);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package animalchess.Test10_StoreTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.engine.*;
+import animalchess.store.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class MoveCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        MoveCodec codec = new MoveCodec();
+        Random random = new Random(1);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        int[] game = new int[200];
+        int[] decoded = new int[200];
+        long moves = 0;
+        long bytes = 0;
+
+        for (int i = 0; i < 200; i++) {
+            int count = RandomGames.play(random, game);
+            buffer.clear();
+            bytes += codec.encode(game, count, buffer);
+            moves += count;
+            GameState end = new GameState();
+            end.copyFrom(codec.getState());
+
+            buffer.flip();
+            assertEquals(count, codec.decode(buffer, count, decoded));
+            for (int ply = 0; ply < count; ply++) {
+                assertEquals(game[ply] & Move.MOVE_MASK, decoded[ply]);
+            }
+            assertEquals(end, codec.getState());
+        }
+        // Random games, so about the entropy of a uniform choice, well under 12 bits.
+        assertTrue(bytes * 8.0 / moves < 6);
+    }
+
+    @Test
+    public void testEngineGame() {
+        MoveCodec codec = new MoveCodec();
+        Search search = new Search(new Evaluator());
+        GameState state = new GameState();
+        int[] game = new int[60];
+        int count = 0;
+        while (count < game.length && state.getWinner() == null) {
+            SearchResult result = search.search(state, 2, Long.MAX_VALUE, Long.MAX_VALUE);
+            if (result.getBestMove() == SearchResult.NO_MOVE) break;
+            game[count++] = result.getBestMove();
+            state.play(result.getBestMove());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        int bytes = codec.encode(game, count, buffer);
+        assertTrue(bytes * 8.0 / count < 6);
+        buffer.flip();
+        int[] decoded = new int[count];
+        assertEquals(count, codec.decode(buffer, count, decoded));
+        assertEquals(state, codec.getState());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalMove() {
+        int[] game = {Move.of(0, 29)};
+        new MoveCodec().encode(game, 1, ByteBuffer.allocate(64));
+    }
+}
@@ -0,0 +1,289 @@
+package animalchess.Test10_StoreTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import animalchess.*;
+import animalchess.server.*;
+import animalchess.store.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MoveLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Plays random moves on the state, appending them to the log.
+    private static void playRandom(MoveLog log, long gameId, GameState state, int plies, Random random) {
+        int[] moves = new int[GameState.MAX_MOVES];
+        for (int i = 0; i < plies; i++) {
+            int count = state.generateMoves(moves);
+            if (count == 0) return;
+            int move = moves[random.nextInt(count)];
+            state.play(move);
+            log.append(gameId, state.getMoveCount(), move);
+        }
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("moves.log");
+        Random random = new Random(1);
+        GameState first = new GameState();
+        GameState second = new GameState();
+        GameState ended = new GameState();
+
+        try (MoveLog log = new MoveLog(file)) {
+            playRandom(log, 1, first, 10, random);
+            playRandom(log, 2, second, 5, random);
+            log.appendSnapshot(2, second);
+            playRandom(log, 2, second, 5, random);
+            playRandom(log, 3, ended, 4, random);
+            long last = log.appendEnd(3);
+            log.awaitDurable(last);
+            assertEquals(last, log.getDurable());
+        }
+
+        Map<Long, GameState> games = MoveLog.recover(file);
+        assertEquals(2, games.size());
+        assertEquals(first, games.get(1L));
+        assertEquals(second, games.get(2L));
+    }
+
+    @Test
+    public void testWhenDurable() throws Exception {
+        MoveLog log = new MoveLog(folder.getRoot().toPath().resolve("moves.log"));
+        GameState state = new GameState();
+        playRandom(log, 1, state, 3, new Random(8));
+        long last = log.appendSnapshot(1, state);
+        log.whenDurable(last).get();
+        assertTrue(log.getDurable() >= last);
+        assertTrue(log.whenDurable(last).isDone());
+        // A record which is never appended fails once the log is closed.
+        CompletableFuture<Void> never = log.whenDurable(last + 1);
+        log.close();
+        try {
+            never.get();
+            fail("a closed log should fail the records it did not write");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testTornFrame() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("moves.log");
+        GameState state = new GameState();
+        try (MoveLog log = new MoveLog(file)) {
+            playRandom(log, 1, state, 6, new Random(2));
+        }
+        // A frame cut short by a crash.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3}));
+        }
+        assertEquals(state, MoveLog.recover(file).get(1L));
+
+        try (MoveLog log = new MoveLog(file)) {
+            playRandom(log, 1, state, 6, new Random(3));
+        }
+        assertEquals(state, MoveLog.recover(file).get(1L));
+    }
+
+    @Test
+    public void testManyGames() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("moves.log");
+        GameState[] states = new GameState[200];
+        Random random = new Random(4);
+        try (MoveLog log = new MoveLog(file)) {
+            for (int i = 0; i < states.length; i++) {
+                states[i] = new GameState();
+            }
+            // Interleaved as by many sessions, and more than a buffer.
+            for (int round = 0; round < 40; round++) {
+                for (int i = 0; i < states.length; i++) {
+                    playRandom(log, i, states[i], 1, random);
+                }
+            }
+        }
+        Map<Long, GameState> games = MoveLog.recover(file);
+        for (int i = 0; i < states.length; i++) {
+            assertEquals(states[i], games.get((long) i));
+        }
+    }
+
+    @Test
+    public void testRestartWithoutSnapshot() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("moves.log");
+        Random random = new Random(6);
+        GameState state = new GameState();
+        try (MoveLog log = new MoveLog(file)) {
+            playRandom(log, 1, state, 3, random);
+            log.appendSnapshot(1, state);
+            playRandom(log, 1, state, 2, random);
+            // The game starts again from move 1, as after a reset.
+            state.setStart();
+            playRandom(log, 1, state, 2, random);
+        }
+        GameState recovered = MoveLog.recover(file).get(1L);
+        assertEquals(2, recovered.getMoveCount());
+        assertEquals(state, recovered);
+    }
+
+    @Test
+    public void testSessionReset() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("moves.log");
+        Random random = new Random(7);
+        int[] moves = new int[GameState.MAX_MOVES];
+        GameState expected = new GameState();
+        int[] before = new int[3];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = moves[random.nextInt(expected.generateMoves(moves))];
+            expected.play(before[i]);
+        }
+        expected.setStart();
+        int[] after = new int[2];
+        for (int i = 0; i < after.length; i++) {
+            after[i] = moves[random.nextInt(expected.generateMoves(moves))];
+            expected.play(after[i]);
+        }
+
+        long id;
+        try (MoveLog log = new MoveLog(file);
+             GameSessionManager manager = new GameSessionManager(Executors.newFixedThreadPool(2), 60_000, log)) {
+            GameSession session = manager.open();
+            id = session.getId();
+            manager.submitMoves(id, before).get();
+            session.ask(game -> {
+                game.reset();
+                return null;
+            }).get();
+            assertEquals(2, (int) manager.submitMoves(id, after).get());
+            // The moves are on disk once they are answered.
+            assertEquals(expected, MoveLog.recover(file).get(id));
+        }
+        assertEquals(expected, MoveLog.recover(file).get(id));
+    }
+
+    @Test
+    public void testSessionFailsAfterLogFailure() throws Exception {
+        MoveLog log = new MoveLog(folder.getRoot().toPath().resolve("moves.log"));
+        AtomicReference<Throwable> uncaught = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setUncaughtExceptionHandler((t, e) -> uncaught.set(e));
+            return thread;
+        });
+        try (GameSessionManager manager = new GameSessionManager(executor, 60_000, log)) {
+            GameSession session = manager.open();
+            log.close();
+            int move = Move.of(2 * Game.WIDTH + 1, 3 * Game.WIDTH + 1);
+            // Neither the batch whose moves were not logged, nor the later messages, are answered.
+            try {
+                session.submitMoves(new int[]{move}, 0, 1).get();
+                fail("moves which cannot be logged should not be answered");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+            }
+            try {
+                session.ask(Game::getMoveCount).get();
+                fail("a session whose moves cannot be logged should not run messages");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertTrue(manager.close(session.getId()));
+        }
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        assertNull(uncaught.get());
+    }
+
+    @Test
+    public void testCloseAfterShutdown() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("moves.log");
+        try (MoveLog log = new MoveLog(file)) {
+            GameSessionManager manager = new GameSessionManager(Executors.newFixedThreadPool(2), 60_000, log);
+            GameSession session = manager.open();
+            int move = Move.of(2 * Game.WIDTH + 1, 3 * Game.WIDTH + 1);
+            assertEquals(1, (int) session.submitMoves(new int[]{move}, 0, 1).get());
+            manager.close();
+            // The pool rejects the mailbox, yet closing the session still ends the game.
+            assertTrue(manager.close(session.getId()));
+        }
+        assertTrue(MoveLog.recover(file).isEmpty());
+    }
+
+    @Test
+    public void testGameReleasedAfterLogFailure() throws Exception {
+        MoveLog log = new MoveLog(folder.getRoot().toPath().resolve("moves.log"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (GameSessionManager manager = new GameSessionManager(executor, 60_000, log)) {
+            GameSession session = manager.open();
+            Game game = session.ask(g -> g).get();
+            log.close();
+            // The end of the game cannot be logged, yet the game goes back to the pool.
+            manager.close(session.getId());
+            executor.submit(() -> { }).get();
+            assertSame(game, manager.open().ask(g -> g).get());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendAfterClose() throws Exception {
+        MoveLog log = new MoveLog(folder.getRoot().toPath().resolve("moves.log"));
+        log.close();
+        log.append(1, 1, 0);
+    }
+
+    @Test
+    public void testSessionsRestored() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("moves.log");
+        int[] moves = new int[GameState.MAX_MOVES];
+        GameState expected = new GameState();
+        Random random = new Random(5);
+        int[] played = new int[100];
+        for (int i = 0; i < played.length && expected.getWinner() == null; i++) {
+            played[i] = moves[random.nextInt(expected.generateMoves(moves))];
+            expected.play(played[i]);
+        }
+
+        long id;
+        try (MoveLog log = new MoveLog(file);
+             GameSessionManager manager = new GameSessionManager(Executors.newFixedThreadPool(2), 60_000, log)) {
+            GameSession session = manager.open();
+            id = session.getId();
+            assertEquals(expected.getMoveCount(), (int) manager.submitMoves(id, played).get());
+            assertEquals(expected, MoveLog.recover(file).get(id));
+            GameSession other = manager.open();
+            manager.submitMoves(other.getId(), played[0]).get();
+            // Its end is logged before the manager is closed.
+            manager.close(other.getId());
+        }
+
+        Map<Long, GameState> games = MoveLog.recover(file);
+        assertEquals(1, games.size());
+        assertEquals(expected, games.get(id));
+
+        try (GameSessionManager manager = new GameSessionManager(Executors.newFixedThreadPool(2), 60_000)) {
+            assertEquals(1, manager.restore(games));
+            GameSession session = manager.get(id);
+            assertEquals(expected, session.ask(GameState::of).get());
+            assertTrue(manager.open().getId() > id);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package animalchess.Test10_StoreTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import animalchess.*;
+import animalchess.store.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class PositionIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static int move(int fromRow, int fromCol, int toRow, int toCol) {
+        return Move.of(fromRow * Game.WIDTH + fromCol, toRow * Game.WIDTH + toCol);
+    }
+
+    @Test
+    public void testZobrist() {
+        // The same position by two orders of moves.
+        GameState first = new GameState();
+        first.play(move(0, 0, 1, 0));
+        first.play(move(5, 0, 4, 0));
+        first.play(move(0, 4, 1, 4));
+        GameState second = new GameState();
+        second.play(move(0, 4, 1, 4));
+        second.play(move(5, 0, 4, 0));
+        second.play(move(0, 0, 1, 0));
+        assertEquals(Zobrist.hash(first), Zobrist.hash(second));
+        assertNotEquals(Zobrist.hash(new GameState()), Zobrist.hash(first));
+
+        // Only the side to move differs.
+        GameState back = new GameState();
+        back.play(move(0, 0, 1, 0));
+        back.play(move(5, 0, 4, 0));
+        back.play(move(1, 0, 0, 0));
+        back.play(move(4, 0, 5, 0));
+        assertEquals(Zobrist.hash(new GameState()), Zobrist.hash(back));
+        back.play(move(0, 0, 1, 0));
+        assertNotEquals(Zobrist.hash(back), Zobrist.hash(first));
+    }
+
+    @Test
+    public void testBuildAndQuery() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("archive");
+        Random random = new Random(1);
+        Map<Long, List<Long>> expected = new HashMap<>();
+        int[] legal = new int[GameState.MAX_MOVES];
+        int[] moves = new int[30];
+        int games = 3000;
+
+        try (GameArchive archive = new GameArchive(directory)) {
+            for (int game = 0; game < games; game++) {
+                GameState state = new GameState();
+                int count = 0;
+                expected.computeIfAbsent(Zobrist.hash(state), k -> new ArrayList<>()).add(PositionIndex.posting(game, 0));
+                while (count < moves.length && state.getWinner() == null) {
+                    moves[count] = legal[random.nextInt(state.generateMoves(legal))];
+                    state.play(moves[count++]);
+                    expected.computeIfAbsent(Zobrist.hash(state), k -> new ArrayList<>()).add(PositionIndex.posting(game, count));
+                }
+                archive.append(moves, count, state.getWinner());
+            }
+        }
+
+        for (int partitionBits : new int[]{0, 3}) {
+            Path file = folder.getRoot().toPath().resolve("positions-" + partitionBits + ".idx");
+            try (GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+                PositionIndex.build(reader, file, pool, partitionBits);
+            }
+            try (PositionIndex index = new PositionIndex(file)) {
+                // Random games come back to the start position now and then.
+                long start = Zobrist.hash(new GameState());
+                assertTrue(index.count(start) >= games);
+                long[] postings = new long[64];
+                for (Map.Entry<Long, List<Long>> entry : expected.entrySet()) {
+                    long hash = entry.getKey();
+                    assertEquals(entry.getValue().size(), index.count(hash));
+                    if (entry.getValue().size() > postings.length) continue;
+                    int read = index.read(hash, 0, postings);
+                    long[] actual = Arrays.copyOf(postings, read);
+                    long[] wanted = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+                    Arrays.sort(actual);
+                    Arrays.sort(wanted);
+                    assertArrayEquals(wanted, actual);
+                }
+                assertEquals(0, index.count(12345));
+                assertEquals(0, index.read(12345, 0, postings));
+
+                // Reading a long list page by page.
+                long total = 0;
+                int atFirstPly = 0;
+                for (int read; (read = index.read(start, total, postings)) > 0; ) {
+                    for (int i = 0; i < read; i++) {
+                        if (PositionIndex.plyOf(postings[i]) == 0) atFirstPly++;
+                    }
+                    total += read;
+                }
+                assertEquals(expected.get(start).size(), total);
+                assertEquals(games, atFirstPly);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package animalchess.Test10_StoreTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import animalchess.*;
+import animalchess.engine.*;
+import animalchess.store.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TrainingExportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static int[][] export(Path directory, int writers, int maxRecords, int scoreDepth) throws Exception {
+        Random random = new Random(7);
+        int[][] games = new int[40][];
+        try (TrainingExport export = new TrainingExport(directory, writers, maxRecords, scoreDepth)) {
+            for (int i = 0; i < games.length; i++) {
+                games[i] = RandomGames.newGame(random, 1 + random.nextInt(100));
+                export.add(i, games[i], games[i].length, RandomGames.winnerOf(games[i]));
+            }
+        }
+        return games;
+    }
+
+    @Test
+    public void testRecordsMatchTheGames() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("export");
+        int[][] games = export(directory, 3, 50, 0);
+        long total = 0;
+        for (int[] game : games) {
+            total += game.length;
+        }
+        assertEquals(total, TrainingExport.verify(directory));
+
+        // Every game is found through the indexes, possibly over several shards.
+        Map<Long, Integer> found = new HashMap<>();
+        Evaluator evaluator = new Evaluator();
+        GameState read = new GameState();
+        List<Path> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "shard-*.idx")) {
+            stream.forEach(indexes::add);
+        }
+        // A writer numbers its shards in order, so a game goes on in a later shard.
+        Collections.sort(indexes);
+        for (Path index : indexes) {
+            ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+            entries.position(TrainingExport.INDEX_HEADER);
+            long records = entries.getLong(2 * Integer.BYTES);
+            assertTrue(records > 0 && records <= 50);
+            Path shard = directory.resolve(index.getFileName().toString().replace(".idx", ".bin"));
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(shard));
+            while (entries.hasRemaining()) {
+                long gameId = entries.getLong();
+                int first = entries.getInt();
+                int count = entries.getInt();
+                int[] moves = games[(int) gameId];
+                Game.Side winner = RandomGames.winnerOf(moves);
+                int ply = found.getOrDefault(gameId, 0);
+                GameState state = new GameState();
+                for (int i = 0; i < ply; i++) {
+                    state.play(moves[i]);
+                }
+                for (int i = 0; i < count; i++, ply++) {
+                    data.position((first + i) * TrainingExport.RECORD_BYTES);
+                    ByteBuffer record = data.slice();
+                    TrainingExport.readPosition(record.duplicate(), read);
+                    assertEquals(state, read);
+                    assertEquals(state.getSideToMove().ordinal(), record.get(18));
+                    assertEquals(evaluator.evaluate(state), record.getShort(19));
+                    int result = winner == null ? 0 : winner == state.getSideToMove() ? 1 : -1;
+                    assertEquals(result, record.get(21));
+                    assertEquals(ply, record.getShort(22));
+                    state.play(moves[ply]);
+                }
+                found.put(gameId, ply);
+            }
+        }
+        for (int i = 0; i < games.length; i++) {
+            assertEquals(games[i].length, (int) found.get((long) i));
+        }
+    }
+
+    @Test
+    public void testSearchScores() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("export");
+        int[][] games = export(directory, 2, 1000, 2);
+        try (FileChannel channel = FileChannel.open(directory.resolve("shard-00000.bin"), StandardOpenOption.READ)) {
+            ByteBuffer record = ByteBuffer.allocate(TrainingExport.RECORD_BYTES);
+            channel.read(record, 0);
+            record.flip();
+            GameState state = new GameState();
+            TrainingExport.readPosition(record.duplicate(), state);
+            int score = new Search(new Evaluator()).search(state, 2, Long.MAX_VALUE, Long.MAX_VALUE).getScore();
+            assertEquals(score, record.getShort(19));
+        }
+        assertTrue(games.length > 0);
+    }
+
+    @Test
+    public void testVerifyFindsCorruption() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("export");
+        export(directory, 1, 100, 0);
+        Path shard = directory.resolve("shard-00000.bin");
+        byte[] bytes = Files.readAllBytes(shard);
+        bytes[bytes.length / 2] ^= 0x10;
+        Files.write(shard, bytes);
+        try {
+            TrainingExport.verify(directory);
+            fail("the corrupted shard should not verify");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("checksum"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterClose() throws Exception {
+        TrainingExport export = new TrainingExport(folder.getRoot().toPath(), 1, 10, 0);
+        export.close();
+        export.add(0, new int[0], 0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadShardSize() throws Exception {
+        new TrainingExport(folder.getRoot().toPath(), 1, 0, 0);
+    }
+}
@@ -0,0 +1,108 @@
+package animalchess.Test11_AnalysisTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import animalchess.*;
+import animalchess.analysis.*;
+import animalchess.store.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class BulkAnalysisTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    // Appends random games, returning their total number of moves.
+    private static int appendRandomGames(GameArchive archive, Random random, int games) throws Exception {
+        int[] moves = new int[40];
+        int total = 0;
+        for (int i = 0; i < games; i++) {
+            int count = RandomGames.play(random, moves);
+            archive.append(moves, count, RandomGames.winnerOf(moves, count));
+            total += count;
+        }
+        return total;
+    }
+
+    @Test
+    public void testAnalyseAndResume() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("archive");
+        Path output = folder.getRoot().toPath().resolve("analysis.bin");
+        Random random = new Random(1);
+
+        try (GameArchive archive = new GameArchive(directory);
+             GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            int total = appendRandomGames(archive, random, 12);
+            reader.refresh();
+            assertEquals(12, new BulkAnalysis(reader, output, pool, 2, 10_000, 3).run());
+            assertEquals(total * BulkAnalysis.RECORD_BYTES, Files.size(output));
+
+            // Only the games appended since are analysed.
+            total += appendRandomGames(archive, random, 5);
+            reader.refresh();
+            assertEquals(5, new BulkAnalysis(reader, output, pool, 2, 10_000, 3).run());
+            assertEquals(0, new BulkAnalysis(reader, output, pool, 2, 10_000, 3).run());
+            assertEquals(total * BulkAnalysis.RECORD_BYTES, Files.size(output));
+
+            // The same records as a run from scratch.
+            Path fresh = folder.getRoot().toPath().resolve("fresh.bin");
+            new BulkAnalysis(reader, fresh, pool, 2, 10_000, 8).run();
+            assertArrayEquals(Files.readAllBytes(fresh), Files.readAllBytes(output));
+
+            // In the order of the games and their moves, with blunders among random moves.
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(output));
+            int[] moves = new int[GameArchive.MAX_MOVES];
+            int blunders = 0;
+            for (long game = 0; game < reader.size(); game++) {
+                int count = reader.readMoves(game, moves);
+                for (int ply = 0; ply < count; ply++) {
+                    assertEquals(game, records.getLong());
+                    assertEquals(ply, records.getShort());
+                    assertEquals(moves[ply], records.getShort());
+                    int best = records.getShort();
+                    int played = records.getShort();
+                    assertTrue(best >= played);
+                    if ((records.get() & BulkAnalysis.BLUNDER) != 0) blunders++;
+                }
+            }
+            assertTrue(blunders > 0);
+        }
+    }
+
+    @Test
+    public void testResumeAfterPartialWrite() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("archive");
+        Path output = folder.getRoot().toPath().resolve("analysis.bin");
+        try (GameArchive archive = new GameArchive(directory);
+             GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            appendRandomGames(archive, new Random(2), 4);
+            reader.refresh();
+            new BulkAnalysis(reader, output, pool, 1, 1_000, 2).run();
+            byte[] expected = Files.readAllBytes(output);
+
+            // Records written after the checkpoint by a job which then stopped.
+            byte[] partial = Arrays.copyOf(expected, expected.length + 7);
+            Files.write(output, partial);
+            assertEquals(0, new BulkAnalysis(reader, output, pool, 1, 1_000, 2).run());
+            assertArrayEquals(expected, Files.readAllBytes(output));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package animalchess.Test11_AnalysisTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import animalchess.*;
+import animalchess.analysis.*;
+import animalchess.engine.*;
+import animalchess.store.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class SelfPlayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path generate(SelfPlay selfPlay, long games, int threads) throws Exception {
+        Path directory = folder.newFolder().toPath();
+        try (GameArchive archive = new GameArchive(directory)) {
+            selfPlay.run(archive, games, threads);
+        }
+        return directory;
+    }
+
+    @Test
+    public void testGamesAreReproduced() throws Exception {
+        SelfPlay selfPlay = new SelfPlay(SelfPlay.RANDOM, SelfPlay.WEIGHTED, 42, 100);
+        Path directory = generate(selfPlay, 1000, 4);
+
+        GameState state = new GameState();
+        int[] moves = new int[100];
+        int[] archived = new int[100];
+        long plies = 0;
+        try (GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            assertEquals(1000, reader.size());
+            for (long game = 0; game < reader.size(); game++) {
+                int count = selfPlay.play(game, state, moves);
+                assertEquals(count, reader.readMoves(game, archived));
+                for (int i = 0; i < count; i++) {
+                    assertEquals(moves[i] & Move.MOVE_MASK, archived[i]);
+                }
+                assertEquals(state.getWinner(), reader.getWinner(game));
+                // A game ends at the capture of a lion or at the max ply
+                assertTrue(state.getWinner() != null || count == 100);
+                plies += count;
+            }
+        }
+        assertEquals(plies, selfPlay.getPlies());
+    }
+
+    @Test
+    public void testSameArchiveWhateverTheThreads() throws Exception {
+        Path one = generate(new SelfPlay(SelfPlay.WEIGHTED, SelfPlay.WEIGHTED, 7, 60), 700, 1);
+        Path many = generate(new SelfPlay(SelfPlay.WEIGHTED, SelfPlay.WEIGHTED, 7, 60), 700, 3);
+        assertArrayEquals(Files.readAllBytes(one.resolve(GameArchive.DATA_FILE)),
+                Files.readAllBytes(many.resolve(GameArchive.DATA_FILE)));
+        assertArrayEquals(Files.readAllBytes(one.resolve(GameArchive.INDEX_FILE)),
+                Files.readAllBytes(many.resolve(GameArchive.INDEX_FILE)));
+
+        Path other = generate(new SelfPlay(SelfPlay.WEIGHTED, SelfPlay.WEIGHTED, 8, 60), 700, 3);
+        assertFalse(Arrays.equals(Files.readAllBytes(one.resolve(GameArchive.DATA_FILE)),
+                Files.readAllBytes(other.resolve(GameArchive.DATA_FILE))));
+    }
+
+    @Test
+    public void testEnginePlayer() throws Exception {
+        SelfPlay selfPlay = new SelfPlay(SelfPlay.engine(BotLevel.CASUAL), SelfPlay.RANDOM, 3, 200);
+        Path directory = generate(selfPlay, 20, 2);
+        GameState state = new GameState();
+        int[] moves = new int[200];
+        int[] archived = new int[200];
+        int wins = 0;
+        try (GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            for (long game = 0; game < 20; game++) {
+                int count = selfPlay.play(game, state, moves);
+                assertEquals(count, reader.readMoves(game, archived));
+                if (reader.getWinner(game) == Game.Side.UPPER) wins++;
+            }
+        }
+        assertTrue(wins >= 18);
+    }
+}
@@ -0,0 +1,128 @@
+package animalchess.Test11_AnalysisTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import animalchess.*;
+import animalchess.analysis.*;
+import animalchess.engine.*;
+import animalchess.store.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TexelTunerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    // The weights the results of the test games are drawn from.
+    private static final int[] TRUE_WEIGHTS = {0, 500, 300, 150, 450, 400, 550, 350, 200, 25};
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFeatures() {
+        Evaluator evaluator = new Evaluator(TRUE_WEIGHTS);
+        Random random = new Random(1);
+        GameState state = new GameState();
+        int[] legal = new int[GameState.MAX_MOVES];
+        int[] features = new int[Evaluator.WEIGHT_NUMBER];
+        for (int i = 0; i < 2000; i++) {
+            if (state.getWinner() != null || state.getMoveCount() > 80) state.setStart();
+            state.play(legal[random.nextInt(state.generateMoves(legal))]);
+            Evaluator.features(state, features);
+            int score = 0;
+            for (int k = 0; k < features.length; k++) {
+                score += TRUE_WEIGHTS[k] * features[k];
+            }
+            assertEquals(state.getSideToMove() == Game.Side.UPPER ? score : -score, evaluator.evaluate(state));
+        }
+    }
+
+    @Test
+    public void testWeightsFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("weights.txt");
+        Evaluator.writeWeights(file, TRUE_WEIGHTS);
+        assertArrayEquals(TRUE_WEIGHTS, Evaluator.readWeights(file));
+        assertArrayEquals(TRUE_WEIGHTS, new Evaluator(Evaluator.readWeights(file)).getWeights());
+
+        // Weights left out keep their built-in value
+        Files.write(file, Arrays.asList("# partial", "dog 480"));
+        int[] weights = Evaluator.readWeights(file);
+        assertEquals(480, weights[Evaluator.BOARD_WEIGHTS + PieceKind.DOG.ordinal()]);
+        assertEquals(new Evaluator().getWeights()[Evaluator.CHICK_ADVANCE_WEIGHT], weights[Evaluator.CHICK_ADVANCE_WEIGHT]);
+
+        Files.write(file, Arrays.asList("horse 300"));
+        try {
+            Evaluator.readWeights(file);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // unknown weight
+        }
+    }
+
+    @Test
+    public void testTuningFindsTheWeights() throws Exception {
+        // Random games whose results are drawn from the true weights, by the
+        // score of the position at ply 25, the only one kept
+        Path directory = folder.newFolder().toPath();
+        Random random = new Random(2);
+        Evaluator truth = new Evaluator(TRUE_WEIGHTS);
+        try (GameArchive archive = new GameArchive(directory)) {
+            GameState state = new GameState();
+            int[] legal = new int[GameState.MAX_MOVES];
+            int[] moves = new int[26];
+            for (int game = 0; game < 60_000; game++) {
+                state.setStart();
+                int count = 0;
+                while (count < 25 && state.getWinner() == null) {
+                    moves[count] = legal[random.nextInt(state.generateMoves(legal))];
+                    state.play(moves[count++]);
+                }
+                if (state.getWinner() != null) continue;
+                int score = truth.evaluate(state) * (state.getSideToMove() == Game.Side.UPPER ? 1 : -1);
+                double upper = 1 / (1 + Math.exp(-score * Math.log(10) / 400));
+                Game.Side winner = random.nextDouble() < upper ? Game.Side.UPPER : Game.Side.LOWER;
+                moves[count] = legal[random.nextInt(state.generateMoves(legal))];
+                archive.append(moves, count + 1, winner);
+            }
+        }
+
+        TexelTuner tuner = new TexelTuner(pool);
+        try (GameArchive.Reader reader = new GameArchive.Reader(directory)) {
+            assertTrue(tuner.addGames(reader, 25) > 30_000);
+        }
+        int[] initial = new Evaluator().getWeights();
+        tuner.fitScale(initial);
+        double before = tuner.loss(initial);
+        tuner.setLearningRate(5);
+        int[] tuned = tuner.tune(initial, 500, 1e-7);
+        assertTrue(tuner.getIterations() > 1);
+        assertTrue(tuner.loss(tuned) < before);
+        // The tuned weights are closer to the true ones
+        assertTrue(distance(tuned, TRUE_WEIGHTS) < distance(initial, TRUE_WEIGHTS));
+        // The lion is always on the board, so its weight says nothing
+        assertEquals(0, tuned[Evaluator.BOARD_WEIGHTS + PieceKind.LION.ordinal()]);
+    }
+
+    private static int distance(int[] a, int[] b) {
+        int distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            distance += Math.abs(a[i] - b[i]);
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,109 @@
+package animalchess.Test11_AnalysisTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import animalchess.*;
+import animalchess.analysis.*;
+import animalchess.engine.*;
+
+import java.util.Arrays;
+
+public class TournamentTest {
+
+    @Test
+    public void testElo() {
+        assertEquals(0, Tournament.elo(0.5), 1e-9);
+        assertEquals(147.2, Tournament.elo(60, 20, 20), 0.1);
+        assertEquals(-147.2, Tournament.elo(20, 20, 60), 0.1);
+        assertEquals(0.7, Tournament.score(Tournament.elo(0.7)), 1e-9);
+        assertEquals(Double.POSITIVE_INFINITY, Tournament.elo(10, 0, 0), 0);
+        // More games, smaller error bars
+        assertTrue(Tournament.eloError(600, 200, 200) < Tournament.eloError(60, 20, 20) / 3);
+    }
+
+    @Test
+    public void testEloErrorOfOneSidedRecord() {
+        assertEquals(Double.POSITIVE_INFINITY, Tournament.eloError(10, 0, 0), 0);
+        assertEquals(Double.POSITIVE_INFINITY, Tournament.eloError(0, 0, 10), 0);
+        assertEquals(Double.POSITIVE_INFINITY, Tournament.eloError(0, 10, 0), 0);
+        assertEquals(Double.POSITIVE_INFINITY, Tournament.eloError(0, 0, 0), 0);
+        // Mostly wins, but not only.
+        assertTrue(Tournament.eloError(90, 5, 5) < Double.POSITIVE_INFINITY);
+    }
+
+    @Test
+    public void testSprt() {
+        Tournament.Sprt sprt = new Tournament.Sprt(0, 10, 0.05, 0.05);
+        assertEquals(Math.log(0.05 / 0.95), sprt.getLowerBound(), 1e-9);
+        assertEquals(Math.log(0.95 / 0.05), sprt.getUpperBound(), 1e-9);
+        assertTrue(sprt.llr(3000, 1000, 2000) > sprt.getUpperBound());
+        assertTrue(sprt.llr(2000, 1000, 3000) < sprt.getLowerBound());
+        assertEquals(0, sprt.llr(0, 0, 0), 0);
+        // Winning every game is evidence too
+        assertTrue(sprt.llr(200, 0, 0) > sprt.getUpperBound());
+        try {
+            new Tournament.Sprt(10, 0, 0.05, 0.05);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // elo0 should be below elo1
+        }
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        int[][] openings = Tournament.randomOpenings(4, 4, 1);
+        Tournament tournament = new Tournament(Arrays.asList("random", "weighted", "casual"),
+                Arrays.asList(SelfPlay.RANDOM, SelfPlay.WEIGHTED, SelfPlay.engine(BotLevel.CASUAL)),
+                openings, 2, 150, 9);
+        Tournament.Result result = tournament.run(3, null);
+        // 3 pairs, 4 openings, both sides, 2 rounds
+        assertEquals(48, result.getGames());
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (i == j) continue;
+                assertEquals(16, result.getWins(i, j) + result.getDraws(i, j) + result.getLosses(i, j));
+                assertEquals(result.getWins(i, j), result.getLosses(j, i));
+                assertEquals(result.getElo(i, j), -result.getElo(j, i), 1e-9);
+            }
+        }
+        assertTrue(result.getElo(2, 0) > 0);
+        assertTrue(result.getElo(2) > result.getElo(0));
+        assertEquals(Tournament.Result.UNDECIDED, result.getDecision());
+        assertTrue(result.toString().contains("casual"));
+    }
+
+    @Test
+    public void testSprtStopsEarly() throws Exception {
+        int[][] openings = Tournament.randomOpenings(8, 2, 2);
+        Tournament tournament = new Tournament(Arrays.asList("casual", "random"),
+                Arrays.asList(SelfPlay.engine(BotLevel.CASUAL), SelfPlay.RANDOM), openings, 100, 150, 3);
+        Tournament.Result result = tournament.run(2, new Tournament.Sprt(0, 50, 0.05, 0.05));
+        assertEquals(Tournament.Result.H1, result.getDecision());
+        assertTrue(result.getLlr() >= Math.log(0.95 / 0.05));
+        // Far fewer games than the 1600 of the whole match
+        assertTrue(result.getGames() < 200);
+    }
+
+    @Test
+    public void testOpenings() {
+        int[][] openings = Tournament.randomOpenings(20, 6, 4);
+        GameState state = new GameState();
+        for (int[] opening : openings) {
+            state.setStart();
+            for (int move : opening) {
+                assertTrue(state.isLegal(move));
+                state.play(move);
+            }
+            assertNull(state.getWinner());
+        }
+        try {
+            new Tournament(Arrays.asList("a", "b"), Arrays.asList(SelfPlay.RANDOM, SelfPlay.RANDOM),
+                    new int[][]{{Move.parse("a1a5")}}, 1, 10, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // illegal opening
+        }
+    }
+}